@@ -0,0 +1,54 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+
+/**
+ * Benchmarks compiling the sample program in memory (JavaJDKCompiler.compile),
+ * either unmodified or with a deletion applied. The class files are not
+ * written to disk.
+ *
+ * @author qhanam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+
+	@Param({"false", "true"})
+	public boolean mutated;
+
+	private Context context;
+
+	@Setup
+	public void setup() throws Exception {
+		this.context = SampleProgram.build();
+		if(this.mutated) this.context.mutation.getRandomMutation(MutationType.DELETION).mutate();
+	}
+
+	@Benchmark
+	public JavaJDKCompiler.Status compile() throws Exception {
+		JavaJDKCompiler.Status status = this.context.compiler.compile();
+		this.context.compiler.dequeueCompileError();
+		return status;
+	}
+
+}
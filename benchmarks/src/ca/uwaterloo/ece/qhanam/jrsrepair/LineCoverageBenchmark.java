@@ -0,0 +1,105 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the coverage lookups that are done for every statement when
+ * the ASTs are built (LCNode.hashCode and LCNode.equals in LineCoverage).
+ *
+ * The LCNode lookups use new LCNode objects, so equals() compares
+ * different objects. The AST visitor looks up the class id once per
+ * compilation unit and then looks up each line (lookupLine). load reads
+ * the coverage file (see CoverageLoader).
+ *
+ * @author qhanam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineCoverageBenchmark {
+
+	private LineCoverage coverage;
+
+	/* Copies of the covered lines, and lines that are not covered. */
+	private LCNode[] covered;
+	private LCNode[] uncovered;
+	private int[] classIds;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		this.coverage = new LineCoverage(SampleProgram.getFaultyCoverage());
+
+		List<LCNode> covered = new ArrayList<LCNode>();
+		List<LCNode> uncovered = new ArrayList<LCNode>();
+		BufferedReader reader = new BufferedReader(new FileReader(SampleProgram.getFaultyCoverage()));
+		try{
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				String[] tokens = line.split(":");
+				covered.add(new LCNode(tokens[0], tokens[1], Integer.parseInt(tokens[2])));
+				uncovered.add(new LCNode(tokens[0], tokens[1], Integer.parseInt(tokens[2]) + 10000));
+			}
+		}
+		finally{
+			reader.close();
+		}
+		this.covered = covered.toArray(new LCNode[covered.size()]);
+		this.uncovered = uncovered.toArray(new LCNode[uncovered.size()]);
+		this.classIds = new int[this.covered.length];
+		for(int i = 0; i < this.covered.length; i++) this.classIds[i] = this.coverage.getClassId(this.covered[i].pathName, this.covered[i].className);
+		this.next = 0;
+	}
+
+	/**
+	 * Returns the index of the next line to look up.
+	 */
+	private int next(){
+		this.next = this.next + 1 == this.covered.length ? 0 : this.next + 1;
+		return this.next;
+	}
+
+	@Benchmark
+	public Double lookupCovered(){
+		return this.coverage.contains(this.covered[this.next()]);
+	}
+
+	@Benchmark
+	public Double lookupUncovered(){
+		return this.coverage.contains(this.uncovered[this.next()]);
+	}
+
+	@Benchmark
+	public double lookupLine(){
+		int i = this.next();
+		return this.coverage.getWeight(this.classIds[i], this.covered[i].lineNumber);
+	}
+
+	@Benchmark
+	public LineCoverage load() throws Exception {
+		return new LineCoverage(SampleProgram.getFaultyCoverage());
+	}
+
+	@Benchmark
+	public int hashCodeOnly(){
+		return this.covered[this.next()].hashCode();
+	}
+
+}
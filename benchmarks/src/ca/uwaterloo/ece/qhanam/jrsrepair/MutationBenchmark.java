@@ -0,0 +1,74 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+
+/**
+ * Benchmarks applying and undoing each type of mutation. Both rewrite the
+ * document (DocumentASTRewrite.resetModifiedDocument and
+ * ASTRewrite.rewriteAST), which is most of their cost.
+ *
+ * @author qhanam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutationBenchmark {
+
+	@Param({"NULL", "ADDITION", "REPLACEMENT", "DELETION"})
+	public MutationType type;
+
+	private Mutation mutation;
+	private DocumentASTRewrite document;
+
+	@Setup
+	public void setup() throws Exception {
+		Context context = SampleProgram.build();
+		this.mutation = context.mutation.getRandomMutation(this.type);
+
+		/* The document can only be read from an applied mutation. */
+		this.mutation.mutate();
+		this.document = this.mutation.getRewriter();
+		this.mutation.undo();
+	}
+
+	/**
+	 * Applies the mutation and undoes it (two document rewrites).
+	 */
+	@Benchmark
+	public int mutateAndUndo() throws Exception {
+		this.mutation.mutate();
+		int focalPosition = this.mutation.getFocalPosition();
+		this.mutation.undo();
+		return focalPosition;
+	}
+
+	/**
+	 * Resets the modified document to the original document (the first step
+	 * of every rewrite).
+	 */
+	@Benchmark
+	public int resetModifiedDocument(){
+		this.document.resetModifiedDocument();
+		return this.document.modifiedDocument.getLength();
+	}
+
+}
@@ -0,0 +1,67 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.ContextFactory;
+
+/**
+ * Builds the context for the sample program (the LRU cache in ./sample) that
+ * the benchmarks run on. The benchmarks must be run from the Java-RSRepair
+ * directory, since the sample configuration uses relative paths.
+ *
+ * The class files and logs are written to a temporary directory, so the
+ * benchmarks don't touch ./sample/config/build.
+ *
+ * @author qhanam
+ */
+public class SampleProgram {
+
+	/* The configuration of the sample program. */
+	public static final String CONFIG = "./sample/config/jrsrepair.properties";
+
+	/**
+	 * Reads the sample configuration, builds the context and parses the
+	 * sample program.
+	 * @return The context with its ASTs built.
+	 * @throws Exception
+	 */
+	public static Context build() throws Exception{
+		File config = new File(CONFIG);
+		if(!config.exists()) throw new Exception("SampleProgram.build: " + CONFIG + " not found. Run the benchmarks from the Java-RSRepair directory.");
+
+		Properties properties = new Properties();
+		FileReader reader = new FileReader(config);
+		try{
+			properties.load(reader);
+		}
+		finally{
+			reader.close();
+		}
+
+		/* The tests are not run, so use the executor that doesn't need Ant. */
+		File buildDirectory = Files.createTempDirectory("jrsrepair-benchmarks").toFile();
+		properties.setProperty("build_directory", buildDirectory.getPath());
+		properties.setProperty("class_directory", new File(buildDirectory, "classes").getPath());
+		properties.setProperty("test_script", "JUNIT");
+		properties.setProperty("junit_test_classes", "{}");
+		properties.remove("timing_journal");
+
+		Context context = ContextFactory.buildContext(properties);
+		context.parser.buildASTs();
+		context.compiler.setStoreClassFiles(false);
+		return context;
+	}
+
+	/**
+	 * Returns the coverage file for the faulty statements of the sample program.
+	 * @return
+	 */
+	public static File getFaultyCoverage(){
+		return new File("./sample/config/faulty.cov");
+	}
+
+}
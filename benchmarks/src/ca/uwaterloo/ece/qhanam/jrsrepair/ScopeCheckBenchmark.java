@@ -0,0 +1,53 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+
+/**
+ * Benchmarks the scope check of a mutated program (ParserContext.checkScope),
+ * which parses the mutated document and resolves its bindings.
+ *
+ * @author qhanam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScopeCheckBenchmark {
+
+	@Param({"ADDITION", "REPLACEMENT", "DELETION"})
+	public MutationType type;
+
+	private Context context;
+	private Mutation mutation;
+
+	@Setup
+	public void setup() throws Exception {
+		this.context = SampleProgram.build();
+		this.mutation = this.context.mutation.getRandomMutation(this.type);
+		this.mutation.mutate();
+	}
+
+	@Benchmark
+	public boolean checkScope() throws Exception {
+		return this.context.parser.checkScope(this.mutation.getRewriter(), this.mutation.getFocalPosition());
+	}
+
+}
@@ -0,0 +1,68 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+
+/**
+ * Benchmarks the weighted random selection of faulty and seed statements.
+ * The selected statement is released after each selection so every
+ * selection starts with the same statements available.
+ *
+ * @author qhanam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementsBenchmark {
+
+	private Statements faultyStatements;
+	private Statements seedStatements;
+
+	/* The faulty statement that seed statements are selected for. */
+	private SourceStatement destination;
+
+	@Setup
+	public void setup() throws Exception {
+		Context context = SampleProgram.build();
+		this.faultyStatements = context.mutation.getFaultyStatements();
+		this.seedStatements = context.mutation.getSeedStatements();
+		this.destination = this.faultyStatements.getStatement(0);
+	}
+
+	/**
+	 * Selects a faulty statement (getRandomStatement()).
+	 */
+	@Benchmark
+	public SourceStatement selectFaulty(){
+		SourceStatement statement = this.faultyStatements.getRandomStatement();
+		statement.release();
+		return statement;
+	}
+
+	/**
+	 * Selects a seed statement that is in the scope of a faulty statement
+	 * (getRandomStatement(SourceStatement)).
+	 */
+	@Benchmark
+	public SourceStatement selectSeedInScope(){
+		SourceStatement statement = this.seedStatements.getRandomStatement(this.destination);
+		statement.release();
+		return statement;
+	}
+
+}
@@ -0,0 +1,266 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.ContextFactory;
+
+/**
+ * Measures the throughput of a whole repair. Runs JRSRepair on a
+ * configuration (the sample program by default) with a pinned random seed
+ * and a fixed budget of candidates and generations, so every run evaluates
+ * the same candidates.
+ *
+ * Reports the attempts per minute, the number of plausible patches (the
+ * candidates that pass the tests), the time to the first one and the time
+ * spent in each phase (from the timing journal). The results are written as
+ * a properties file. If a baseline (the results of an earlier run) is given,
+ * the results are compared with it and the regressions are reported; the
+ * exit status is 1 if there are any. The timings depend on the machine, so
+ * there is no default baseline: record one with -out, then compare with
+ * -baseline. One of the two must be given.
+ *
+ * Usage (from the Java-RSRepair directory):
+ * 	java -cp benchmarks/target/benchmarks.jar ca.uwaterloo.ece.qhanam.jrsrepair.ThroughputBenchmark
+ * 		[-seed n] [-candidates n] [-generations n] [-out results] [-baseline results] [-tolerance t] [config]
+ *
+ * @author qhanam
+ */
+public class ThroughputBenchmark {
+
+	/* The budget of the benchmark (unless given on the command line). */
+	private static final int SEED = 1;
+	private static final int CANDIDATES = 20;
+	private static final int GENERATIONS = 1;
+
+	/* The relative change that is reported as a regression (unless given on the command line). */
+	private static final double TOLERANCE = 0.2;
+
+	/* Phases that take less time than this (in milliseconds) are too noisy to compare. */
+	private static final double MIN_PHASE_MILLIS = 1;
+
+	public static void main(String[] args) throws Exception {
+		String config = SampleProgram.CONFIG;
+		int seed = SEED;
+		int candidates = CANDIDATES;
+		int generations = GENERATIONS;
+		double tolerance = TOLERANCE;
+		File out = null;
+		File baseline = null;
+
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-seed")) seed = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-candidates")) candidates = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-generations")) generations = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-tolerance")) tolerance = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-out")) out = new File(args[++i]);
+			else if(args[i].equals("-baseline")) baseline = new File(args[++i]);
+			else if(args[i].startsWith("-")) throw new Exception("ThroughputBenchmark: unknown option " + args[i]);
+			else config = args[i];
+		}
+
+		if(baseline == null && out == null)
+			throw new Exception("ThroughputBenchmark: no baseline given. Record one on this machine with -out [results], then compare with -baseline [results].");
+		if(baseline != null && !baseline.isFile())
+			throw new Exception("ThroughputBenchmark: the baseline " + baseline + " does not exist. Record one with -out " + baseline + ".");
+
+		Properties results = ThroughputBenchmark.run(new File(config), seed, candidates, generations);
+		ThroughputBenchmark.print(results);
+
+		if(out != null){
+			FileWriter writer = new FileWriter(out);
+			try{
+				results.store(writer, "ThroughputBenchmark results");
+			}
+			finally{
+				writer.close();
+			}
+			System.out.println("Results written to " + out);
+		}
+
+		if(baseline != null){
+			Properties expected = new Properties();
+			FileReader reader = new FileReader(baseline);
+			try{
+				expected.load(reader);
+			}
+			finally{
+				reader.close();
+			}
+
+			List<String> regressions = ThroughputBenchmark.compare(expected, results, tolerance);
+			if(regressions.isEmpty()){
+				System.out.println("No regressions against " + baseline + " (tolerance " + Math.round(tolerance * 100) + "%).");
+			}
+			else{
+				System.out.println(regressions.size() + " regressions against " + baseline + " (tolerance " + Math.round(tolerance * 100) + "%):");
+				for(String regression : regressions) System.out.println("  " + regression);
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Runs the repair and collects the results.
+	 * @param config The configuration file.
+	 * @param seed The random seed.
+	 * @param candidates The number of candidates.
+	 * @param generations The number of generations of each candidate.
+	 * @return The results.
+	 * @throws Exception
+	 */
+	public static Properties run(File config, int seed, int candidates, int generations) throws Exception{
+		Properties properties = new Properties();
+		FileReader reader = new FileReader(config);
+		try{
+			properties.load(reader);
+		}
+		finally{
+			reader.close();
+		}
+
+		if("ANT".equals(properties.getProperty("test_script", "").trim()) && !new File(properties.getProperty("ant_path", "").trim()).isFile())
+			throw new Exception("ThroughputBenchmark: " + config + " runs the tests with Ant, but ant_path (" + properties.getProperty("ant_path")
+								+ ") does not exist. Set ant_path or use a config with test_script = JUNIT.");
+
+		/* Pin the search and write the logs and the timing journal to a temporary directory. */
+		File buildDirectory = Files.createTempDirectory("jrsrepair-throughput").toFile();
+		File journal = new File(buildDirectory, "timing-journal");
+		properties.setProperty("random_seed", String.valueOf(seed));
+		properties.setProperty("mutation_candidates", String.valueOf(candidates));
+		properties.setProperty("mutation_generations", String.valueOf(generations));
+		properties.setProperty("build_directory", buildDirectory.getPath());
+		properties.setProperty("timing_journal", journal.getPath());
+
+		Context[] contexts = ContextFactory.buildContexts(properties);
+		JRSRepair repair = new JRSRepair(contexts);
+		repair.buildASTs();
+
+		long start = System.nanoTime();
+		repair.repair();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		List<TimingJournal.Record> records = TimingJournal.read(journal);
+		RepairMetrics metrics = repair.getMetrics();
+
+		Properties results = new Properties();
+		results.setProperty("config", config.getPath());
+		results.setProperty("seed", String.valueOf(seed));
+		results.setProperty("candidates", String.valueOf(candidates));
+		results.setProperty("generations", String.valueOf(generations));
+		results.setProperty("workers", String.valueOf(contexts.length));
+		results.setProperty("attempts", String.valueOf(records.size()));
+		results.setProperty("patches", String.valueOf(ThroughputBenchmark.countPatches(buildDirectory)));
+		results.setProperty("elapsed_seconds", ThroughputBenchmark.format(elapsed));
+		results.setProperty("attempts_per_minute", ThroughputBenchmark.format(records.size() / elapsed * 60));
+		results.setProperty("seconds_to_first_patch", ThroughputBenchmark.format(metrics.getSecondsToFirstPatch()));
+
+		/* The time spent in each phase, over the attempts that ran it. */
+		String[] phases = TimingJournal.getPhaseNames();
+		for(int phase = 0; phase < phases.length; phase++){
+			long[] durations = TimingJournal.getDurations(records, phase);
+			long total = 0;
+			for(long duration : durations) total += duration;
+			String key = "phase." + phases[phase].replace(' ', '_');
+			results.setProperty(key + ".count", String.valueOf(durations.length));
+			results.setProperty(key + ".total_ms", ThroughputBenchmark.format(total / 1e6));
+			results.setProperty(key + ".mean_ms", ThroughputBenchmark.format(durations.length == 0 ? 0 : total / 1e6 / durations.length));
+			results.setProperty(key + ".p50_ms", ThroughputBenchmark.format(TimingJournal.percentile(durations, 0.5)));
+			results.setProperty(key + ".p90_ms", ThroughputBenchmark.format(TimingJournal.percentile(durations, 0.9)));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Compares the results with a baseline.
+	 * @param baseline The results of an earlier run.
+	 * @param results The results of this run.
+	 * @param tolerance The relative change that is a regression.
+	 * @return A description of each regression.
+	 */
+	public static List<String> compare(Properties baseline, Properties results, double tolerance){
+		List<String> regressions = new ArrayList<String>();
+
+		/* With the same seed and budget the search evaluates the same candidates, unless the search changed. */
+		for(String key : new String[] { "seed", "candidates", "generations", "workers" }){
+			if(!results.getProperty(key).equals(baseline.getProperty(key)))
+				System.out.println("Warning: the baseline has " + key + " = " + baseline.getProperty(key) + ", so the results are not comparable.");
+		}
+		for(String key : new String[] { "attempts", "patches" }){
+			if(!results.getProperty(key).equals(baseline.getProperty(key)))
+				System.out.println("Note: " + key + " changed from " + baseline.getProperty(key) + " to " + results.getProperty(key) + " (the search has changed).");
+		}
+
+		/* Throughput should not drop. */
+		double expected = ThroughputBenchmark.getDouble(baseline, "attempts_per_minute");
+		double actual = ThroughputBenchmark.getDouble(results, "attempts_per_minute");
+		if(actual < expected * (1 - tolerance))
+			regressions.add(String.format("attempts_per_minute: %.1f -> %.1f (%+.0f%%)", expected, actual, (actual / expected - 1) * 100));
+
+		/* The first patch should not take longer (or disappear). */
+		expected = ThroughputBenchmark.getDouble(baseline, "seconds_to_first_patch");
+		actual = ThroughputBenchmark.getDouble(results, "seconds_to_first_patch");
+		if(expected >= 0 && actual < 0)
+			regressions.add(String.format("seconds_to_first_patch: %.3f -> no patch", expected));
+		else if(expected >= 0 && actual > expected * (1 + tolerance))
+			regressions.add(String.format("seconds_to_first_patch: %.3f -> %.3f (%+.0f%%)", expected, actual, (actual / expected - 1) * 100));
+
+		/* The phases should not take longer. */
+		Map<String, String> phases = new TreeMap<String, String>();
+		for(String key : results.stringPropertyNames()){
+			if(key.startsWith("phase.") && key.endsWith(".mean_ms") && baseline.containsKey(key)) phases.put(key, results.getProperty(key));
+		}
+		for(String key : phases.keySet()){
+			expected = ThroughputBenchmark.getDouble(baseline, key);
+			actual = ThroughputBenchmark.getDouble(results, key);
+			if(Math.max(expected, actual) < MIN_PHASE_MILLIS) continue;
+			if(actual > expected * (1 + tolerance))
+				regressions.add(String.format("%s: %.3f -> %.3f (%+.0f%%)", key, expected, actual, expected == 0 ? 100 : (actual / expected - 1) * 100));
+		}
+
+		return regressions;
+	}
+
+	/**
+	 * Returns the number of plausible patches that the repair logged.
+	 */
+	private static int countPatches(File buildDirectory){
+		String[] patches = new File(buildDirectory, "patches").list();
+		return patches == null ? 0 : patches.length;
+	}
+
+	/**
+	 * Prints the results.
+	 */
+	private static void print(Properties results){
+		System.out.println();
+		System.out.println(String.format("%s attempts in %s s: %s attempts/minute, %s patches, first patch after %s s.",
+				results.getProperty("attempts"), results.getProperty("elapsed_seconds"), results.getProperty("attempts_per_minute"),
+				results.getProperty("patches"), results.getProperty("seconds_to_first_patch")));
+		System.out.println(String.format("%-12s %8s %10s %10s %10s %12s", "phase", "count", "mean", "p50", "p90", "total"));
+		for(String phase : TimingJournal.getPhaseNames()){
+			String key = "phase." + phase.replace(' ', '_');
+			System.out.println(String.format("%-12s %8s %10s %10s %10s %12s", phase, results.getProperty(key + ".count"),
+					results.getProperty(key + ".mean_ms"), results.getProperty(key + ".p50_ms"),
+					results.getProperty(key + ".p90_ms"), results.getProperty(key + ".total_ms")));
+		}
+	}
+
+	private static double getDouble(Properties properties, String key){
+		return Double.parseDouble(properties.getProperty(key, "0"));
+	}
+
+	private static String format(double value){
+		return String.format("%.3f", value);
+	}
+
+}
@@ -1,5 +1,13 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * TestExecutor specifies the interface to test the program under repair.
  * 
@@ -10,6 +18,32 @@ package ca.uwaterloo.ece.qhanam.jrsrepair;
  */
 public abstract class AbstractTestExecutor {
 	
+	/* Patterns for reading the results of individual tests from JUnit's text output (JUnitCore or Ant's junit task). */
+	private static final Pattern SUITE = Pattern.compile("(?:Running|Testsuite:) (\\S+)");
+	private static final Pattern TESTS_RUN = Pattern.compile("Tests run: (\\d+)|OK \\((\\d+) tests?\\)");
+	private static final Pattern FAILED_TEST = Pattern.compile("^(?:\\[junit\\] )?(?:\\d+\\) |Testcase: )([\\w$]+)\\(([\\w.$]+)\\)");
+	private static final Pattern FAILURES = Pattern.compile("Failures: [1-9]|Errors: [1-9]|FAILURES!!!");
+	
+	/* How long (in milliseconds) the tests may run before they are killed. */
+	protected long timeout;
+	
+	/* The results of the last call to runTests(). */
+	protected int testsRun;
+	protected Set<String> failedTests;
+	
+	/* The test counts for each suite while the results are read. */
+	private Map<String, Integer> suites;
+	private String suite;
+	
+	/**
+	 * @param timeout The default time out for the tests, in milliseconds.
+	 */
+	public AbstractTestExecutor(long timeout){
+		this.timeout = timeout;
+		this.testsRun = -1;
+		this.failedTests = new HashSet<String>();
+	}
+	
 	/**
 	 * Runs the the test cases and returns the status.
 	 * @return NOT_COMPILED = failed to compile, TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
@@ -18,9 +52,133 @@ public abstract class AbstractTestExecutor {
 	public abstract Status runTests() throws Exception;
 	
 	/**
-	 * The possible results from runTests()
+	 * Runs some or all of the test cases and returns the status. Executors
+	 * that don't support test selection or fail-fast (see supportsTestSelection())
+	 * run all the tests.
+	 * @param tests The tests to run in the format "[class name]#[method name]", or null to run all the tests.
+	 * @param failFast If true, stop at the first failing test.
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	public Status runTests(List<String> tests, boolean failFast) throws Exception{
+		return this.runTests();
+	}
+	
+	/**
+	 * Returns true if runTests(List, boolean) can run a subset of the tests.
+	 * @return
+	 */
+	public boolean supportsTestSelection(){
+		return false;
+	}
+	
+	/**
+	 * Returns true if the executor runs the tests from class files on disk. If
+	 * false, the class files are passed to setCompiledClasses instead.
+	 * @return
+	 */
+	public boolean requiresClassFiles(){
+		return true;
+	}
+	
+	/**
+	 * Gives the executor the class files of the program to test. Only used by
+	 * executors that do not read class files from disk.
+	 * @param classes The bytes of each class, keyed by binary class name.
+	 */
+	public void setCompiledClasses(Map<String, byte[]> classes){ }
+	
+	/**
+	 * Sets how long the tests may run before they are killed and the run is
+	 * reported as TIMEOUT.
+	 * @param timeout The time out in milliseconds.
+	 */
+	public void setTimeout(long timeout){
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * Returns how long the tests may run before they are killed.
+	 * @return The time out in milliseconds.
+	 */
+	public long getTimeout(){
+		return this.timeout;
+	}
+	
+	/**
+	 * Returns the number of tests that were run by the last call to runTests().
+	 * @return The number of tests or -1 if it is not known (e.g., the tests timed out).
+	 */
+	public int getTestsRun(){
+		return this.testsRun;
+	}
+	
+	/**
+	 * Returns the tests that failed in the last call to runTests().
+	 * @return The failed tests in the format "[class name]#[method name]".
+	 */
+	public Set<String> getFailedTests(){
+		return this.failedTests;
+	}
+	
+	/**
+	 * Starts reading the results of a test run (see readTestResult()).
+	 */
+	protected void startTestResults(){
+		this.suites = new HashMap<String, Integer>();
+		this.suite = "";
+		this.failedTests = new HashSet<String>();
+		this.testsRun = -1;
+	}
+
+	/**
+	 * Reads the number of tests run and the failed tests from one line of
+	 * JUnit's text output (from JUnitCore or Ant's junit task). The lines are
+	 * read as they are printed, so the executor knows a test failed before
+	 * the run is over. The tests can print lines that look like failures, so
+	 * the return value is only used to stop a fail-fast run early; the final
+	 * verdict comes from the executor (e.g., "FAILURES!!!" or "BUILD FAILED").
+	 * @param line A line of the output of the test script.
+	 * @return True if the line shows that a test failed.
+	 */
+	protected boolean readTestResult(String line){
+		line = line.trim();
+		Matcher matcher = SUITE.matcher(line);
+		if(matcher.find()) this.suite = matcher.group(1);
+
+		/* Ant prints the summary more than once per test suite, so keep the largest count for each suite. */
+		matcher = TESTS_RUN.matcher(line);
+		if(matcher.find()){
+			/* The program under test can print anything, so a count that doesn't fit in an int is not a test count. */
+			String digits = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+			long count = digits.length() > 9 ? -1 : Long.parseLong(digits);
+			if(count >= 0 && (!this.suites.containsKey(this.suite) || this.suites.get(this.suite) < count)) this.suites.put(this.suite, (int) count);
+		}
+
+		matcher = FAILED_TEST.matcher(line);
+		if(matcher.find()){
+			this.failedTests.add(matcher.group(2) + "#" + matcher.group(1));
+			return true;
+		}
+
+		return FAILURES.matcher(line).find();
+	}
+
+	/**
+	 * Finishes reading the results of a test run and counts the tests that were run.
+	 */
+	protected void finishTestResults(){
+		long testsRun = this.suites.isEmpty() ? -1 : 0;
+		for(int count : this.suites.values()) testsRun += count;
+		this.testsRun = (int) Math.min(testsRun, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * The possible results from runTests(). TIMEOUT means the tests were
+	 * killed because they ran longer than the time out (e.g., a mutation
+	 * caused an infinite loop).
 	 */
 	public enum Status{
-		FAILED, PASSED, ERROR
+		FAILED, PASSED, ERROR, TIMEOUT
 	}
 }
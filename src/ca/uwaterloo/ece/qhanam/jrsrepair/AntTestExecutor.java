@@ -1,6 +1,7 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * AntTestExecutor compiles and runs the JUnit tests for the program under repair using
@@ -13,8 +14,12 @@ public class AntTestExecutor extends AbstractTestExecutor {
 	private File baseDirectory;
 	private String antPath;
 	private String antTestTarget;
+	
+	/* The result of the current run, once the output shows it. */
+	private Status verdict;
 
 	public AntTestExecutor(File baseDirectory, String antPath, String antTestTarget){
+		super(10000);
 		this.baseDirectory = baseDirectory;
 		this.antPath = antPath;
 		this.antTestTarget = antTestTarget;
@@ -26,6 +31,19 @@ public class AntTestExecutor extends AbstractTestExecutor {
 	 * @throws Exception
 	 */
 	public Status runTests() throws Exception{
+		return this.runTests(null, false);
+	}
+	
+	/**
+	 * Run the script (e.g., ant) to run the JUnit test cases. The test target
+	 * decides which tests are run, so the tests can't be selected.
+	 * @param tests Ignored (all the tests are run).
+	 * @param failFast If true, kill ant as soon as the output shows that a test failed.
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	@Override
+	public Status runTests(List<String> tests, final boolean failFast) throws Exception{
 
 	    /* The program has successfully compiled, so run the JUnit tests. */
         ProcessBuilder builder = new ProcessBuilder(this.antPath, this.antTestTarget);
@@ -33,30 +51,55 @@ public class AntTestExecutor extends AbstractTestExecutor {
         builder.redirectErrorStream(true);
         Process process = builder.start();
 	    
-        /* Handle the output. */
-        StreamReaderThread streamReaderThread = new StreamReaderThread(process.getInputStream());
-        streamReaderThread.start();
-
-        /* Wait for the process to finish or timeout. */
-		ProcessWithTimeout processWithTimeout = new ProcessWithTimeout(process);
-		int exitCode = processWithTimeout.waitForProcess(10000);
+        /* Wait for the process to finish or timeout. The supervisor collects the output
+         * and passes each line to the listener, which watches for the verdict. */
+        this.startTestResults();
+        this.verdict = null;
+        ProcessSupervisor.SupervisedProcess supervised = ProcessSupervisor.getInstance().supervise(process, this.timeout,
+        		new ProcessSupervisor.LineListener() {
+			@Override
+			public boolean readLine(String line) {
+				return AntTestExecutor.this.readLine(line, failFast);
+			}
+		});
+		int exitCode = supervised.waitFor();
+		this.finishTestResults();
 
 		/* Handle the result. */
-		if (exitCode == Integer.MIN_VALUE)
+		if (exitCode == ProcessSupervisor.TIMED_OUT)
+		{
+			this.testsRun = -1;
+		    return Status.TIMEOUT;
+		}
+		else if (exitCode == ProcessSupervisor.LISTENER_FAILED)
 		{
-		    return Status.FAILED;
+			return Status.ERROR;
 		}
-		else
+		else if (this.verdict != null)
 		{
-			streamReaderThread.join(100);
-			String output = streamReaderThread.getOutput();
-			
-            /* If the script output contains "BUILD SUCCESSFUL", then the program has passed all the test cases (if failonerror is on). */
-            if(output.indexOf("BUILD SUCCESSFUL") >= 0) return Status.PASSED;
-            if(output.indexOf("BUILD FAILED") >= 0) return Status.FAILED;
+			return this.verdict;
 		}
 
-        /* The program compiled, but failed one or more test cases. */
+        /* The program compiled, but ant did not report the result. */
         return Status.ERROR;
 	}
+	
+	/**
+	 * Reads one line of ant's output.
+	 * @return True if ant can be killed because the result is known.
+	 */
+	private boolean readLine(String line, boolean failFast){
+		boolean failed = this.readTestResult(line);
+
+        /* If the script output contains "BUILD SUCCESSFUL", then the program has passed all the test cases (if failonerror is on). */
+		if(line.indexOf("BUILD SUCCESSFUL") >= 0) this.verdict = Status.PASSED;
+		else if(line.indexOf("BUILD FAILED") >= 0) this.verdict = Status.FAILED;
+
+		/* With fail-fast, the first failed test decides the result. */
+		else if(failed && failFast){
+			this.verdict = Status.FAILED;
+			return true;
+		}
+		return false;
+	}
 }
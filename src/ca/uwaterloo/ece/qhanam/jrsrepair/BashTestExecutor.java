@@ -1,6 +1,7 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * BashTestExecutor runs the JUnit tests for the program under repair using
@@ -12,8 +13,12 @@ public class BashTestExecutor extends AbstractTestExecutor {
 	
 	private File baseDirectory;
 	private String scriptPath;
+	
+	/* True once the output of the current run shows "FAILURES!!!" (or, with fail-fast, a failed test). */
+	private boolean failed;
 
 	public BashTestExecutor(File baseDirectory, String scriptPath){
+		super(30000);
 		this.baseDirectory = baseDirectory;
 		this.scriptPath = scriptPath;
 	}
@@ -24,6 +29,19 @@ public class BashTestExecutor extends AbstractTestExecutor {
 	 * @throws Exception
 	 */
 	public Status runTests() throws Exception{
+		return this.runTests(null, false);
+	}
+	
+	/**
+	 * Run the script that executes the JUnit test cases. The script decides
+	 * which tests are run, so the tests can't be selected.
+	 * @param tests Ignored (all the tests are run).
+	 * @param failFast If true, kill the script as soon as the output shows that a test failed.
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	@Override
+	public Status runTests(List<String> tests, final boolean failFast) throws Exception{
 
 	    /* The program has successfully compiled, so run the JUnit tests. */
         ProcessBuilder builder = new ProcessBuilder(this.scriptPath);
@@ -31,29 +49,34 @@ public class BashTestExecutor extends AbstractTestExecutor {
         builder.redirectErrorStream(true);
         Process process = builder.start();
 
-        /* Handle the output. */
-        StreamReaderThread streamReaderThread = new StreamReaderThread(process.getInputStream());
-        streamReaderThread.start();
-
-        /* Wait for the process to finish or timeout. */
-		ProcessWithTimeout processWithTimeout = new ProcessWithTimeout(process);
-		int exitCode = processWithTimeout.waitForProcess(30000);
+        /* Wait for the process to finish or timeout. The supervisor collects the output
+         * and passes each line to the listener, which watches for failures. */
+        this.startTestResults();
+        this.failed = false;
+        ProcessSupervisor.SupervisedProcess supervised = ProcessSupervisor.getInstance().supervise(process, this.timeout,
+        		new ProcessSupervisor.LineListener() {
+			@Override
+			public boolean readLine(String line) {
+				/* JUnit will output "FAILURES!!!" if one or more tests fail or error out. With
+				 * fail-fast, the first failed test (or a "Failures: 1" summary) stops the run early. */
+				boolean testFailed = BashTestExecutor.this.readTestResult(line);
+				if(line.indexOf("FAILURES!!!") >= 0) BashTestExecutor.this.failed = true;
+				else if(testFailed && failFast) BashTestExecutor.this.failed = true;
+				return BashTestExecutor.this.failed && failFast;
+			}
+		});
+		int exitCode = supervised.waitFor();
+		this.finishTestResults();
 
 		/* Handle the result. */
-		if (exitCode == Integer.MIN_VALUE)
-		{
-		    return Status.FAILED;
-		}
-		else
+		if (exitCode == ProcessSupervisor.TIMED_OUT)
 		{
-			streamReaderThread.join(100);
-			String output = streamReaderThread.getOutput();
-			
-          /* JUnit will output "FAILURES!!!" if one or more tests fail or error out.
-           * If we want more details, we can look for this message: "Tests run: 4,  Failures: 1,  Errors: 0" */
-          if(output.indexOf("FAILURES!!!") >= 0) return Status.FAILED;
-          else return Status.PASSED;
+			this.testsRun = -1;
+		    return Status.TIMEOUT;
 		}
+		else if (exitCode == ProcessSupervisor.LISTENER_FAILED) return Status.ERROR;
+		else if (this.failed) return Status.FAILED;
+		else return Status.PASSED;
 
 	}
 	
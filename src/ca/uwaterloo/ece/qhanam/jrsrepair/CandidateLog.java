@@ -0,0 +1,67 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.Stack;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+
+/**
+ * Stores the state and log records of one candidate while it runs.
+ *
+ * Candidates may be run concurrently by different workers, so the log
+ * records are buffered here and passed to the shared LogWriter by
+ * commit(), which JRSRepair calls in candidate order. This way the
+ * logs are the same as for a serial run.
+ *
+ * @author qhanam
+ */
+public class CandidateLog {
+
+	public int candidate;
+
+	/* Keep track of the mutation operations for logging. */
+	public Stack<String> patches;
+
+	/* Keep track of the statements mutated by the operations (for test selection). */
+	public Stack<SourceStatement> mutated;
+
+	private StringBuilder mutationLog;
+	private StringBuilder compileLog;
+
+	public CandidateLog(int candidate){
+		this.candidate = candidate;
+		this.patches = new Stack<String>();
+		this.mutated = new Stack<SourceStatement>();
+		this.mutationLog = new StringBuilder();
+		this.compileLog = new StringBuilder();
+	}
+
+	/**
+	 * Buffers a mutation-log record.
+	 * @param m The mutation that was applied.
+	 * @param generation The generation the mutation was applied in.
+	 */
+	public void logMutation(Mutation m, int generation){
+		this.mutationLog.append("Candidate " + this.candidate + ", Generation" + generation
+								+ "\n" + m.toString());
+	}
+
+	/**
+	 * Buffers a compile-log record.
+	 * @param generation The generation that was compiled.
+	 * @param message The compiler output.
+	 */
+	public void logCompileError(int generation, String message){
+		this.compileLog.append("Candidate " + this.candidate + ", Generation" + generation
+							   + "\n" + message + "\n********************\n");
+	}
+
+	/**
+	 * Appends the buffered records to the mutation-log and compile-log files.
+	 * @param logWriter The writer for the log files in the build directory.
+	 */
+	public void commit(LogWriter logWriter){
+		if(this.mutationLog.length() > 0) logWriter.append("mutation-log", this.mutationLog.toString());
+		if(this.compileLog.length() > 0) logWriter.append("compile-log", this.compileLog.toString());
+	}
+
+}
@@ -0,0 +1,452 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ISourceFileCoverage;
+import org.jacoco.core.tools.ExecFileLoader;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads line coverage into a LineCoverage. Three formats are read:
+ *
+ * 	Text (the default): one line per covered line, [package]:[class]:[line]:[weight].
+ * 		Large files are split into chunks that are parsed in parallel. Malformed
+ * 		lines are skipped and reported.
+ * 	JaCoCo XML report (*.xml): the lines with covered instructions.
+ * 	JaCoCo execution data (*.exec): the lines with covered instructions. The class
+ * 		files of the program are needed to map the execution data to lines.
+ *
+ * The JaCoCo formats have no weights, so every covered line has weight 1.
+ *
+ * @author qhanam
+ */
+class CoverageLoader {
+
+	/* The size of the chunks of a text file that are parsed in parallel. */
+	private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/* The longest line that is read (longer lines are malformed). */
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	/* The number of malformed lines that are printed, and how much of each. */
+	private static final int MAX_REPORTED_ERRORS = 10;
+	private static final int MAX_ERROR_TEXT = 200;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* The powers of ten that are exact doubles (see parseWeight()). */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Reads a coverage file in the format given by its extension.
+	 * @param file The coverage file.
+	 * @param classes The class files of the program (a directory or jar; only needed for .exec files).
+	 * @param coverage The coverage to add the lines to.
+	 * @throws Exception
+	 */
+	public static void read(File file, File classes, LineCoverage coverage) throws Exception{
+		String name = file.getName().toLowerCase();
+		if(name.endsWith(".xml")){
+			CoverageLoader.readJaCoCoXML(file, coverage);
+		}
+		else if(name.endsWith(".exec")){
+			if(classes == null) throw new Exception("CoverageLoader.read: the class files are needed to read " + file + " (set coverage_classes).");
+			CoverageLoader.readJaCoCoExec(file, classes, coverage);
+		}
+		else{
+			CoverageLoader.readText(file, coverage, CHUNK_SIZE);
+		}
+	}
+
+	/**
+	 * Reads a text coverage file. The file is split into chunks (at line
+	 * boundaries) which are parsed in parallel and then added in order, so a
+	 * line that appears twice gets its last weight.
+	 * @param file The coverage file.
+	 * @param coverage The coverage to add the lines to.
+	 * @param chunkSize The size of the chunks.
+	 * @throws Exception
+	 */
+	static void readText(File file, LineCoverage coverage, int chunkSize) throws Exception{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+
+			/* Each chunk parses the lines that start in it. */
+			List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>();
+			long chunkCount = Math.max(1, (size + chunkSize - 1) / chunkSize);
+			for(long i = 0; i < chunkCount; i++){
+				final long chunkStart = i * chunkSize;
+				final long chunkEnd = Math.min(size, chunkStart + chunkSize);
+				tasks.add(new Callable<Chunk>() {
+					@Override
+					public Chunk call() throws Exception {
+						return CoverageLoader.parseChunk(channel, size, chunkStart, chunkEnd);
+					}
+				});
+			}
+
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			if(tasks.size() == 1){
+				chunks.add(tasks.get(0).call());
+			}
+			else{
+				int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try{
+					for(Future<Chunk> future : executor.invokeAll(tasks)){
+						try{
+							chunks.add(future.get());
+						}
+						catch(ExecutionException e){
+							if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+							throw e;
+						}
+					}
+				}
+				finally{
+					executor.shutdown();
+				}
+			}
+
+			/* Add the chunks in order and report the malformed lines with their line numbers. */
+			int linesBefore = 0;
+			int errors = 0;
+			List<String> reported = new ArrayList<String>();
+			for(Chunk chunk : chunks){
+				chunk.addTo(coverage);
+				errors += chunk.errors;
+				for(int i = 0; i < chunk.errorLines.size() && reported.size() < MAX_REPORTED_ERRORS; i++)
+					reported.add("  line " + (linesBefore + chunk.errorLines.get(i)) + ": " + chunk.errorText.get(i));
+				linesBefore += chunk.lines;
+			}
+			if(errors > 0){
+				System.err.println("Skipped " + errors + " malformed lines in " + file + " (expected [package]:[class]:[line]:[weight]):");
+				for(String error : reported) System.err.println(error);
+			}
+		}
+		finally{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parses the lines that start in [start, end).
+	 */
+	private static Chunk parseChunk(FileChannel channel, long size, long start, long end) throws Exception{
+		Chunk chunk = new Chunk();
+		if(size == 0) return chunk;
+
+		/* Map one byte before the chunk (to see if the chunk starts a line) and enough after it to finish its last line. */
+		long mapStart = Math.max(0, start - 1);
+		long mapEnd = Math.min(size, end + MAX_LINE_LENGTH);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+		int limit = (int) (end - mapStart);
+		int position = (int) (start - mapStart);
+
+		/* Skip the end of a line that started in the previous chunk. */
+		if(start > 0 && buffer.get(position - 1) != '\n'){
+			while(position < buffer.limit() && buffer.get(position) != '\n') position++;
+			position++;
+		}
+
+		while(position < limit){
+			int lineEnd = position;
+			while(lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') lineEnd++;
+			int next = lineEnd + 1;
+
+			/* A line that is too long (including one that runs past the mapped range) is malformed, not truncated. */
+			if(lineEnd - position > MAX_LINE_LENGTH){
+				chunk.lines++;
+				chunk.error(buffer, position, lineEnd);
+				position = next;
+				continue;
+			}
+
+			if(lineEnd > position && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+			chunk.parseLine(buffer, position, lineEnd);
+			position = next;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Parses a non-negative decimal weight (e.g., 0.1). When the digits fit in
+	 * a long and there are at most 22 decimals, the weight is the quotient of
+	 * two exact doubles, which is correctly rounded (the same value as
+	 * Double.parseDouble). Otherwise Double.parseDouble is used.
+	 * @return The weight, or NaN if it is not a number.
+	 */
+	private static double parseWeight(MappedByteBuffer buffer, int start, int end){
+		long mantissa = 0;
+		int decimals = -1;
+		int digits = 0;
+		for(int i = start; i < end; i++){
+			byte b = buffer.get(i);
+			if(b >= '0' && b <= '9'){
+				mantissa = mantissa * 10 + (b - '0');
+				if(mantissa != 0 || digits > 0) digits++;
+				if(decimals >= 0) decimals++;
+			}
+			else if(b == '.' && decimals < 0){
+				decimals = 0;
+			}
+			else{
+				return CoverageLoader.parseWeightSlowly(buffer, start, end);
+			}
+		}
+		if(end == start || end - start == 1 && decimals == 0) return Double.NaN;
+		if(digits > 15 || decimals > 22) return CoverageLoader.parseWeightSlowly(buffer, start, end);
+		return decimals <= 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[decimals];
+	}
+
+	private static double parseWeightSlowly(MappedByteBuffer buffer, int start, int end){
+		try{
+			return Double.parseDouble(CoverageLoader.decode(buffer, start, end));
+		}
+		catch(NumberFormatException e){
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Decodes a range of the buffer (UTF-8).
+	 */
+	private static String decode(MappedByteBuffer buffer, int start, int end){
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(start + i);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * The lines parsed from one chunk of a text file. The classes get ids that
+	 * are local to the chunk until the chunk is added to the coverage.
+	 */
+	private static class Chunk {
+		private List<String> packages = new ArrayList<String>();
+		private List<String> classes = new ArrayList<String>();
+		private HashMap<String, HashMap<String, Integer>> classIds = new HashMap<String, HashMap<String, Integer>>();
+
+		/* The covered lines. */
+		private int[] classOf = new int[1024];
+		private int[] lineNumbers = new int[1024];
+		private double[] weights = new double[1024];
+		private int size = 0;
+
+		/* The number of lines in the chunk and the malformed lines. */
+		public int lines = 0;
+		public int errors = 0;
+		public List<Integer> errorLines = new ArrayList<Integer>();
+		public List<String> errorText = new ArrayList<String>();
+
+		/* The package and class of the previous line (most lines are from the same class as the line before). */
+		private byte[] lastPackage = new byte[0];
+		private byte[] lastClass = new byte[0];
+		private int lastClassId = -1;
+
+		/* The positions of the separators of the current line. */
+		private int[] colons = new int[3];
+
+		/**
+		 * Parses one line ([start, end) of the buffer, without the line break).
+		 */
+		public void parseLine(MappedByteBuffer buffer, int start, int end){
+			this.lines++;
+			if(start == end) return;
+
+			/* Find the three separators. */
+			int[] colons = this.colons;
+			int count = 0;
+			for(int i = start; i < end; i++){
+				if(buffer.get(i) != ':') continue;
+				if(count == 3){ this.error(buffer, start, end); return; }
+				colons[count++] = i;
+			}
+			if(count != 3){ this.error(buffer, start, end); return; }
+
+			int lineNumber = Chunk.parseLineNumber(buffer, colons[1] + 1, colons[2]);
+			double weight = CoverageLoader.parseWeight(buffer, colons[2] + 1, end);
+			if(lineNumber < 0 || Double.isNaN(weight)){ this.error(buffer, start, end); return; }
+
+			int classId = this.getClassId(buffer, start, colons[0], colons[0] + 1, colons[1]);
+			this.add(classId, lineNumber, weight);
+		}
+
+		/**
+		 * Returns the local id of the class (reusing the last id if the class is the same as the line before).
+		 */
+		private int getClassId(MappedByteBuffer buffer, int packageStart, int packageEnd, int classStart, int classEnd){
+			if(Chunk.equals(buffer, packageStart, packageEnd, this.lastPackage) && Chunk.equals(buffer, classStart, classEnd, this.lastClass)) return this.lastClassId;
+
+			String packageName = CoverageLoader.decode(buffer, packageStart, packageEnd);
+			String className = CoverageLoader.decode(buffer, classStart, classEnd);
+			HashMap<String, Integer> classes = this.classIds.get(packageName);
+			if(classes == null){
+				classes = new HashMap<String, Integer>();
+				this.classIds.put(packageName, classes);
+			}
+			Integer id = classes.get(className);
+			if(id == null){
+				id = this.packages.size();
+				this.packages.add(packageName);
+				this.classes.add(className);
+				classes.put(className, id);
+			}
+
+			this.lastPackage = packageName.getBytes(UTF8);
+			this.lastClass = className.getBytes(UTF8);
+			this.lastClassId = id;
+			return id;
+		}
+
+		private void add(int classId, int lineNumber, double weight){
+			if(this.size == this.weights.length){
+				this.classOf = Arrays.copyOf(this.classOf, this.size * 2);
+				this.lineNumbers = Arrays.copyOf(this.lineNumbers, this.size * 2);
+				this.weights = Arrays.copyOf(this.weights, this.size * 2);
+			}
+			this.classOf[this.size] = classId;
+			this.lineNumbers[this.size] = lineNumber;
+			this.weights[this.size] = weight;
+			this.size++;
+		}
+
+		private void error(MappedByteBuffer buffer, int start, int end){
+			this.errors++;
+			if(this.errorLines.size() < MAX_REPORTED_ERRORS){
+				this.errorLines.add(this.lines);
+				if(end - start > MAX_ERROR_TEXT) this.errorText.add(CoverageLoader.decode(buffer, start, start + MAX_ERROR_TEXT) + "...");
+				else this.errorText.add(CoverageLoader.decode(buffer, start, end));
+			}
+		}
+
+		/**
+		 * Adds the lines to the coverage (giving the classes their ids in the coverage).
+		 */
+		public void addTo(LineCoverage coverage){
+			int[] ids = new int[this.packages.size()];
+			for(int i = 0; i < ids.length; i++) ids[i] = coverage.addClass(this.packages.get(i), this.classes.get(i));
+			for(int i = 0; i < this.size; i++) coverage.put(ids[this.classOf[i]], this.lineNumbers[i], this.weights[i]);
+		}
+
+		/**
+		 * Parses a line number.
+		 * @return The line number, or -1 if it is not a number.
+		 */
+		private static int parseLineNumber(MappedByteBuffer buffer, int start, int end){
+			if(start == end || end - start > 9) return -1;
+			int number = 0;
+			for(int i = start; i < end; i++){
+				byte b = buffer.get(i);
+				if(b < '0' || b > '9') return -1;
+				number = number * 10 + (b - '0');
+			}
+			return number;
+		}
+
+		private static boolean equals(MappedByteBuffer buffer, int start, int end, byte[] bytes){
+			if(end - start != bytes.length) return false;
+			for(int i = 0; i < bytes.length; i++){
+				if(buffer.get(start + i) != bytes[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads a JaCoCo XML report. A line is covered if it has covered
+	 * instructions. The class of a line is the name of its source file
+	 * (the AST visitor uses the first type in the compilation unit).
+	 * @param file The report.
+	 * @param coverage The coverage to add the lines to.
+	 * @throws Exception
+	 */
+	static void readJaCoCoXML(File file, final LineCoverage coverage) throws Exception{
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setValidating(false);
+		factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		SAXParser parser = factory.newSAXParser();
+
+		parser.parse(file, new DefaultHandler() {
+			private String packageName;
+			private int classId = -1;
+
+			@Override
+			public void startElement(String uri, String localName, String qName, Attributes attributes) {
+				if(qName.equals("package")){
+					this.packageName = attributes.getValue("name").replace('/', '.');
+				}
+				else if(qName.equals("sourcefile")){
+					this.classId = coverage.addClass(this.packageName, CoverageLoader.getClassName(attributes.getValue("name")));
+				}
+				else if(qName.equals("line") && this.classId >= 0){
+					String covered = attributes.getValue("ci");
+					if(covered != null && Integer.parseInt(covered) > 0)
+						coverage.put(this.classId, Integer.parseInt(attributes.getValue("nr")), 1.0);
+				}
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) {
+				if(qName.equals("sourcefile")) this.classId = -1;
+			}
+		});
+	}
+
+	/**
+	 * Reads a JaCoCo execution data file. The execution data only has the
+	 * probes of each class, so the class files of the program are analyzed to
+	 * find the covered lines. A line is covered if it has covered instructions.
+	 * @param file The execution data.
+	 * @param classes The class files of the program (a directory or jar).
+	 * @param coverage The coverage to add the lines to.
+	 * @throws Exception
+	 */
+	static void readJaCoCoExec(File file, File classes, LineCoverage coverage) throws Exception{
+		ExecFileLoader loader = new ExecFileLoader();
+		loader.load(file);
+
+		CoverageBuilder builder = new CoverageBuilder();
+		Analyzer analyzer = new Analyzer(loader.getExecutionDataStore(), builder);
+		analyzer.analyzeAll(classes);
+
+		for(ISourceFileCoverage source : builder.getSourceFiles()){
+			int classId = coverage.addClass(source.getPackageName().replace('/', '.'), CoverageLoader.getClassName(source.getName()));
+			for(int line = source.getFirstLine(); line <= source.getLastLine(); line++){
+				int status = source.getLine(line).getStatus();
+				if(status == ICounter.FULLY_COVERED || status == ICounter.PARTLY_COVERED) coverage.put(classId, line, 1.0);
+			}
+		}
+	}
+
+	/**
+	 * Returns the class name for a source file name (Foo.java -> Foo).
+	 */
+	private static String getClassName(String sourceFile){
+		int extension = sourceFile.lastIndexOf('.');
+		return extension < 0 ? sourceFile : sourceFile.substring(0, extension);
+	}
+
+}
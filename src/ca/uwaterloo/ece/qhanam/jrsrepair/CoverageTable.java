@@ -0,0 +1,131 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.Arrays;
+
+/**
+ * A map from covered lines to their weights. A line is packed into a long
+ * key ([class id] << 32 | [line number]), and the keys and weights are
+ * stored in two arrays with open addressing (linear probing), so a lookup
+ * doesn't allocate and an entry takes 16 bytes (at most twice that with
+ * the free slots).
+ *
+ * @author qhanam
+ */
+class CoverageTable {
+
+	/* Marks a free slot (keys are never negative). */
+	private static final long FREE = -1L;
+
+	/* The capacity of an empty table (a power of two). */
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private double[] weights;
+	private int size;
+	private int mask;
+
+	public CoverageTable(){
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize The number of lines the table will hold (so it doesn't grow).
+	 */
+	public CoverageTable(int expectedSize){
+		int capacity = INITIAL_CAPACITY;
+		while(capacity < expectedSize * 2) capacity <<= 1;
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Packs a line into a key.
+	 * @param classId The id of the class (>= 0).
+	 * @param lineNumber The line number (>= 0).
+	 * @return The key.
+	 */
+	public static long key(int classId, int lineNumber){
+		return ((long) classId << 32) | (lineNumber & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Sets the weight of a line (replacing its old weight).
+	 * @param key The packed line (see key()).
+	 * @param weight The weight.
+	 */
+	public void put(long key, double weight){
+		if(key < 0) throw new IllegalArgumentException("CoverageTable.put: negative key " + key);
+
+		/* Grow before the table is more than half full, so the probe sequences stay short. */
+		if((this.size + 1) * 2 > this.keys.length) this.grow();
+
+		int slot = this.find(key);
+		if(this.keys[slot] == FREE){
+			this.keys[slot] = key;
+			this.size++;
+		}
+		this.weights[slot] = weight;
+	}
+
+	/**
+	 * Returns the weight of a line.
+	 * @param key The packed line (see key()).
+	 * @return The weight, or NaN if the line is not in the table.
+	 */
+	public double get(long key){
+		int slot = this.find(key);
+		return this.keys[slot] == FREE ? Double.NaN : this.weights[slot];
+	}
+
+	/**
+	 * Returns the number of lines in the table.
+	 * @return
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Returns the slot that holds the key, or the free slot where it would go.
+	 */
+	private int find(long key){
+		int slot = CoverageTable.hash(key) & this.mask;
+		while(this.keys[slot] != FREE && this.keys[slot] != key) slot = (slot + 1) & this.mask;
+		return slot;
+	}
+
+	/**
+	 * Spreads the bits of the key (the finalizer of MurmurHash3), since the
+	 * line numbers of a class are consecutive.
+	 */
+	private static int hash(long key){
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * Doubles the capacity of the table (when it would be more than half full).
+	 */
+	private void grow(){
+		long[] keys = this.keys;
+		double[] weights = this.weights;
+		this.allocate(keys.length * 2);
+		for(int slot = 0; slot < keys.length; slot++){
+			if(keys[slot] == FREE) continue;
+			int newSlot = this.find(keys[slot]);
+			this.keys[newSlot] = keys[slot];
+			this.weights[newSlot] = weights[slot];
+		}
+	}
+
+	private void allocate(int capacity){
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, FREE);
+		this.weights = new double[capacity];
+		this.mask = capacity - 1;
+	}
+
+}
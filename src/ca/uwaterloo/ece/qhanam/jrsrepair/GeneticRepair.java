@@ -0,0 +1,471 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.GeneticContext;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+
+/**
+ * GeneticRepair searches for repairs with GenProg's genetic algorithm.
+ *
+ * A variant of the program is represented by its list of mutations (genes).
+ * Each variant is scored by the weighted number of positive tests (which
+ * pass on the faulty program) and negative tests (which fail on the faulty
+ * program) that it passes. Parents are picked by tournament selection and
+ * combined with one-point crossover of their mutation lists, and children
+ * get a new random mutation appended to their list. Variants that pass all
+ * the tests are logged as patches.
+ *
+ * The mutations are the same as in the random search (MutationContext), and
+ * the variants of a generation are evaluated concurrently when there is more
+ * than one worker context.
+ *
+ * @author qhanam
+ */
+public class GeneticRepair {
+
+	/* The context of the first worker. Shared output (logs, patches) is written to its build directory. */
+	private Context context;
+
+	/* The contexts of the workers. Each worker evaluates one variant at a time. */
+	private Context[] workers;
+	private ExecutorService pool;
+	private BlockingQueue<Context> idleWorkers;
+
+	private GeneticContext genetic;
+
+	/* Used for selection and crossover. Mutations use each worker's own generator. */
+	private Random random;
+
+	/* The tests that fail on the faulty program. */
+	private Set<String> negativeTests;
+
+	/* The number of variants that have been evaluated (used to number the variants in the logs). */
+	private int evaluated;
+
+	/* Writes the log files and patches. */
+	private LogWriter logWriter;
+
+	/* Records the timings of each variant (null if timing_journal is not set). */
+	private TimingJournal journal;
+	private RepairMetrics metrics;
+
+	/**
+	 * @param workers The contexts of the workers (built by ContextFactory.buildContexts).
+	 * @param logWriter Writes the log files and patches to the build directory of the first worker.
+	 * @param journal Records the timings of each variant (optional, may be null).
+	 * @param metrics The live metrics.
+	 */
+	public GeneticRepair(Context[] workers, LogWriter logWriter, TimingJournal journal, RepairMetrics metrics){
+		this.context = workers[0];
+		this.workers = workers;
+		this.genetic = this.context.repair.genetic;
+		this.random = new Random(this.context.repair.randomSeed);
+		this.negativeTests = new HashSet<String>();
+		this.evaluated = 0;
+		this.logWriter = logWriter;
+		this.journal = journal;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Evolves the population for the configured number of generations.
+	 * @throws Exception
+	 */
+	public void repair() throws Exception{
+		if(this.workers.length > 1){
+			this.pool = Executors.newFixedThreadPool(this.workers.length);
+			this.idleWorkers = new LinkedBlockingQueue<Context>(Arrays.asList(this.workers));
+		}
+
+		try{
+			this.findNegativeTests();
+
+			/* The initial population are single mutations of the faulty program. */
+            System.out.println("Running generation 0 ...");
+			List<Variant> population = new ArrayList<Variant>();
+			for(int i = 0; i < this.genetic.populationSize; i++) population.add(new Variant(new ArrayList<Gene>(), true));
+			this.evaluate(population);
+
+			for(int generation = 1; generation <= this.genetic.generations; generation++){
+                System.out.println("Running generation " + generation + " ...");
+				population = this.evaluate(this.reproduce(population));
+			}
+		}
+		finally{
+			if(this.pool != null) this.pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests the faulty program. The tests that fail are the negative tests
+	 * (unless they are given in the properties file). If the time out is
+	 * calibrated, the tests are timed with JRSRepair.CALIBRATION_TIMEOUT 
+	 * and the time out is set afterwards.
+	 * @throws Exception Throws an exception if the faulty program can't be
+	 * 					 compiled, the results of individual tests are unknown
+	 * 					 or the tests don't finish within the calibration time out.
+	 */
+	private void findNegativeTests() throws Exception{
+		this.negativeTests.addAll(this.context.test.getNegativeTests());
+
+		System.out.print("Testing the faulty program...");
+		if(this.context.compiler.compile() != JavaJDKCompiler.Status.COMPILED)
+			throw new Exception("The faulty program does not compile:\n" + this.context.compiler.dequeueCompileError());
+		this.context.compiler.dequeueCompileError();
+		JRSRepair.deployClasses(this.context);
+		boolean calibrate = this.context.repair.timeoutMultiplier > 0;
+		if(calibrate) this.context.test.setTimeout(JRSRepair.CALIBRATION_TIMEOUT);
+		long start = System.currentTimeMillis();
+		AbstractTestExecutor.Status status = this.context.test.runAllTests();
+		long baseline = System.currentTimeMillis() - start;
+		if(calibrate && status == AbstractTestExecutor.Status.TIMEOUT) throw new Exception(JRSRepair.CALIBRATION_TIMED_OUT);
+
+		if(this.context.test.getTestsRun() < 0)
+			throw new Exception("The genetic search needs the results of individual tests, but they could not be read from the test output.");
+		if(this.negativeTests.isEmpty()) this.negativeTests.addAll(this.context.test.getFailedTests());
+
+		System.out.println(" " + this.context.test.getTestsRun() + " tests, " + this.negativeTests.size() + " negative.");
+		if(status == AbstractTestExecutor.Status.PASSED) System.out.println("The faulty program passes all the tests.");
+
+		if(calibrate) JRSRepair.setTimeout(this.workers, baseline);
+	}
+
+	/**
+	 * Builds the next generation from the current population with tournament
+	 * selection and crossover. The children are mutated when they are evaluated.
+	 * @param population The evaluated population.
+	 * @return The children (not yet evaluated).
+	 */
+	private List<Variant> reproduce(List<Variant> population){
+		List<Variant> children = new ArrayList<Variant>();
+
+		while(children.size() < this.genetic.populationSize){
+			List<Gene> first = new ArrayList<Gene>(this.select(population).genes);
+			List<Gene> second = new ArrayList<Gene>(this.select(population).genes);
+
+			if(this.random.nextDouble() < this.genetic.crossoverRate){
+				List<List<Gene>> crossed = GeneticRepair.crossover(first, second, this.random);
+				first = crossed.get(0);
+				second = crossed.get(1);
+			}
+
+			for(List<Gene> genes : Arrays.asList(first, second)){
+				if(children.size() == this.genetic.populationSize) break;
+
+				/* A statement can only be mutated once, so drop the genes that mutate a statement again. */
+				Set<Integer> faulty = new HashSet<Integer>();
+				List<Gene> unique = new ArrayList<Gene>();
+				for(Gene gene : genes){
+					if(faulty.add(gene.faulty)) unique.add(gene);
+				}
+
+				boolean mutate = unique.isEmpty() || this.random.nextDouble() < this.genetic.mutationRate;
+				children.add(new Variant(unique, mutate));
+			}
+		}
+
+		return children;
+	}
+
+	/**
+	 * Selects a parent from the population by tournament selection.
+	 * @param population The evaluated population.
+	 * @return The selected parent.
+	 */
+	private Variant select(List<Variant> population){
+		double[] fitness = new double[population.size()];
+		for(int i = 0; i < fitness.length; i++) fitness[i] = population.get(i).fitness;
+		return population.get(GeneticRepair.select(fitness, this.genetic.tournamentSize, this.random));
+	}
+
+	/**
+	 * Tournament selection: the fittest of [tournamentSize] randomly picked
+	 * variants (the first one picked if several are the fittest).
+	 * @param fitness The fitness of each variant in the population.
+	 * @param tournamentSize The number of variants to pick (with replacement).
+	 * @param random Picks the variants.
+	 * @return The index of the selected variant.
+	 */
+	public static int select(double[] fitness, int tournamentSize, Random random){
+		int best = -1;
+		for(int i = 0; i < tournamentSize; i++){
+			int variant = random.nextInt(fitness.length);
+			if(best < 0 || fitness[variant] > fitness[best]) best = variant;
+		}
+		return best;
+	}
+
+	/**
+	 * One-point crossover: cuts each parent's list at a random point and swaps the tails.
+	 * @param first The first parent's mutation list.
+	 * @param second The second parent's mutation list.
+	 * @param random Picks the cut points.
+	 * @return The two children's mutation lists (the first parent's head is in the first child).
+	 */
+	public static <T> List<List<T>> crossover(List<T> first, List<T> second, Random random){
+		int firstCut = random.nextInt(first.size() + 1);
+		int secondCut = random.nextInt(second.size() + 1);
+		List<T> firstChild = new ArrayList<T>(first.subList(0, firstCut));
+		firstChild.addAll(second.subList(secondCut, second.size()));
+		List<T> secondChild = new ArrayList<T>(second.subList(0, secondCut));
+		secondChild.addAll(first.subList(firstCut, first.size()));
+		return Arrays.asList(firstChild, secondChild);
+	}
+
+	/**
+	 * Evaluates the variants on the workers. The log records are committed
+	 * in variant order.
+	 * @param variants The variants to evaluate.
+	 * @return The evaluated variants.
+	 * @throws Exception
+	 */
+	private List<Variant> evaluate(List<Variant> variants) throws Exception{
+		int first = this.evaluated + 1;
+		this.evaluated += variants.size();
+
+		if(this.pool == null){
+			for(int i = 0; i < variants.size(); i++){
+				this.evaluate(this.context, variants.get(i), first + i).commit(this.logWriter);
+			}
+			return variants;
+		}
+
+		List<Future<CandidateLog>> logs = new ArrayList<Future<CandidateLog>>();
+		for(int i = 0; i < variants.size(); i++){
+			final Variant variant = variants.get(i);
+			final int candidate = first + i;
+			logs.add(this.pool.submit(new Callable<CandidateLog>() {
+				@Override
+				public CandidateLog call() throws Exception {
+					/* Wait for the variants whose failures this one sees before taking a worker. */
+					GeneticRepair.this.context.repair.mutationFailures.await(candidate);
+					Context worker = GeneticRepair.this.idleWorkers.take();
+					try{
+						return GeneticRepair.this.evaluate(worker, variant, candidate);
+					}
+					finally{
+						GeneticRepair.this.idleWorkers.put(worker);
+					}
+				}
+			}));
+		}
+
+		for(Future<CandidateLog> log : logs){
+			try{
+				log.get().commit(this.logWriter);
+			}
+			catch(ExecutionException e){
+				if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+		return variants;
+	}
+
+	/**
+	 * Applies the variant's mutations (and a new random mutation if the variant
+	 * is to be mutated), then compiles and tests the variant and computes its
+	 * fitness. The mutations are undone before returning.
+	 * @param context The context of the worker evaluating the variant.
+	 * @param variant The variant to evaluate.
+	 * @param candidate The number of the variant (for logging).
+	 * @return The log records for the variant.
+	 * @throws Exception
+	 */
+	private CandidateLog evaluate(Context context, Variant variant, int candidate) throws Exception{
+		CandidateLog log = new CandidateLog(candidate);
+		Stack<Mutation> mutations = new Stack<Mutation>();
+		variant.fitness = 0;
+		TimingJournal.Record timing = new TimingJournal.Record(candidate, variant.genes.size(), null);
+
+        System.out.println("Running variant " + candidate + " ...");
+        context.mutation.startCandidate(candidate, context.repair.randomSeed * 31 + candidate);
+
+		try{
+			/* Apply the inherited mutations. */
+			long start = System.nanoTime();
+			for(Gene gene : variant.genes){
+				Mutation mutation = context.mutation.getMutation(gene.type, gene.faulty, gene.seed);
+				mutation.mutate();
+				mutations.push(mutation);
+				log.patches.push("Candidate " + candidate + ", Generation " + mutations.size() + "\n" + mutation.toString());
+			}
+			timing.mutateNanos = System.nanoTime() - start;
+
+			/* Append a new mutation that passes the scope check. */
+			if(variant.mutate && variant.genes.size() < context.mutation.getFaultyStatementCount()){
+				MutationType type = context.repair.nullMutationOnlly ? MutationType.NULL : context.mutation.getRandomMutationType();
+				timing.type = type;
+				timing.generation++;
+				try{
+					Mutation mutation = JRSRepair.applyScopedMutation(context, type, mutations.isEmpty(), timing);
+					mutations.push(mutation);
+					variant.genes.add(new Gene(type, mutation));
+					log.logMutation(mutation, mutations.size());
+					log.patches.push("Candidate " + candidate + ", Generation " + mutations.size() + "\n" + mutation.toString());
+				}
+				catch(Exception e){
+					/* The scope checking phase may have timed out. Evaluate the variant without the new mutation. */
+					System.out.print(e.getMessage() + "\n");
+				}
+			}
+
+			/* If the same program has already been evaluated, reuse its outcome. A variant
+			 * that passed is evaluated again, since its class files are needed for the patch. */
+			String fingerprint = context.mutation.getVariantFingerprint();
+			VariantCache.Outcome outcome = context.repair.variantCache.get(fingerprint);
+			if(outcome != null && outcome.testStatus != AbstractTestExecutor.Status.PASSED){
+				System.out.print(" - Duplicate variant");
+				timing.duplicate = true;
+				log.logCompileError(mutations.size(), outcome.compileMessage);
+				variant.fitness = outcome.fitness;
+				if(outcome.compileStatus == JavaJDKCompiler.Status.NOT_COMPILED){
+					System.out.print(" - Did not compile\n");
+				}
+				else{
+					System.out.print(" - Compiled!");
+					GeneticRepair.printTestStatus(outcome.testStatus, variant.fitness);
+				}
+				return log;
+			}
+
+			start = System.nanoTime();
+			JavaJDKCompiler.Status compileStatus = context.compiler.compile();
+			timing.compileNanos = System.nanoTime() - start;
+			timing.compileStatus = compileStatus;
+			String compileMessage = context.compiler.dequeueCompileError();
+			log.logCompileError(mutations.size(), compileMessage);
+
+			if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED){
+				/* Don't draw a mutation of the unmodified program that doesn't compile again. */
+				if(mutations.size() == 1) context.mutation.recordFailure(variant.genes.get(0).type, mutations.peek());
+				context.repair.variantCache.put(fingerprint, new VariantCache.Outcome(compileStatus, compileMessage, null, 0));
+				System.out.print(" - Did not compile\n");
+				return log;
+			}
+			System.out.print(" - Compiled!");
+
+			start = System.nanoTime();
+			JRSRepair.deployClasses(context);
+			long deployed = System.nanoTime();
+			timing.deployNanos = deployed - start;
+
+			/* The fitness needs the results of all the tests, so don't stop at the first failure. */
+			AbstractTestExecutor.Status testStatus = context.test.runAllTests();
+			timing.testNanos = System.nanoTime() - deployed;
+			timing.testStatus = testStatus;
+			variant.fitness = this.getFitness(context);
+			context.repair.variantCache.put(fingerprint, new VariantCache.Outcome(compileStatus, compileMessage, testStatus, variant.fitness));
+
+			if(testStatus == AbstractTestExecutor.Status.PASSED)
+				JRSRepair.logSuccesfullPatch(this.logWriter, this.context.repair.buildDirectory, context.compiler.getCompiledClasses(), log.candidate, log.patches, mutations.size());
+			GeneticRepair.printTestStatus(testStatus, variant.fitness);
+
+			return log;
+		}
+		finally{
+			context.mutation.finishCandidate();
+			while(!mutations.isEmpty()) mutations.pop().undo();
+			this.metrics.record(timing);
+			if(this.journal != null) this.journal.write(timing);
+		}
+	}
+
+	/**
+	 * Prints the outcome of the tests of a variant that compiled.
+	 * @param testStatus The outcome of the tests.
+	 * @param fitness The fitness of the variant.
+	 */
+	private static void printTestStatus(AbstractTestExecutor.Status testStatus, double fitness){
+		if(testStatus == AbstractTestExecutor.Status.PASSED)
+			System.out.print(" Passed!\n");
+		else if(testStatus == AbstractTestExecutor.Status.FAILED)
+			System.out.print(" Failed (fitness " + fitness + ").\n");
+		else if(testStatus == AbstractTestExecutor.Status.TIMEOUT)
+			System.out.print(" Timed out.\n");
+		else
+			System.out.print(" Error - tests may not have run.\n");
+	}
+
+	/**
+	 * Computes the fitness of the last test run.
+	 * @param context The context that ran the tests.
+	 * @return The fitness.
+	 */
+	private double getFitness(Context context){
+		return GeneticRepair.getFitness(context.test.getTestsRun(), context.test.getFailedTests(), this.negativeTests,
+										this.genetic.positiveWeight, this.genetic.negativeWeight);
+	}
+
+	/**
+	 * Computes the fitness of a test run: the weighted number of passing
+	 * positive and negative tests.
+	 * @param testsRun The number of tests that were run (negative if unknown).
+	 * @param failedTests The tests that failed.
+	 * @param negativeTests The tests that fail on the faulty program.
+	 * @param positiveWeight The weight of a passing positive test.
+	 * @param negativeWeight The weight of a passing negative test.
+	 * @return The fitness (0 if the number of tests run is unknown).
+	 */
+	public static double getFitness(int testsRun, Set<String> failedTests, Set<String> negativeTests,
+									double positiveWeight, double negativeWeight){
+		if(testsRun < 0) return 0;
+
+		int negativePassed = 0;
+		for(String test : negativeTests){
+			if(!failedTests.contains(test)) negativePassed++;
+		}
+		int positivePassed = Math.max(0, testsRun - failedTests.size() - negativePassed);
+
+		return positiveWeight * positivePassed + negativeWeight * negativePassed;
+	}
+
+	/**
+	 * A mutation in a variant's mutation list. The statements are referenced by
+	 * id, so the mutation can be applied in any worker context.
+	 */
+	private static class Gene {
+		MutationType type;
+		int faulty;
+		int seed;
+
+		Gene(MutationType type, Mutation mutation){
+			this.type = type;
+			this.faulty = mutation.getFaulty().id;
+			this.seed = mutation.getSeed() == null ? -1 : mutation.getSeed().id;
+		}
+	}
+
+	/**
+	 * A variant of the program (its mutation list) and its fitness.
+	 */
+	private static class Variant {
+		List<Gene> genes;
+		boolean mutate;		// Append a new mutation when the variant is evaluated.
+		double fitness;
+
+		Variant(List<Gene> genes, boolean mutate){
+			this.genes = genes;
+			this.mutate = mutate;
+			this.fitness = 0;
+		}
+	}
+
+}
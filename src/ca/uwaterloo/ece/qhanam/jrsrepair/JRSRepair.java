@@ -1,25 +1,55 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Stack;
-import java.io.BufferedWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.io.File;
-import java.io.FileWriter;
 
 import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
 import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
 import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext;
 import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.RepairContext;
 import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.*;
 
 public class JRSRepair {
 	
-	/* Provides context for all tasks: repair, parsing, mutation, compilation and testing. */
+	/* Provides context for all tasks: repair, parsing, mutation, compilation and testing. 
+	 * This is also the context of the first worker. Shared output (logs, patches) is
+	 * written to its build directory. */
 	private Context context;
 	
-	/* Keep track of the mutation operations for logging. */
-	private Stack<String> patches;
+	/* The contexts of the workers. Each worker evaluates one candidate at a time. */
+	private Context[] workers;
+	
+	/* The candidates waiting for the test stage (null if the tests are not pipelined). */
+	private BlockingQueue<TestJob> testJobs;
+	
+	/* Writes the log files and patches in the background while repair() runs. */
+	private LogWriter logWriter;
+	
+	/* Records the timings of each attempt (null if timing_journal is not set). */
+	private TimingJournal journal;
+	
+	/* The live metrics, published with JMX while repair() runs. */
+	private RepairMetrics metrics;
+	
+	/* The time out for timing the tests on the faulty program, in milliseconds. The executor's
+	 * default time out may be shorter than the tests, and the calibrated time out isn't known yet. */
+	static final long CALIBRATION_TIMEOUT = 60 * 60 * 1000;
+	static final String CALIBRATION_TIMED_OUT = "The tests did not finish on the faulty program within " + (CALIBRATION_TIMEOUT / 60000) + " minutes.";
 	
 	/**
 	 * Creates a JRSRepair object with the path to the source folder
@@ -27,13 +57,28 @@ public class JRSRepair {
 	 * @param sourcepaths The path to the source folder of the program we are mutating.
 	 */
 	public JRSRepair(Context context) throws Exception {
+		this(new Context[] { context });
+	}
+	
+	/**
+	 * Creates a JRSRepair object that evaluates candidates concurrently, one
+	 * candidate per worker context.
+	 * @param workers The contexts of the workers (built by ContextFactory.buildContexts).
+	 */
+	public JRSRepair(Context[] workers) throws Exception {
 
 		/* The context for this repair. It's super important that this is set
 		 * up properly! */
-		this.context = context;
-
-		/* Initialize the patch-building stack. */
-		this.patches = new Stack<String>();
+		this.context = workers[0];
+		this.workers = workers;
+	}
+	
+	/**
+	 * Returns the metrics of the last (or current) repair.
+	 * @return The metrics, or null if repair() has not been called.
+	 */
+	public RepairMetrics getMetrics(){
+		return this.metrics;
 	}
 	
 	/**
@@ -45,27 +90,260 @@ public class JRSRepair {
 	 */
 	public void buildASTs() throws Exception{
 		
-		this.context.parser.buildASTs();
+		for(Context worker : this.workers){
+			worker.parser.buildASTs();
+		}
 
 	}
 	
 	/**
-	 * Attempts to repair the program using the RSRepair method.
+	 * Attempts to repair the program using the RSRepair method (or GenProg's
+	 * genetic search if search_strategy = GENETIC).
 	 * @throws Exception
 	 */
 	public void repair() throws Exception{
 
+		this.logWriter = new LogWriter(this.context.repair.buildDirectory);
+		if(this.context.repair.timingJournal != null) this.journal = new TimingJournal(this.context.repair.timingJournal);
+		this.metrics = new RepairMetrics(this.workers);
+		this.metrics.register();
 		try{
-			for(int i = 0; i < this.context.repair.candidates; i++) {
-				System.out.println("Running candidate " + (i + 1) + " ...");
-                this.mutationIteration(i + 1, 1);
+			/* The genetic search tests the faulty program anyway, so it calibrates the time out itself. */
+			if(this.context.repair.searchStrategy != RepairContext.SearchStrategy.GENETIC
+					&& this.context.repair.timeoutMultiplier > 0){
+				this.calibrateTimeout();
+			}
+
+			if(this.context.repair.searchStrategy == RepairContext.SearchStrategy.GENETIC){
+				new GeneticRepair(this.workers, this.logWriter, this.journal, this.metrics).repair();
+			}
+			else if(this.context.repair.pipeline){
+				this.repairPipelined();
 			}
+			else if(this.workers.length > 1){
+				this.repairConcurrently();
+			}
+			else {
+                for(int i = 0; i < this.context.repair.candidates; i++) {
+                    this.runCandidate(this.context, i + 1).commit(this.logWriter);
+                }
+			}
+            if(this.context.repair.variantCache.getHits() > 0)
+            	System.out.println("Reused the outcomes of " + this.context.repair.variantCache.getHits() + " duplicate variants.");
             System.out.println("Finished!");
 		}
 		catch(Exception e){
 			System.out.println("Error: " + e.getMessage());
 			throw e;
 		}
+		finally{
+			this.metrics.unregister();
+
+			/* Write the log records that are still buffered. */
+			try{
+				this.logWriter.close();
+			}
+			finally{
+				if(this.journal != null) this.journal.close();
+			}
+		}
+	}
+	
+	/**
+	 * Records the timings of an attempt in the metrics and the timing journal (if there is one).
+	 * @param timing The timings of the attempt.
+	 * @throws Exception
+	 */
+	private void record(TimingJournal.Record timing) throws Exception{
+		this.metrics.record(timing);
+		if(this.journal != null) this.journal.write(timing);
+	}
+	
+	/**
+	 * Times the tests on the faulty program and sets the test time out of
+	 * each worker (see setTimeout()). The tests are timed with
+	 * CALIBRATION_TIMEOUT instead of the executor's default time out.
+	 * @throws Exception Throws an exception if the faulty program can't be
+	 * 					 compiled or its tests don't finish within CALIBRATION_TIMEOUT.
+	 */
+	private void calibrateTimeout() throws Exception{
+		if(this.context.compiler.compile() != JavaJDKCompiler.Status.COMPILED)
+			throw new Exception("The faulty program does not compile:\n" + this.context.compiler.dequeueCompileError());
+		this.context.compiler.dequeueCompileError();
+		JRSRepair.deployClasses(this.context);
+
+		this.context.test.setTimeout(CALIBRATION_TIMEOUT);
+		long start = System.currentTimeMillis();
+		AbstractTestExecutor.Status status = this.context.test.runAllTests();
+		long baseline = System.currentTimeMillis() - start;
+		if(status == AbstractTestExecutor.Status.TIMEOUT)
+			throw new Exception(JRSRepair.CALIBRATION_TIMED_OUT);
+
+		JRSRepair.setTimeout(this.workers, baseline);
+	}
+
+	/**
+	 * Sets the test time out of each worker to a multiple of the test run
+	 * time of the faulty program (test_timeout_multiplier), so that a
+	 * mutation that causes an infinite loop costs about as much as a
+	 * normal test run instead of a fixed (and usually much longer) time out.
+	 * @param workers The contexts of the workers.
+	 * @param baseline How long the tests took on the faulty program, in milliseconds.
+	 */
+	static void setTimeout(Context[] workers, long baseline){
+		RepairContext repair = workers[0].repair;
+		long timeout = Math.max(repair.minimumTimeout, (long) Math.ceil(baseline * repair.timeoutMultiplier));
+		for(Context worker : workers) worker.test.setTimeout(timeout);
+		System.out.println("The tests took " + baseline + " ms on the faulty program. Test time out: " + timeout + " ms.");
+	}
+
+	/**
+	 * Runs the candidates on a pool of workers. Each worker owns a context, so
+	 * the candidates running at the same time do not share any mutable state.
+	 * The log records are committed in candidate order as the candidates finish.
+	 * @throws Exception
+	 */
+	private void repairConcurrently() throws Exception{
+		final BlockingQueue<Context> idleWorkers = new LinkedBlockingQueue<Context>(Arrays.asList(this.workers));
+		ExecutorService pool = Executors.newFixedThreadPool(this.workers.length);
+		List<Future<CandidateLog>> candidates = new ArrayList<Future<CandidateLog>>();
+
+		try{
+            for(int i = 0; i < this.context.repair.candidates; i++) {
+                final int candidate = i + 1;
+                candidates.add(pool.submit(new Callable<CandidateLog>() {
+                    @Override
+                    public CandidateLog call() throws Exception {
+                        /* Wait for the candidates whose failures this one sees before taking a worker. */
+                        JRSRepair.this.context.repair.mutationFailures.await(candidate);
+                        Context worker = idleWorkers.take();
+                        try{
+                            return JRSRepair.this.runCandidate(worker, candidate);
+                        }
+                        finally{
+                            idleWorkers.put(worker);
+                        }
+                    }
+                }));
+            }
+
+            for(Future<CandidateLog> candidate : candidates){
+                try{
+                    candidate.get().commit(this.logWriter);
+                }
+                catch(ExecutionException e){
+                    if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                    throw e;
+                }
+            }
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Runs the candidates in two stages. The workers mutate and compile the
+	 * candidates (see repairConcurrently) and put the compiled candidates in a 
+	 * bounded queue. A test thread for each worker takes the candidates from the 
+	 * queue and tests them. This way the tests of one candidate run while the 
+	 * next candidate is mutated, scope checked and compiled. When the queue is 
+	 * full, the workers wait for the test stage to catch up.
+	 * 
+	 * Each test thread uses the TestContext of one worker (the workers don't
+	 * use their TestContext when the tests are pipelined).
+	 * @throws Exception
+	 */
+	private void repairPipelined() throws Exception{
+		this.testJobs = new ArrayBlockingQueue<TestJob>(2 * this.workers.length);
+		this.metrics.setTestQueue(this.testJobs);
+		ExecutorService testers = Executors.newFixedThreadPool(this.workers.length);
+		List<Future<Void>> stages = new ArrayList<Future<Void>>();
+
+		try{
+			for(final Context worker : this.workers){
+				stages.add(testers.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for(TestJob job = testJobs.take(); job != TestJob.END; job = testJobs.take()){
+							JRSRepair.this.runTestJob(worker, job);
+						}
+						return null;
+					}
+				}));
+			}
+
+			this.repairConcurrently();
+
+			/* Wait for the test stage to finish the queued candidates. */
+			for(int i = 0; i < this.workers.length; i++) this.testJobs.put(TestJob.END);
+			for(Future<Void> stage : stages) stage.get();
+		}
+		finally{
+			testers.shutdownNow();
+			this.testJobs = null;
+			this.metrics.setTestQueue(null);
+		}
+	}
+	
+	/**
+	 * Tests a candidate from the queue and logs the result.
+	 * @param context The context of the worker whose TestContext runs the tests.
+	 * @param job The compiled candidate.
+	 */
+	private void runTestJob(Context context, TestJob job){
+		String result = "Candidate " + job.candidate + ", Generation " + job.generation + ":";
+		try{
+			long start = System.nanoTime();
+			context.test.setCompiledClasses(job.classes);
+			long deployed = System.nanoTime();
+			AbstractTestExecutor.Status testStatus = context.test.runTests(job.mutated);
+			job.timing.deployNanos = deployed - start;
+			job.timing.testNanos = System.nanoTime() - deployed;
+			job.timing.testStatus = testStatus;
+			this.record(job.timing);
+			context.repair.variantCache.put(job.fingerprint, new VariantCache.Outcome(JavaJDKCompiler.Status.COMPILED, job.compileMessage, testStatus, 0));
+
+			if(testStatus == AbstractTestExecutor.Status.PASSED) {
+				JRSRepair.logSuccesfullPatch(this.logWriter, this.context.repair.buildDirectory, job.classes, job.candidate, job.patches, job.generation);
+				System.out.println(result + " Passed!");
+			}
+			else if(testStatus == AbstractTestExecutor.Status.FAILED) 
+				System.out.println(result + " Failed.");
+			else if(testStatus == AbstractTestExecutor.Status.ERROR) 
+				System.out.println(result + " Error - tests may not have run.");
+			else if(testStatus == AbstractTestExecutor.Status.TIMEOUT) 
+				System.out.println(result + " Timed out.");
+		}
+		catch(Exception e){
+			/* Keep the test stage running, otherwise the workers would wait for it forever. */
+			System.out.println(result + " Error - " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Runs one candidate in the given context. The random number generators
+	 * are reseeded from the candidate number and the known failures it sees
+	 * depend only on the candidate number (see MutationFailures), so a 
+	 * candidate makes the same mutations regardless of which worker runs it.
+	 * @param context The context of the worker running the candidate.
+	 * @param candidate The candidate number.
+	 * @return The log records for the candidate.
+	 * @throws Exception
+	 */
+	private CandidateLog runCandidate(Context context, int candidate) throws Exception{
+		CandidateLog log = new CandidateLog(candidate);
+
+        System.out.println("Running candidate " + candidate + " ...");
+        context.mutation.startCandidate(candidate, context.repair.randomSeed * 31 + candidate);
+        try{
+        	this.mutationIteration(context, log, 1);
+        }
+        finally{
+        	context.mutation.finishCandidate();
+        }
+
+        return log;
 	}
 
 	/**
@@ -73,10 +351,11 @@ public class JRSRepair {
 	 * to mutate, compile and test the program. It is recursive and will therefore
 	 * attempt multiple mutations at a time before rolling back their changes. 
 	 * 
-	 * @param candidate The identifier for the current set of mutations.
+	 * @param context The context of the worker running the candidate.
+	 * @param log The state and log records of the current candidate.
 	 * @param generation The number of mutations that have already been applied for the current candidate.
 	 */
-	private void mutationIteration(int candidate, int generation) throws Exception{
+	private void mutationIteration(Context context, CandidateLog log, int generation) throws Exception{
         /* If we can't find a solution within some number of iterations, abort. */
         int attemptCounter = 0;
         
@@ -85,68 +364,78 @@ public class JRSRepair {
         
         /* Select the mutation type to use for this generation. */
         MutationContext.MutationType mutationType;
-        if(this.context.repair.nullMutationOnlly){
+        if(context.repair.nullMutationOnlly){
         	/* Do not mutate. */
         	mutationType = MutationContext.MutationType.NULL;
         }
         else {
-            mutationType = this.context.mutation.getRandomMutationType(); 
+            mutationType = context.mutation.getRandomMutationType(); 
         }
 
         Mutation mutation = null;
         JavaJDKCompiler.Status compileStatus;
         AbstractTestExecutor.Status testStatus;
+        String fingerprint = null;
+        String compileMessage = null;
+        VariantCache.Outcome outcome = null;
+        TimingJournal.Record timing;
         
         /* The compiler loop. Attempt to compile until the counter reaches max
          * attempts set by the user. */
         do {
             
+        	outcome = null;
+        	timing = new TimingJournal.Record(log.candidate, generation, mutationType);
+
         	try {
         		
-                /* First we need to get a mutation that will likely compile. To do this
-                 * we randomly select a mutation, apply the mutation to the AST to get
-                 * a new document, parse the new document into an AST (having the parser
-                 * attempt to resolve bindings) and finally check that all variables have
-                 * bindings.*/
-                int ctr = 0;
-                while(true){
-
-                    /* Get a random mutation operation to apply. */
-                    mutation = this.context.mutation.getRandomMutation(mutationType);
-                    
-                    /* Apply the mutation to the AST + Document. */
-                    mutation.mutate();
-                    
-                    /* Check if all the variables are in scope in the new AST. */
-                    if(this.context.parser.checkScope(mutation.getRewriter())) break;
-
-                    mutation.undo();
-
-                    /* Just in case... we should make sure we don't have an infinite loop. */
-                    ctr++;
-                    if(ctr > 1000) throw new Exception("Mutation search timed out after 1000 attempts without a passing scope check.");
-                }
+                /* First we need to get a mutation that will likely compile. */
+                mutation = JRSRepair.applyScopedMutation(context, mutationType, generation == 1, timing);
                 
-                this.logMutation(mutation, candidate, generation);
+                log.logMutation(mutation, generation);
                 
+                /* If the same program has already been evaluated, reuse its outcome instead
+                 * of compiling and testing it again. */
+                fingerprint = context.mutation.getVariantFingerprint();
+                outcome = context.repair.variantCache.get(fingerprint);
+
                 /* Now that we have a mutation that is in-scope, we attempt to compile 
                  * the program. If the program compiles, we run the test cases. If it
                  * doesn't, we roll back the changes and loop to get another mutation. */
 
-                compileStatus = this.context.compiler.compile();
+                if(outcome != null){
+                	System.out.print(" - Duplicate variant");
+                	timing.duplicate = true;
+                	compileStatus = outcome.compileStatus;
+                	compileMessage = outcome.compileMessage;
+                }
+                else{
+                	long start = System.nanoTime();
+                    compileStatus = context.compiler.compile();
+                    timing.compileNanos = System.nanoTime() - start;
+                    timing.compileStatus = compileStatus;
+                    compileMessage = context.compiler.dequeueCompileError();
+                    if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED) 
+                    	context.repair.variantCache.put(fingerprint, new VariantCache.Outcome(compileStatus, compileMessage, null, 0));
+                }
                 
-                this.logCompileError(candidate, generation, this.context.compiler.dequeueCompileError());
+                /* Don't draw a mutation of the unmodified program that doesn't compile again. */
+                if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED && generation == 1) context.mutation.recordFailure(mutationType, mutation);
+                
+                log.logCompileError(generation, compileMessage);
                 
                 /* Did it compile? If it didn't we might need to undo the mutation before trying again.
                  * Either way, log what happened. */
-                if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED && this.context.repair.revertFailedCompile) {
+                if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED && context.repair.revertFailedCompile) {
                     System.out.print(" - Did not compile\n");
                     mutation.undo(); 
                 } else if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED) {
-                    this.patches.push("Candidate " + candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.patches.push("Candidate " + log.candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.mutated.push(mutation.getFaulty());
                     System.out.print(" - Did not compile\n");
                 } else {
-                    this.patches.push("Candidate " + candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.patches.push("Candidate " + log.candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.mutated.push(mutation.getFaulty());
                     System.out.print(" - Compiled!");
                 }
         	} 
@@ -156,100 +445,203 @@ public class JRSRepair {
         		compileStatus = JavaJDKCompiler.Status.NOT_COMPILED;
         		
         		/* If we are not reverting failed compiles, replace this mutation with the null mutation. */
-        		if(!this.context.repair.revertFailedCompile) {
+        		if(!context.repair.revertFailedCompile) {
                     /* Get a random mutation operation to apply. */
-                    mutation = this.context.mutation.getRandomMutation(MutationType.NULL);
+                    mutation = context.mutation.getRandomMutation(MutationType.NULL);
                     
                     /* Apply the mutation to the AST + Document. */
                     mutation.mutate();
-                    this.patches.push("Candidate " + candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.patches.push("Candidate " + log.candidate + ", Generation " + generation + "\n" + mutation.toString());
+                    log.mutated.push(mutation.getFaulty());
         		}
         	}
 
             attemptCounter++;
+            
+            /* The timings of compiled attempts are recorded after the tests. */
+            if(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED) this.record(timing);
 
-        } while(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED && attemptCounter < this.context.repair.attempts);
+        } while(compileStatus == JavaJDKCompiler.Status.NOT_COMPILED && attemptCounter < context.repair.attempts);
 
         /* Did the program compile? If it did, run the test cases. */
         if(compileStatus == JavaJDKCompiler.Status.COMPILED){
 
-        	/* We may also need to copy the .class files back to their 
-             * class folders (for example, if we have a complex Maven
-             * this just makes life easier than re-building ourselves). */
-            if(this.context.repair.classDirectories.length > 0){
-                for(String directory : this.context.repair.classDirectories){
-                    Utilities.copyFiles(new File(this.context.repair.buildDirectory.getPath() + "/classes"), new File(directory));
-                }
+            if(outcome != null){
+            	testStatus = outcome.testStatus;
+            	this.record(timing);
+            }
+            else if(this.testJobs != null){
+            	/* Leave the tests to the test stage, which records the timings. */
+            	this.testJobs.put(new TestJob(log, generation, fingerprint, compileMessage, context.compiler.getCompiledClasses(), timing));
+            	System.out.print(" Queued for testing.\n");
+            	testStatus = null;
             }
+            else{
+            	long start = System.nanoTime();
+                JRSRepair.deployClasses(context);
+                long deployed = System.nanoTime();
+                timing.deployNanos = deployed - start;
 
-            /* Run the test cases. */
-            testStatus = this.context.test.runTests();
+                /* Run the test cases. The tests that execute the mutated statements are run first. */
+                testStatus = context.test.runTests(log.mutated);
+                timing.testNanos = System.nanoTime() - deployed;
+                timing.testStatus = testStatus;
+                this.record(timing);
+                context.repair.variantCache.put(fingerprint, new VariantCache.Outcome(compileStatus, compileMessage, testStatus, 0));
+            }
 
             /* Log what happened. If all tests passed, store the class files. */
             if(testStatus == AbstractTestExecutor.Status.PASSED) {
-                this.logSuccesfullPatch(candidate, generation);
+                JRSRepair.logSuccesfullPatch(this.logWriter, this.context.repair.buildDirectory, context.compiler.getCompiledClasses(), log.candidate, log.patches, generation);
                 System.out.print(" Passed!\n");
             }
             else if(testStatus == AbstractTestExecutor.Status.FAILED) 
                 System.out.print(" Failed.\n");
             else if(testStatus == AbstractTestExecutor.Status.ERROR) 
                 System.out.print(" Error - tests may not have run.\n");
+            else if(testStatus == AbstractTestExecutor.Status.TIMEOUT) 
+                System.out.print(" Timed out.\n");
         }
         
     
         /* Recurse to the next level of mutations. */
-        if(generation < this.context.repair.generations){ 
-            this.mutationIteration(candidate, generation + 1);
+        if(generation < context.repair.generations){ 
+            this.mutationIteration(context, log, generation + 1);
         }
 
-        /* Since this.patches in a field, we need to unwind the patch stack. */
-        if(compileStatus == JavaJDKCompiler.Status.COMPILED || !this.context.repair.revertFailedCompile) {
-            this.patches.pop();
+        /* Since the patch stack is shared by all generations, we need to unwind it. */
+        if(compileStatus == JavaJDKCompiler.Status.COMPILED || !context.repair.revertFailedCompile) {
+            log.patches.pop();
+            log.mutated.pop();
             mutation.undo();
         }
 	}
 	
 	/**
-	 * Writes the mutation operations to a file. These represent a (successful?) fix.
+	 * Randomly selects a mutation that will likely compile and applies it. To do this
+	 * we randomly select a mutation, apply the mutation to the AST to get
+	 * a new document, parse the new document into an AST (having the parser
+	 * attempt to resolve bindings) and finally check that all variables have
+	 * bindings.
+	 * @param context The context of the worker running the candidate.
+	 * @param mutationType The type of mutation to apply.
+	 * @param recordFailures True if no other mutations are applied, so the mutations that fail 
+	 * 		  the scope check can be recorded as failures (see MutationContext.recordFailure).
+	 * @param timing Records the time spent mutating and checking the scope.
+	 * @return The applied mutation.
+	 * @throws Exception Throws an exception if no mutation passes the scope check after 1000 attempts.
+	 */
+	static Mutation applyScopedMutation(Context context, MutationContext.MutationType mutationType, boolean recordFailures, TimingJournal.Record timing) throws Exception{
+		Mutation mutation;
+        int ctr = 0;
+        while(true){
+        	long start = System.nanoTime();
+
+            /* Get a random mutation operation to apply. */
+            mutation = context.mutation.getRandomMutation(mutationType);
+            
+            /* Apply the mutation to the AST + Document. */
+            mutation.mutate();
+            long mutated = System.nanoTime();
+            timing.mutateNanos += mutated - start;
+            
+            /* Check if all the variables are in scope in the new AST. */
+            boolean inScope = context.parser.checkScope(mutation.getRewriter(), mutation.getFocalPosition());
+            timing.scopeNanos += System.nanoTime() - mutated;
+            if(inScope){
+            	timing.setMutation(mutation);
+            	return mutation;
+            }
+
+            timing.scopeRejections++;
+            if(recordFailures) context.mutation.recordFailure(mutationType, mutation);
+            mutation.undo();
+
+            /* Just in case... we should make sure we don't have an infinite loop. */
+            ctr++;
+            if(ctr > 1000) throw new Exception("Mutation search timed out after 1000 attempts without a passing scope check.");
+        }
+	}
+	
+	/**
+	 * Makes the compiled program available to the tests. 
+	 * 
+	 * We may also need to copy the .class files back to their 
+     * class folders (for example, if we have a complex Maven
+     * this just makes life easier than re-building ourselves).
+	 * @param context The context of the worker running the candidate.
 	 * @throws Exception
 	 */
-	private void logSuccesfullPatch(int candidate, int generation){
+	static void deployClasses(Context context) throws Exception{
+        if(!context.test.requiresClassFiles()){
+        	context.test.setCompiledClasses(context.compiler.getCompiledClasses());
+        }
+        else if(context.repair.classDirectories.length > 0){
+            for(String directory : context.repair.classDirectories){
+                Utilities.copyFiles(new File(context.repair.buildDirectory.getPath() + "/classes"), new File(directory));
+            }
+        }
+	}
+	
+	/**
+	 * Writes the mutation operations to a file. These represent a (successful?) fix.
+	 * @param logWriter The writer for the log files and patches.
+	 * @param buildDirectory The directory for the shared output (the build directory of the first worker).
+	 * @param classes The class files of the candidate.
+	 * @param candidate The candidate number.
+	 * @param patches The log records of the mutations that produced the candidate.
+	 * @param generation The number of mutations applied.
+	 */
+	static void logSuccesfullPatch(LogWriter logWriter, File buildDirectory, Map<String, byte[]> classes, int candidate, Collection<String> patches, int generation){
 		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmssSSS");
-		Date date = new Date();
-		File file = new File(this.context.repair.buildDirectory + "/patches", "Candidate" + candidate + "_Generation" + generation + "_" + dateFormat.format(date));
-		BufferedWriter out = null;
+		String name = "Candidate" + candidate + "_Generation" + generation + "_" + dateFormat.format(new Date());
 		
 		/* Store the .class files for the program so we can verify. */
-		this.context.compiler.storeCompiled(this.context.repair.buildDirectory + "/classes_Candidate" + candidate + "_Generation" + generation + "_" + dateFormat.format(date));
+		JavaJDKCompiler.storeClasses(buildDirectory + "/classes_" + name, classes);
 		
 		/* Log the mutation events that produced the patch. */
-        try{
-            file.createNewFile();
-            out = new BufferedWriter(new FileWriter(file));
-            for(String s : this.patches){
-                out.write(s);
-            }
-        } catch(Exception e) { }
-
-        try{
-            if(out != null) out.close();
-        } catch(Exception ignore) { System.out.println("Problem closing writer for " + file.getName() + "."); }
+		StringBuilder patch = new StringBuilder();
+		for(String s : patches){
+			patch.append(s);
+		}
+		logWriter.append("patches/" + name, patch.toString());
 	}
 	
-    /**
-     * Temp method for debugging.
-	 * @throws Exception
+	/**
+	 * A compiled candidate waiting for the test stage. The job keeps a copy
+	 * of the candidate's state, since the worker goes on to mutate it.
 	 */
-	public void logMutation(Mutation m, int candidate, int generation) throws Exception{
-        Utilities.writeToFileAppend(new File(this.context.repair.buildDirectory + "/mutation-log"), 
-                                   ("Candidate " + candidate + ", Generation" + generation 
-                                   + "\n" + m.toString()).getBytes());
-	}
-	
-	public void logCompileError(int candidate, int generation, String message) throws Exception {
-        Utilities.writeToFileAppend(new File(this.context.repair.buildDirectory + "/compile-log"), 
-                                   ("Candidate " + candidate + ", Generation" + generation 
-                                   + "\n" + message + "\n********************\n").getBytes());
+	private static class TestJob {
+		
+		/* Tells a test thread that there are no more candidates. */
+		static final TestJob END = new TestJob();
+		
+		int candidate;
+		int generation;
+		List<String> patches;
+		List<SourceStatement> mutated;
+		String fingerprint;
+		String compileMessage;
+		Map<String, byte[]> classes;
+		TimingJournal.Record timing;
+		
+		private TestJob(){ }
+
+		/**
+		 * @param classes The class files from the compiler. The compiler builds a new map for each
+		 * 				  compile, so the map does not change after the job is created.
+		 * @param timing The timings of the attempt so far (completed by the test stage).
+		 */
+		TestJob(CandidateLog log, int generation, String fingerprint, String compileMessage, Map<String, byte[]> classes, TimingJournal.Record timing){
+			this.candidate = log.candidate;
+			this.generation = generation;
+			this.patches = new ArrayList<String>(log.patches);
+			this.mutated = new ArrayList<SourceStatement>(log.mutated);
+			this.fingerprint = fingerprint;
+			this.compileMessage = compileMessage;
+			this.classes = classes;
+			this.timing = timing;
+		}
 	}
 	
 }
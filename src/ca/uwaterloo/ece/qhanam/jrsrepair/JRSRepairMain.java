@@ -39,9 +39,9 @@ public class JRSRepairMain {
 		Properties properties = new Properties();
 		properties.load(new FileReader(config));
 		
-        Context context = ContextFactory.buildContext(properties);
+        Context[] contexts = ContextFactory.buildContexts(properties);
 		
-        JRSRepair repair = new JRSRepair(context);
+        JRSRepair repair = new JRSRepair(contexts);
 
 		return repair;
 	}
@@ -0,0 +1,282 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.CompiledClassLoader;
+
+/**
+ * JUnitTestExecutor runs the JUnit tests for the program under repair in the
+ * current JVM.
+ *
+ * The classes are loaded straight from the compiler's output in a throwaway
+ * class loader, so nothing is written to disk and no JVM is started. The test
+ * classes and their dependencies must already be compiled.
+ *
+ * A test that doesn't terminate is interrupted when it times out, but a
+ * mutant stuck in a loop usually ignores the interrupt and its thread keeps
+ * running (with its class loader) until the JVM exits. The executor gives up
+ * on the repair when more than maxStuckThreads of these threads are running.
+ * Use the TEST_SERVER executor (which kills the test JVM on a time out) for
+ * programs whose mutants often don't terminate.
+ *
+ * @author qhanam
+ */
+public class JUnitTestExecutor extends AbstractTestExecutor {
+
+	/* The test threads that timed out and are still running (shared by all executors, since they share the CPUs). */
+	private static final List<Thread> stuckThreads = new ArrayList<Thread>();
+
+	private String[] testClasses;
+	private URL[] testClasspath;
+	private ClassLoader parent;
+	private Map<String, byte[]> compiledClasses;
+	private int maxStuckThreads;
+
+	/**
+	 * @param testClasses The names of the JUnit test classes to run.
+	 * @param testClasspath The class path for the test classes and their dependencies
+	 * 						(but not the program under repair).
+	 */
+	public JUnitTestExecutor(String[] testClasses, URL[] testClasspath){
+		this(testClasses, testClasspath, JUnitCore.class.getClassLoader());
+	}
+
+	/**
+	 * @param testClasses The names of the JUnit test classes to run.
+	 * @param testClasspath The class path for the test classes and their dependencies
+	 * 						(but not the program under repair).
+	 * @param maxStuckThreads The number of timed out test threads that can still be running
+	 * 						  before the executor gives up.
+	 */
+	public JUnitTestExecutor(String[] testClasses, URL[] testClasspath, int maxStuckThreads){
+		this(testClasses, testClasspath, JUnitCore.class.getClassLoader());
+		this.maxStuckThreads = maxStuckThreads;
+	}
+
+	/**
+	 * @param testClasses The names of the JUnit test classes to run.
+	 * @param testClasspath The class path for the test classes and their dependencies
+	 * 						(but not the program under repair). Loaded again for each run.
+	 * @param parent The class loader for the classes that are shared by all runs (e.g., JUnit
+	 * 				 and libraries that don't depend on the program under repair).
+	 */
+	public JUnitTestExecutor(String[] testClasses, URL[] testClasspath, ClassLoader parent){
+		super(30000);
+		this.testClasses = testClasses;
+		this.testClasspath = testClasspath;
+		this.parent = parent;
+		this.compiledClasses = new HashMap<String, byte[]>();
+		this.maxStuckThreads = 4;
+	}
+
+	@Override
+	public boolean requiresClassFiles(){
+		return false;
+	}
+
+	@Override
+	public void setCompiledClasses(Map<String, byte[]> classes){
+		this.compiledClasses = classes;
+	}
+
+	@Override
+	public boolean supportsTestSelection(){
+		return true;
+	}
+
+	/**
+	 * Run the JUnit test cases with JUnit.
+	 * @return NOT_COMPILED = failed to compile, TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	public Status runTests() throws Exception{
+		return this.runTests(null, false);
+	}
+
+	/**
+	 * Run some or all of the JUnit test cases with JUnit.
+	 * @param tests The tests to run in the format "[class name]#[method name]", or null to run all the tests.
+	 * @param failFast If true, stop at the first failing test.
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	@Override
+	public Status runTests(List<String> tests, final boolean failFast) throws Exception{
+
+		/* The classes that declare the tests to run. */
+		Set<String> classNames = new LinkedHashSet<String>();
+		final Set<String> selected = tests == null ? null : new HashSet<String>(tests);
+		if(tests == null) classNames.addAll(Arrays.asList(this.testClasses));
+		else for(String test : tests) classNames.add(test.substring(0, test.indexOf('#')));
+
+		/* Give up if too many timed out tests are still using the CPUs. */
+		JUnitTestExecutor.checkStuckThreads(this.maxStuckThreads);
+
+		/* Load the test classes in a new class loader so they link against the new program. */
+		final CompiledClassLoader loader = new CompiledClassLoader(this.compiledClasses, this.testClasspath, this.parent);
+		Class<?>[] classes = new Class<?>[classNames.size()];
+		try{
+			int i = 0;
+            for(String className : classNames){
+                classes[i++] = loader.loadClass(className);
+            }
+		}
+		catch(ClassNotFoundException | LinkageError e){
+			System.out.print(" - Could not load test class " + e.getMessage());
+			this.testsRun = -1;
+			loader.close();
+			return Status.ERROR;
+		}
+
+		Request request = Request.classes(classes);
+		if(selected != null) request = request.filterWith(new Filter() {
+			@Override
+			public boolean shouldRun(Description description) {
+				if(description.isTest()) return selected.contains(description.getClassName() + "#" + description.getMethodName());
+				for(Description child : description.getChildren()){
+					if(this.shouldRun(child)) return true;
+				}
+				return false;
+			}
+
+			@Override
+			public String describe() {
+				return "selected tests";
+			}
+		});
+		final Runner runner = request.getRunner();
+
+		/* Run the tests in their own thread so that we can give up on a test that doesn't terminate.
+		 * The loader is closed by whichever of the test thread and this thread finishes last. */
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		final FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+			@Override
+			public Result call() throws Exception {
+				return JUnitTestExecutor.run(runner, failFast);
+			}
+		});
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					task.run();
+				}
+				finally{
+					if(!finished.compareAndSet(false, true)) JUnitTestExecutor.close(loader);
+					synchronized(stuckThreads){ stuckThreads.remove(Thread.currentThread()); }
+				}
+			}
+		}, "JUnitTestExecutor");
+		thread.setDaemon(true);
+		thread.setContextClassLoader(loader);
+
+		/* Wait for the tests to finish or timeout. */
+		Result result;
+		try{
+			thread.start();
+			result = task.get(this.timeout, TimeUnit.MILLISECONDS);
+		}
+		catch(TimeoutException e){
+			thread.interrupt();
+			synchronized(stuckThreads){ if(thread.isAlive()) stuckThreads.add(thread); }
+			this.testsRun = -1;
+			return Status.TIMEOUT;
+		}
+		finally{
+			if(!finished.compareAndSet(false, true)) loader.close();
+		}
+
+		/* Record the results of the individual tests. */
+		this.testsRun = result.getRunCount();
+		this.failedTests = new HashSet<String>();
+		for(Failure failure : result.getFailures()){
+			this.failedTests.add(failure.getDescription().getClassName() + "#" + failure.getDescription().getMethodName());
+		}
+
+		if(result.wasSuccessful()) return Status.PASSED;
+		return Status.FAILED;
+	}
+
+	/**
+	 * Closes a class loader from the test thread (which can't throw).
+	 */
+	private static void close(CompiledClassLoader loader){
+		try{
+			loader.close();
+		}
+		catch(IOException e){
+			System.err.println("JUnitTestExecutor: could not close the class loader: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Throws an exception if more than maxStuckThreads test threads that timed
+	 * out are still running.
+	 * @param maxStuckThreads The number of threads that can still be running.
+	 * @throws Exception
+	 */
+	private static void checkStuckThreads(int maxStuckThreads) throws Exception{
+		synchronized(stuckThreads){
+			if(stuckThreads.size() > maxStuckThreads)
+				throw new Exception("JUnitTestExecutor: " + stuckThreads.size() + " test threads are still running after they timed out "
+						+ "(the mutants probably ignore interrupts). Use test_script = TEST_SERVER, which kills the test JVM "
+						+ "on a time out, or raise junit_max_stuck_threads.");
+		}
+	}
+
+	/**
+	 * Runs the tests. With fail-fast, the run stops at the first failure.
+	 * @param runner The runner for the tests.
+	 * @param failFast If true, stop at the first failing test.
+	 * @return The results of the tests that were run.
+	 */
+	private static Result run(Runner runner, boolean failFast){
+		final RunNotifier notifier = new RunNotifier();
+		Result result = new Result();
+		notifier.addFirstListener(result.createListener());
+		if(failFast){
+			notifier.addListener(new RunListener() {
+				@Override
+				public void testFailure(Failure failure) {
+					notifier.pleaseStop();
+				}
+			});
+		}
+
+		notifier.fireTestRunStarted(runner.getDescription());
+		try{
+			runner.run(notifier);
+		}
+		catch(StoppedByUserException e){
+			/* A test failed and the rest were skipped. */
+		}
+		notifier.fireTestRunFinished(result);
+		return result;
+	}
+
+}
@@ -19,24 +19,22 @@ class LCNode implements Comparable<LCNode>{
 
 	@Override
 	public int compareTo(LCNode node) {
-		String a = this.pathName + "." + this.className + "." + this.lineNumber;
-		String b = node.pathName + "." + node.className + "." + node.lineNumber;
-		return a.compareTo(b);
+		int order = this.pathName.compareTo(node.pathName);
+		if(order == 0) order = this.className.compareTo(node.className);
+		if(order == 0) order = Integer.compare(this.lineNumber, node.lineNumber);
+		return order;
 	}
 	
 	@Override
 	public boolean equals(Object o) {
 		if(!(o instanceof LCNode)) return false;
 		LCNode node = (LCNode) o;
-		String a = this.pathName + "." + this.className + "." + this.lineNumber;
-		String b = node.pathName + "." + node.className + "." + node.lineNumber;
-		return a.equals(b);
+		return this.lineNumber == node.lineNumber && this.className.equals(node.className) && this.pathName.equals(node.pathName);
 	}
 	
 	@Override
 	public int hashCode(){
-		String a = this.pathName + "." + this.className + "." + this.lineNumber;
-		return a.hashCode();
+		return (this.pathName.hashCode() * 31 + this.className.hashCode()) * 31 + this.lineNumber;
 	}
 	
 	@Override
@@ -1,23 +1,46 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
-import java.io.*;
+import java.io.File;
 import java.util.HashMap;
 
 /**
- * Stores line coverage information from a file (produced by JaCoCo).
+ * Stores line coverage information from a file (produced by JaCoCo). The
+ * file is read by CoverageLoader.
+ * 
+ * Each class in the coverage file gets an id, and the weights of the lines
+ * are stored in a CoverageTable keyed by (class id, line number). To check
+ * many statements from the same class, get the class id once with
+ * getClassId() and look up each line with getWeight().
+ * 
  * @author qhanam
  *
  */
 public class LineCoverage {
 	
-	private HashMap<LCNode, Double> coverage;
+	/* The ids of the classes, by package name and class name. */
+	private HashMap<String, HashMap<String, Integer>> classIds;
+	private int classCount;
+	
+	private CoverageTable coverage;
 	
 	/**
-	 * Initialize the line coverage by reading the JaCoCo output.
-	 * @param filePath
+	 * Initialize the line coverage by reading a coverage file.
+	 * @param file The coverage file (text, JaCoCo XML or JaCoCo .exec; see CoverageLoader).
 	 */
 	public LineCoverage(File file) throws Exception {
-		this.coverage = LineCoverage.readCoverageFile(file);
+		this(file, null);
+	}
+	
+	/**
+	 * Initialize the line coverage by reading a coverage file.
+	 * @param file The coverage file (text, JaCoCo XML or JaCoCo .exec; see CoverageLoader).
+	 * @param classes The class files of the program (a directory or jar; only needed for .exec files).
+	 */
+	public LineCoverage(File file, File classes) throws Exception {
+		this.classIds = new HashMap<String, HashMap<String, Integer>>();
+		this.classCount = 0;
+		this.coverage = new CoverageTable();
+		CoverageLoader.read(file, classes, this);
 	}
 	
 	/**
@@ -27,30 +50,69 @@ public class LineCoverage {
 	 * @return The weight of the statement or null if is not covered.
 	 */
 	public Double contains(LCNode statement){
-		return this.coverage.get(statement);
-	}
-	
-	/**
-	 * Reads a line coverage file into a HashSet<LCNode> object.
-	 * @param file The JaCoCo line coverage file.
-	 * @return The set of lines covered.
-	 * @throws Exception
-	 */
-	private static HashMap<LCNode, Double> readCoverageFile(File file) throws Exception{
-		HashMap<LCNode, Double> map = new HashMap<LCNode, Double>();
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		for(String line = reader.readLine(); line != null; line = reader.readLine()){
-			String[] tokens = line.split(":");
-			if(tokens.length == 4){
-                LCNode node = new LCNode(tokens[0], tokens[1], Integer.valueOf(tokens[2]));
-                map.put(node, Double.valueOf(tokens[3]));
-			}
-			else{
-				reader.close();
-				throw new Exception("LineCoverage.readCoverageFile: file not formatted properly... too many tokens.\n" + line);
-			}
+		double weight = this.getWeight(this.getClassId(statement.pathName, statement.className), statement.lineNumber);
+		return Double.isNaN(weight) ? null : weight;
+	}
+	
+	/**
+	 * Returns the id of a class.
+	 * @param packageName The package of the class.
+	 * @param className The name of the class.
+	 * @return The id, or -1 if no line of the class is covered.
+	 */
+	public int getClassId(String packageName, String className){
+		HashMap<String, Integer> classes = this.classIds.get(packageName);
+		if(classes == null) return -1;
+		Integer id = classes.get(className);
+		return id == null ? -1 : id;
+	}
+	
+	/**
+	 * Returns the weight of a line.
+	 * @param classId The id of the line's class (see getClassId()).
+	 * @param lineNumber The line number.
+	 * @return The weight of the line, or NaN if the line is not covered.
+	 */
+	public double getWeight(int classId, int lineNumber){
+		if(classId < 0) return Double.NaN;
+		return this.coverage.get(CoverageTable.key(classId, lineNumber));
+	}
+	
+	/**
+	 * Returns the number of covered lines.
+	 * @return
+	 */
+	public int size(){
+		return this.coverage.size();
+	}
+	
+	/**
+	 * Returns the id of a class, giving it a new id if it doesn't have one.
+	 * @param packageName The package of the class.
+	 * @param className The name of the class.
+	 * @return The id.
+	 */
+	int addClass(String packageName, String className){
+		HashMap<String, Integer> classes = this.classIds.get(packageName);
+		if(classes == null){
+			classes = new HashMap<String, Integer>();
+			this.classIds.put(packageName, classes);
+		}
+		Integer id = classes.get(className);
+		if(id == null){
+			id = this.classCount++;
+			classes.put(className, id);
 		}
-		reader.close();
-		return map;
+		return id;
+	}
+	
+	/**
+	 * Sets the weight of a covered line (replacing its old weight).
+	 * @param classId The id of the line's class (see addClass()).
+	 * @param lineNumber The line number.
+	 * @param weight The weight.
+	 */
+	void put(int classId, int lineNumber, double weight){
+		this.coverage.put(CoverageTable.key(classId, lineNumber), weight);
 	}
 }
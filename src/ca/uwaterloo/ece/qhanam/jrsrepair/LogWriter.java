@@ -0,0 +1,184 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the log files (mutation-log, compile-log and the patches) in the
+ * background.
+ *
+ * The records are buffered in memory and written in groups by a background
+ * thread, either when enough records are waiting or when the oldest records
+ * have waited long enough. The candidates don't wait for the disk (the log
+ * files used to be opened, appended and synced for every candidate).
+ * close() writes the records that are still waiting, so nothing is lost
+ * when the repair finishes or stops with an exception.
+ *
+ * The records for each file are written in the order they were appended.
+ * If a file can't be written, the other files are still written and the
+ * first error is reported.
+ *
+ * @author qhanam
+ */
+public class LogWriter {
+
+	/* The number of characters that are buffered before the records are written. */
+	private static final int FLUSH_SIZE = 64 * 1024;
+
+	/* The longest time (in milliseconds) that records are buffered. */
+	private static final long FLUSH_INTERVAL = 1000;
+
+	private File directory;
+
+	/* The records waiting to be written, by file. */
+	private Map<File, StringBuilder> pending;
+	private int size;
+	private boolean closed;
+
+	/* Only one thread writes at a time, so the records are written in order. */
+	private Object writeLock;
+
+	/* The first error from the background thread (reported by close()). */
+	private volatile IOException error;
+
+	/**
+	 * Starts the background thread.
+	 * @param directory The directory that the log files are written to (the build directory).
+	 */
+	public LogWriter(File directory){
+		this.directory = directory;
+		this.pending = new LinkedHashMap<File, StringBuilder>();
+		this.size = 0;
+		this.closed = false;
+		this.writeLock = new Object();
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				LogWriter.this.writeInBackground();
+			}
+		}, "LogWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Appends a record to a log file. The record is written later.
+	 * @param fileName The path of the log file, relative to the directory (e.g., "mutation-log").
+	 * @param record The text to append.
+	 */
+	public synchronized void append(String fileName, String record){
+		if(this.closed) throw new IllegalStateException("LogWriter.append: the log writer is closed.");
+
+		File file = new File(this.directory, fileName);
+		StringBuilder records = this.pending.get(file);
+		if(records == null){
+			records = new StringBuilder();
+			this.pending.put(file, records);
+		}
+		records.append(record);
+
+		this.size += record.length();
+		if(this.size >= FLUSH_SIZE) this.notifyAll();
+	}
+
+	/**
+	 * Writes the records that are waiting. The records of a file that can't
+	 * be written are dropped, but the other files are still written.
+	 * @throws IOException Throws the first error from writing the records.
+	 */
+	public void flush() throws IOException{
+		synchronized(this.writeLock){
+			Map<File, StringBuilder> records;
+			synchronized(this){
+				records = this.pending;
+				this.pending = new LinkedHashMap<File, StringBuilder>();
+				this.size = 0;
+			}
+
+			IOException error = null;
+			for(Map.Entry<File, StringBuilder> entry : records.entrySet()){
+				try{
+					LogWriter.write(entry.getKey(), entry.getValue().toString());
+				}
+				catch(IOException e){
+					if(error == null) error = e;
+				}
+			}
+			if(error != null) throw error;
+		}
+	}
+
+	/**
+	 * Writes the records that are waiting and stops the background thread.
+	 * Records can't be appended after the writer is closed.
+	 * @throws IOException Throws the first error from writing the records.
+	 */
+	public void close() throws IOException{
+		synchronized(this){
+			if(this.closed) return;
+			this.closed = true;
+			this.notifyAll();
+		}
+		IOException error = null;
+		try{
+			this.flush();
+		}
+		catch(IOException e){
+			error = e;
+		}
+
+		/* The error from the background thread happened first. */
+		if(this.error != null) throw this.error;
+		if(error != null) throw error;
+	}
+
+	/**
+	 * The background loop. Writes the records when FLUSH_SIZE characters are
+	 * waiting or FLUSH_INTERVAL has passed.
+	 */
+	private void writeInBackground(){
+		while(true){
+			try{
+				synchronized(this){
+					long deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+					long remaining = FLUSH_INTERVAL;
+					while(!this.closed && this.size < FLUSH_SIZE && remaining > 0){
+						this.wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+					/* close() writes the rest. */
+					if(this.closed) return;
+					if(this.pending.isEmpty()) continue;
+				}
+				this.flush();
+			}
+			catch(IOException e){
+				synchronized(this){
+					if(this.error == null) this.error = e;
+				}
+			}
+			catch(InterruptedException e){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Appends text to a file, creating the file and its directory if needed.
+	 */
+	private static void write(File file, String text) throws IOException{
+		if(file.getParentFile() != null) file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file, true);
+		try{
+			out.write(text.getBytes());
+		}
+		finally{
+			out.close();
+		}
+	}
+
+}
@@ -82,8 +82,15 @@ public class MutationASTRequestor extends FileASTRequestor {
 		
 		String sourceFilePath;
 		
+		/* The class of the compilation unit and its ids in the coverage (set by the first statement). */
+		private String packageName;
+		private String className;
+		private int faultyClassId;
+		private int seedClassId;
+		
 		public StatementASTVisitor(String sourceFilePath){
 			this.sourceFilePath = sourceFilePath;
+			this.className = null;
 		}
 		
 		/**
@@ -92,21 +99,30 @@ public class MutationASTRequestor extends FileASTRequestor {
 		 * @param s
 		 */
 		private void insertStatement(Statement s){
-			/* Build the LCNode to check if this statement is in the line coverage. */
 			CompilationUnit cu = (CompilationUnit) s.getRoot();
-			String packageName = cu.getPackage() == null ? "" : cu.getPackage().getName().toString();
-            String className = ((AbstractTypeDeclaration)cu.types().get(0)).getName().toString();
+			
+			/* The statements are all from the same compilation unit, so look up its class once. */
+			if(this.className == null){
+				this.packageName = cu.getPackage() == null ? "" : cu.getPackage().getName().toString();
+	            this.className = ((AbstractTypeDeclaration)cu.types().get(0)).getName().toString();
+	            this.faultyClassId = MutationASTRequestor.this.faultyLineCoverage.getClassId(this.packageName, this.className);
+	            this.seedClassId = MutationASTRequestor.this.seedLineCoverage.getClassId(this.packageName, this.className);
+			}
+			if(this.faultyClassId < 0 && this.seedClassId < 0) return;
 			int lineNumber = cu.getLineNumber(s.getStartPosition());
-			LCNode node = new LCNode(packageName, className, lineNumber);
 			
 			/* Check if this statement has been covered. If so add it to the appropriate statement 
 			 * list with its weight. */
-			Double weight;
-			if((weight = MutationASTRequestor.this.faultyLineCoverage.contains(node)) != null){
-                MutationASTRequestor.this.faultyStatements.addStatement(new SourceStatement(this.sourceFilePath, s), weight);
+			double faultyWeight = MutationASTRequestor.this.faultyLineCoverage.getWeight(this.faultyClassId, lineNumber);
+			double seedWeight = MutationASTRequestor.this.seedLineCoverage.getWeight(this.seedClassId, lineNumber);
+			if(Double.isNaN(faultyWeight) && Double.isNaN(seedWeight)) return;
+			
+			LCNode node = new LCNode(this.packageName, this.className, lineNumber);
+			if(!Double.isNaN(faultyWeight)){
+                MutationASTRequestor.this.faultyStatements.addStatement(new SourceStatement(this.sourceFilePath, s, node), faultyWeight);
 			}
-			if((weight = MutationASTRequestor.this.seedLineCoverage.contains(node)) != null){
-                MutationASTRequestor.this.seedStatements.addStatement(new SourceStatement(this.sourceFilePath, s), weight);
+			if(!Double.isNaN(seedWeight)){
+                MutationASTRequestor.this.seedStatements.addStatement(new SourceStatement(this.sourceFilePath, s, node), seedWeight);
 			}
 		}
 		
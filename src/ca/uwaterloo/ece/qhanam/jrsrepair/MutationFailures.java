@@ -0,0 +1,87 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Stores the mutations that are known to fail (they failed the scope check
+ * or did not compile when applied to the unmodified program), so that
+ * MutationContext can avoid drawing them again. The workers share the
+ * failures, so the class is synchronized.
+ *
+ * So that a candidate makes the same mutations no matter how many workers
+ * there are or which candidates are running at the same time, a candidate
+ * only sees the failures of the candidates that are at least WINDOW before
+ * it (and its own failures, see MutationContext). Before a candidate starts,
+ * await() waits until those candidates have finished. With up to WINDOW
+ * workers, those candidates have finished by the time the candidate starts,
+ * so await() does not wait.
+ *
+ * @author qhanam
+ */
+public class MutationFailures {
+
+	/* The number of candidates before a candidate whose failures it does not see. */
+	public static final int WINDOW = 64;
+
+	/* The failures (packed by MutationContext) and the first candidate that recorded each. */
+	private HashMap<Long, Integer> failures;
+
+	/* All the candidates up to this one have finished. */
+	private int finishedThrough;
+
+	/* The candidates after finishedThrough that have finished. */
+	private TreeSet<Integer> finished;
+
+	public MutationFailures(){
+		this.failures = new HashMap<Long, Integer>();
+		this.finishedThrough = 0;
+		this.finished = new TreeSet<Integer>();
+	}
+
+	/**
+	 * Waits until the failures a candidate sees are all recorded (the
+	 * candidates that are at least WINDOW before it have finished).
+	 * @param candidate The candidate number (candidates are numbered from 1).
+	 * @throws InterruptedException
+	 */
+	public synchronized void await(int candidate) throws InterruptedException{
+		while(this.finishedThrough < candidate - WINDOW) this.wait();
+	}
+
+	/**
+	 * Records that a candidate has finished (it records no more failures).
+	 * @param candidate The candidate number.
+	 */
+	public synchronized void finish(int candidate){
+		this.finished.add(candidate);
+		while(!this.finished.isEmpty() && this.finished.first() == this.finishedThrough + 1){
+			this.finished.pollFirst();
+			this.finishedThrough++;
+		}
+		this.notifyAll();
+	}
+
+	/**
+	 * Records a failure.
+	 * @param candidate The candidate that the mutation failed in.
+	 * @param mutation The packed mutation.
+	 */
+	public synchronized void add(int candidate, long mutation){
+		Integer first = this.failures.get(mutation);
+		if(first == null || candidate < first) this.failures.put(mutation, candidate);
+	}
+
+	/**
+	 * Returns true if a candidate sees the failure: it was recorded by a
+	 * candidate that is at least WINDOW before it. The candidate must have
+	 * called await() first.
+	 * @param candidate The candidate that is drawing a mutation.
+	 * @param mutation The packed mutation.
+	 */
+	public synchronized boolean contains(int candidate, long mutation){
+		Integer first = this.failures.get(mutation);
+		return first != null && first <= candidate - WINDOW;
+	}
+
+}
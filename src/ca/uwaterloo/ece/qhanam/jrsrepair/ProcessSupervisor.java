@@ -0,0 +1,372 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Supervises the processes started by the test executors (e.g., Ant or a
+ * bash script) from a single thread.
+ *
+ * The supervisor thread drains the output of every process into a bounded
+ * buffer, kills the processes that run past their deadline and records the
+ * exit codes. This way the number of threads does not grow with the number of
+ * processes (there used to be a reader thread and a waiting thread for each
+ * process).
+ *
+ * The supervisor only reads the output that is available, so it never blocks
+ * on one process. When a process exits, the output that is still in the pipe
+ * is read before the process is marked as finished.
+ *
+ * Process pipes can't be waited on together (they are not selectable
+ * channels), so when there is no new output the supervisor waits for
+ * POLL_INTERVAL before checking again. It wakes up right away when a process
+ * is added or (on Java 9 and later) when a process exits.
+ *
+ * A LineListener can read the output line by line while the process runs.
+ * If the listener decides that the outcome is known (e.g., a test failed and
+ * the remaining tests don't matter), the process is killed right away
+ * instead of running to completion. The output comes from the program under
+ * test, so a listener that throws an exception only ends its own process
+ * (with LISTENER_FAILED); the supervisor thread keeps running.
+ *
+ * @author qhanam
+ */
+public class ProcessSupervisor {
+
+	/* The exit code reported for processes that were killed because they ran past their deadline. */
+	public static final int TIMED_OUT = Integer.MIN_VALUE;
+
+	/* The exit code reported for processes that were killed because their listener knew the outcome. */
+	public static final int STOPPED = Integer.MIN_VALUE + 1;
+
+	/* The exit code reported for processes that were killed because their listener threw an exception. */
+	public static final int LISTENER_FAILED = Integer.MIN_VALUE + 2;
+
+	/* How long the supervisor waits when none of the processes have new output. */
+	private static final long POLL_INTERVAL = 10;
+
+	/* The maximum number of characters of output that are kept for each process. */
+	private static final int OUTPUT_LIMIT = 4 * 1024 * 1024;
+
+	/* The maximum number of bytes kept of one line. The rest of a longer line is dropped. */
+	private static final int LINE_LIMIT = 64 * 1024;
+
+	private static ProcessSupervisor instance;
+
+	private List<SupervisedProcess> processes;
+
+	private ProcessSupervisor(){
+		this.processes = new ArrayList<SupervisedProcess>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ProcessSupervisor.this.supervise();
+			}
+		}, "ProcessSupervisor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the supervisor that is shared by all the test executors.
+	 * @return The supervisor.
+	 */
+	public static synchronized ProcessSupervisor getInstance(){
+		if(instance == null) instance = new ProcessSupervisor();
+		return instance;
+	}
+
+	/**
+	 * Starts supervising a process. The process's error stream should be
+	 * redirected to its output stream (or elsewhere), since only the output
+	 * stream is read.
+	 * @param process The process.
+	 * @param timeout The number of milliseconds the process may run before it is killed.
+	 * @return The handle for waiting for the process and reading its output.
+	 */
+	public SupervisedProcess supervise(Process process, long timeout){
+		return this.supervise(process, timeout, null);
+	}
+
+	/**
+	 * Starts supervising a process and passes each line of its output to a
+	 * listener. The listener is called by the supervisor thread.
+	 * @param process The process.
+	 * @param timeout The number of milliseconds the process may run before it is killed.
+	 * @param listener Reads the output as it arrives, or null.
+	 * @return The handle for waiting for the process and reading its output.
+	 */
+	public SupervisedProcess supervise(Process process, long timeout, LineListener listener){
+		SupervisedProcess supervised = new SupervisedProcess(process, System.currentTimeMillis() + timeout, listener);
+		synchronized(this.processes){
+			this.processes.add(supervised);
+			this.processes.notifyAll();
+		}
+		this.wakeOnExit(process);
+		return supervised;
+	}
+
+	/**
+	 * Wakes up the supervisor when the process exits. Process.onExit is only
+	 * available on Java 9 and later (and is called by reflection since we
+	 * compile for Java 7). Otherwise the exit is noticed within POLL_INTERVAL.
+	 */
+	private void wakeOnExit(Process process){
+		try{
+			Object exit = Process.class.getMethod("onExit").invoke(process);
+			exit.getClass().getMethod("thenRun", Runnable.class).invoke(exit, new Runnable() {
+				@Override
+				public void run() {
+					synchronized(ProcessSupervisor.this.processes){
+						ProcessSupervisor.this.processes.notifyAll();
+					}
+				}
+			});
+		}
+		catch(Exception e){
+			/* Java 8 or earlier. */
+		}
+	}
+
+	/**
+	 * The supervisor loop. Drains the output of the processes, and checks if
+	 * they have exited or run past their deadline.
+	 */
+	private void supervise(){
+		List<SupervisedProcess> active = new ArrayList<SupervisedProcess>();
+		while(true){
+			try{
+				/* Wait for processes to supervise. */
+				synchronized(this.processes){
+					while(this.processes.isEmpty()) this.processes.wait();
+					active.clear();
+					active.addAll(this.processes);
+				}
+
+				boolean read = false;
+				long now = System.currentTimeMillis();
+				for(SupervisedProcess supervised : active){
+					try{
+						read |= supervised.drain();
+
+						Integer exitCode = ProcessSupervisor.getExitCode(supervised.process);
+						if(exitCode != null){
+							supervised.drain();
+							this.finish(supervised, exitCode);
+						}
+						else if(supervised.stop){
+							ProcessSupervisor.destroy(supervised.process);
+							this.finish(supervised, STOPPED);
+						}
+						else if(now > supervised.deadline){
+							ProcessSupervisor.destroy(supervised.process);
+							this.finish(supervised, TIMED_OUT);
+						}
+					}
+					catch(RuntimeException e){
+						System.err.println("ProcessSupervisor: the output listener failed: " + e);
+						this.fail(supervised);
+					}
+				}
+
+				if(!read){
+					synchronized(this.processes){
+						if(!this.processes.isEmpty()) this.processes.wait(POLL_INTERVAL);
+					}
+				}
+			}
+			catch(InterruptedException e){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops supervising a process and reports its exit code.
+	 */
+	private void finish(SupervisedProcess supervised, int exitCode){
+		synchronized(this.processes){
+			this.processes.remove(supervised);
+		}
+		supervised.finish(exitCode);
+	}
+
+	/**
+	 * Kills a process whose listener threw an exception and reports
+	 * LISTENER_FAILED. The listener is dropped, so the rest of the output is
+	 * only collected.
+	 */
+	private void fail(SupervisedProcess supervised){
+		supervised.listener = null;
+		ProcessSupervisor.destroy(supervised.process);
+		this.finish(supervised, LISTENER_FAILED);
+	}
+
+	/**
+	 * Returns the exit code of the process, or null if it is still running.
+	 */
+	private static Integer getExitCode(Process process){
+		try{
+			return process.exitValue();
+		}
+		catch(IllegalThreadStateException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Kills a process and the processes it started (e.g., the JVM that Ant
+	 * forks for JUnit). The descendants can only be found on Java 9 and
+	 * later (with ProcessHandle, which is called by reflection since we
+	 * compile for Java 7). Otherwise only the process itself is killed.
+	 */
+	private static void destroy(Process process){
+		try{
+			Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+			Object handle = Process.class.getMethod("toHandle").invoke(process);
+			Object descendants = processHandle.getMethod("descendants").invoke(handle);
+			Iterator<?> iterator = (Iterator<?>) Class.forName("java.util.stream.BaseStream").getMethod("iterator").invoke(descendants);
+			Method destroyForcibly = processHandle.getMethod("destroyForcibly");
+			while(iterator.hasNext()) destroyForcibly.invoke(iterator.next());
+		}
+		catch(Exception e){
+			/* Java 8 or earlier. */
+		}
+		process.destroy();
+	}
+
+	/**
+	 * Reads the output of a supervised process line by line.
+	 */
+	public interface LineListener {
+
+		/**
+		 * Reads one line of output.
+		 * @param line The line (without the line terminator).
+		 * @return True if the outcome is known and the process can be killed.
+		 */
+		boolean readLine(String line);
+	}
+
+	/**
+	 * A process that is supervised by the ProcessSupervisor.
+	 */
+	public static class SupervisedProcess {
+
+		private Process process;
+		private InputStream stream;
+		private long deadline;
+		private LineListener listener;
+		private boolean stop;
+
+		private byte[] buffer;
+		private ByteArrayOutputStream line;
+		private boolean truncated;		// The current line is longer than LINE_LIMIT.
+		private ArrayDeque<String> lines;
+		private int length;
+
+		private boolean finished;
+		private int exitCode;
+
+		private SupervisedProcess(Process process, long deadline, LineListener listener){
+			this.process = process;
+			this.stream = process.getInputStream();
+			this.deadline = deadline;
+			this.listener = listener;
+			this.stop = false;
+			this.buffer = new byte[8192];
+			this.line = new ByteArrayOutputStream();
+			this.truncated = false;
+			this.lines = new ArrayDeque<String>();
+			this.length = 0;
+			this.finished = false;
+		}
+
+		/**
+		 * Waits for the process to exit or time out.
+		 * @return The exit code of the process, TIMED_OUT if it was killed because it ran
+		 * 		   past its deadline, STOPPED if it was killed because the listener knew the outcome
+		 * 		   or LISTENER_FAILED if it was killed because the listener threw an exception.
+		 * @throws InterruptedException
+		 */
+		public synchronized int waitFor() throws InterruptedException{
+			while(!this.finished) this.wait();
+			return this.exitCode;
+		}
+
+		/**
+		 * Returns the output of the process. If the output is longer than
+		 * OUTPUT_LIMIT, the first lines are dropped.
+		 * @return The output, one line per line.
+		 */
+		public synchronized String getOutput(){
+			StringBuilder output = new StringBuilder(this.length + this.lines.size());
+			for(String line : this.lines) output.append(line).append('\n');
+			return output.toString();
+		}
+
+		/**
+		 * Reads the output that is available without blocking.
+		 * @return True if any output was read.
+		 */
+		private boolean drain(){
+			boolean read = false;
+			try{
+				int available;
+				while((available = this.stream.available()) > 0){
+					int n = this.stream.read(this.buffer, 0, Math.min(available, this.buffer.length));
+					if(n <= 0) break;
+					read = true;
+					for(int i = 0; i < n; i++){
+						if(this.buffer[i] == '\n') this.addLine();
+						else if(this.line.size() < LINE_LIMIT) this.line.write(this.buffer[i]);
+						else this.truncated = true;
+					}
+				}
+			}
+			catch(IOException e){
+				/* The stream was closed. */
+			}
+			return read;
+		}
+
+		/**
+		 * Adds the current line to the output, dropping the oldest lines if
+		 * the output is too long, and passes it to the listener. A line that
+		 * is longer than LINE_LIMIT is cut at LINE_LIMIT.
+		 */
+		private synchronized void addLine(){
+			String line = this.line.toString();
+			this.line.reset();
+			if(line.endsWith("\r") && !this.truncated) line = line.substring(0, line.length() - 1);
+			this.truncated = false;
+
+			this.lines.add(line);
+			this.length += line.length();
+			while(this.length > OUTPUT_LIMIT && this.lines.size() > 1) this.length -= this.lines.remove().length();
+
+			if(this.listener != null && !this.stop) this.stop = this.listener.readLine(line);
+		}
+
+		/**
+		 * Marks the process as finished and wakes up the threads waiting for it.
+		 */
+		private synchronized void finish(int exitCode){
+			if(this.line.size() > 0) this.addLine();
+			this.exitCode = exitCode;
+			this.finished = true;
+			this.notifyAll();
+			try{
+				this.stream.close();
+			}
+			catch(IOException ignore){ }
+		}
+	}
+
+}
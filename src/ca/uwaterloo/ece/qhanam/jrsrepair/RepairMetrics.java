@@ -0,0 +1,270 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.Context;
+
+/**
+ * Live metrics for a running repair, published as an MBean so that they can
+ * be watched with standard JMX tools (e.g., jconsole or VisualVM).
+ *
+ * The metrics are updated from the timings of each attempt (the same records
+ * as the TimingJournal), so the workers only increment a few counters per
+ * attempt. The statement and queue gauges are read from the workers when the
+ * attribute is read.
+ *
+ * @author qhanam
+ */
+public class RepairMetrics implements RepairMetricsMBean {
+
+	/* The name the metrics are registered under. */
+	public static final String OBJECT_NAME = "ca.uwaterloo.ece.qhanam.jrsrepair:type=RepairMetrics";
+
+	/* The upper bounds of the latency buckets (milliseconds). */
+	private static final long[] BUCKET_BOUNDS = { 1, 10, 100, 1000, 10000, 60000 };
+
+	private Context[] workers;
+	private long start;
+
+	private AtomicLong attempts;
+	private AtomicLong scopeChecks;
+	private AtomicLong scopeRejections;
+	private AtomicLong compiles;
+	private AtomicLong compileFailures;
+	private AtomicLong duplicates;
+	private AtomicLongArray testStatuses;
+
+	/* The time from the start to the first passing test run (-1 until there is one). */
+	private AtomicLong firstPatchNanos;
+
+	private AtomicLongArray mutationLatency;
+	private AtomicLongArray compileLatency;
+	private AtomicLongArray testLatency;
+
+	/* The test stage's queue (null if the tests are not pipelined). */
+	private volatile BlockingQueue<?> testQueue;
+
+	private ObjectName name;
+
+	/**
+	 * @param workers The contexts of the workers (for the statement gauges).
+	 */
+	public RepairMetrics(Context[] workers){
+		this.workers = workers;
+		this.start = System.nanoTime();
+		this.attempts = new AtomicLong();
+		this.scopeChecks = new AtomicLong();
+		this.scopeRejections = new AtomicLong();
+		this.compiles = new AtomicLong();
+		this.compileFailures = new AtomicLong();
+		this.duplicates = new AtomicLong();
+		this.testStatuses = new AtomicLongArray(AbstractTestExecutor.Status.values().length);
+		this.firstPatchNanos = new AtomicLong(-1);
+		this.mutationLatency = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+		this.compileLatency = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+		this.testLatency = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server. If metrics are
+	 * already registered (e.g., another repair is running in this JVM), the
+	 * metrics are not published.
+	 */
+	public void register(){
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) return;
+			server.registerMBean(this, name);
+			this.name = name;
+		}
+		catch(Exception e){
+			System.out.println("Could not register the repair metrics: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters the metrics (if they were registered by register()).
+	 */
+	public void unregister(){
+		if(this.name == null) return;
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		}
+		catch(Exception ignore){ }
+		this.name = null;
+	}
+
+	/**
+	 * Sets the queue of the test stage, so its depth can be monitored.
+	 * @param testQueue The queue, or null when the test stage stops.
+	 */
+	public void setTestQueue(BlockingQueue<?> testQueue){
+		this.testQueue = testQueue;
+	}
+
+	/**
+	 * Adds the outcome and timings of an attempt.
+	 * @param timing The record of the attempt.
+	 */
+	public void record(TimingJournal.Record timing){
+		this.attempts.incrementAndGet();
+		if(timing.faultyId >= 0) this.scopeChecks.incrementAndGet();
+		this.scopeChecks.addAndGet(timing.scopeRejections);
+		this.scopeRejections.addAndGet(timing.scopeRejections);
+		if(timing.duplicate) this.duplicates.incrementAndGet();
+
+		if(timing.compileStatus != null){
+			this.compiles.incrementAndGet();
+			if(timing.compileStatus == JavaJDKCompiler.Status.NOT_COMPILED) this.compileFailures.incrementAndGet();
+			RepairMetrics.count(this.compileLatency, timing.compileNanos);
+		}
+		if(timing.testStatus != null){
+			this.testStatuses.incrementAndGet(timing.testStatus.ordinal());
+			if(timing.testStatus == AbstractTestExecutor.Status.PASSED) this.firstPatchNanos.compareAndSet(-1, System.nanoTime() - this.start);
+			RepairMetrics.count(this.testLatency, timing.testNanos);
+		}
+		RepairMetrics.count(this.mutationLatency, timing.mutateNanos + timing.scopeNanos);
+	}
+
+	/**
+	 * Adds a duration to a latency histogram.
+	 */
+	private static void count(AtomicLongArray histogram, long nanos){
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while(bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) bucket++;
+		histogram.incrementAndGet(bucket);
+	}
+
+	/**
+	 * Returns a snapshot of a histogram.
+	 */
+	private static long[] snapshot(AtomicLongArray histogram){
+		long[] counts = new long[histogram.length()];
+		for(int i = 0; i < counts.length; i++) counts[i] = histogram.get(i);
+		return counts;
+	}
+
+	/**
+	 * Returns numerator / denominator, or 0 if the denominator is 0.
+	 */
+	private static double rate(long numerator, long denominator){
+		return denominator == 0 ? 0 : (double) numerator / denominator;
+	}
+
+	@Override
+	public double getElapsedSeconds(){
+		return (System.nanoTime() - this.start) / 1e9;
+	}
+
+	@Override
+	public long getAttempts(){
+		return this.attempts.get();
+	}
+
+	@Override
+	public double getAttemptsPerSecond(){
+		double elapsed = this.getElapsedSeconds();
+		return elapsed <= 0 ? 0 : this.attempts.get() / elapsed;
+	}
+
+	@Override
+	public long getScopeRejections(){
+		return this.scopeRejections.get();
+	}
+
+	@Override
+	public double getScopeRejectionRate(){
+		return RepairMetrics.rate(this.scopeRejections.get(), this.scopeChecks.get());
+	}
+
+	@Override
+	public long getCompileFailures(){
+		return this.compileFailures.get();
+	}
+
+	@Override
+	public double getCompileFailureRate(){
+		return RepairMetrics.rate(this.compileFailures.get(), this.compiles.get());
+	}
+
+	@Override
+	public long getDuplicateVariants(){
+		return this.duplicates.get();
+	}
+
+	@Override
+	public long getTestsPassed(){
+		return this.testStatuses.get(AbstractTestExecutor.Status.PASSED.ordinal());
+	}
+
+	@Override
+	public long getTestsFailed(){
+		return this.testStatuses.get(AbstractTestExecutor.Status.FAILED.ordinal());
+	}
+
+	@Override
+	public long getTestsErrored(){
+		return this.testStatuses.get(AbstractTestExecutor.Status.ERROR.ordinal());
+	}
+
+	@Override
+	public long getTestsTimedOut(){
+		return this.testStatuses.get(AbstractTestExecutor.Status.TIMEOUT.ordinal());
+	}
+
+	@Override
+	public double getSecondsToFirstPatch(){
+		long nanos = this.firstPatchNanos.get();
+		return nanos < 0 ? -1 : nanos / 1e9;
+	}
+
+	@Override
+	public int getFaultyStatementsInUse(){
+		int inUse = 0;
+		for(Context worker : this.workers) inUse += worker.mutation.getFaultyStatementsInUse();
+		return inUse;
+	}
+
+	@Override
+	public int getSeedStatementsInUse(){
+		int inUse = 0;
+		for(Context worker : this.workers) inUse += worker.mutation.getSeedStatementsInUse();
+		return inUse;
+	}
+
+	@Override
+	public int getTestQueueDepth(){
+		BlockingQueue<?> testQueue = this.testQueue;
+		return testQueue == null ? 0 : testQueue.size();
+	}
+
+	@Override
+	public long[] getLatencyBucketBoundsMillis(){
+		return BUCKET_BOUNDS.clone();
+	}
+
+	@Override
+	public long[] getMutationLatencyHistogram(){
+		return RepairMetrics.snapshot(this.mutationLatency);
+	}
+
+	@Override
+	public long[] getCompileLatencyHistogram(){
+		return RepairMetrics.snapshot(this.compileLatency);
+	}
+
+	@Override
+	public long[] getTestLatencyHistogram(){
+		return RepairMetrics.snapshot(this.testLatency);
+	}
+
+}
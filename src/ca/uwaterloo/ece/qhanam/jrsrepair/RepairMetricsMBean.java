@@ -0,0 +1,75 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+/**
+ * The JMX interface of RepairMetrics. The metrics are read-only and cover
+ * the repair that is running.
+ *
+ * The latency histograms count the attempts by how long a phase took. The
+ * upper bound (in milliseconds) of each bucket is given by
+ * getLatencyBucketBoundsMillis(); the last bucket counts the rest.
+ *
+ * @author qhanam
+ */
+public interface RepairMetricsMBean {
+
+	/** The number of seconds since the repair started. */
+	double getElapsedSeconds();
+
+	/** The number of attempts (mutated programs) that have been evaluated. */
+	long getAttempts();
+
+	/** The average number of attempts per second since the repair started. */
+	double getAttemptsPerSecond();
+
+	/** The number of mutations that failed the scope check. */
+	long getScopeRejections();
+
+	/** The fraction of the mutations that failed the scope check. */
+	double getScopeRejectionRate();
+
+	/** The number of attempts that did not compile. */
+	long getCompileFailures();
+
+	/** The fraction of the compiles that failed. */
+	double getCompileFailureRate();
+
+	/** The number of attempts that reused the outcome of a duplicate variant. */
+	long getDuplicateVariants();
+
+	/** The number of test runs that passed. */
+	long getTestsPassed();
+
+	/** The number of test runs that failed. */
+	long getTestsFailed();
+
+	/** The number of test runs that did not run properly. */
+	long getTestsErrored();
+
+	/** The number of test runs that timed out. */
+	long getTestsTimedOut();
+
+	/** The number of seconds from the start of the repair to the first plausible patch (-1 if there is none yet). */
+	double getSecondsToFirstPatch();
+
+	/** The number of faulty statements that are mutated (summed over the workers). */
+	int getFaultyStatementsInUse();
+
+	/** The number of seed statements that are used by mutations (summed over the workers). */
+	int getSeedStatementsInUse();
+
+	/** The number of compiled candidates waiting for the test stage (0 if the tests are not pipelined). */
+	int getTestQueueDepth();
+
+	/** The upper bounds of the latency histogram buckets, in milliseconds. */
+	long[] getLatencyBucketBoundsMillis();
+
+	/** The histogram of the time spent mutating and checking the scope. */
+	long[] getMutationLatencyHistogram();
+
+	/** The histogram of the compile times. */
+	long[] getCompileLatencyHistogram();
+
+	/** The histogram of the test times. */
+	long[] getTestLatencyHistogram();
+
+}
@@ -16,11 +16,33 @@ import org.eclipse.jdt.core.dom.Statement;
 public class SourceStatement {
 	public String sourceFile;
 	public Statement statement;
-	public boolean inUse;
+	boolean inUse;			// Set by Statements.reserve and Statements.release.
+	public int id;			// The index of the statement in its Statements list (set by Statements.addStatement).
+	Statements statements;	// The list the statement belongs to (set by Statements.addStatement).
+	LCNode location;		// The package, class and line of the statement in the unmodified program.
 	
-	public SourceStatement(String sourceFile, Statement statement){
+	public SourceStatement(String sourceFile, Statement statement, LCNode location){
 		this.sourceFile = sourceFile;
 		this.statement = statement;
+		this.location = location;
 		this.inUse = false;
+		this.id = -1;
+		this.statements = null;
+	}
+	
+	/**
+	 * Returns true if the statement is in use by a mutation.
+	 * @return
+	 */
+	public boolean isInUse(){
+		return this.inUse;
+	}
+	
+	/**
+	 * Releases the statement so it can be selected again (see Statements.release).
+	 */
+	public void release(){
+		if(this.statements != null) this.statements.release(this);
+		else this.inUse = false;
 	}
 }
@@ -1,12 +1,15 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.NavigableMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Random;
-import java.util.Stack;
-import java.util.TreeMap;
 import java.util.Set;
+import java.util.Stack;
 
 import org.eclipse.jdt.core.dom.*;
 
@@ -18,25 +21,51 @@ import org.eclipse.jdt.core.dom.*;
  * to statement coverage. Seed statements should be in the execution path of one or more test cases,
  * while faulty statements should be in the execution path of one or more faulty test cases.
  * 
- * TODO: Add functionality to support filtering seed statements by variable scope.
+ * The statements are added while the ASTs are built. Once the ASTs are built, the statements are
+ * frozen (see freeze()) and selected with a WeightedSampler. A statement that is in use by a
+ * mutation is reserved, which removes it from the sampler, so selection never draws a statement
+ * that is in use and takes O(log n) time however many statements are reserved.
+ * 
+ * Seed statements are selected from the statements that are in the scope of the faulty statement's
+ * method. The seeds that are in the scope of a method are found the first time a seed is selected
+ * for that method, and are kept in a ScopeIndex with its own sampler.
  * 
  * @author qhanam
  *
  */
 public class Statements {
 	
-	private NavigableMap<Double, SourceStatement> statements;
-	private double totalWeight; // We track the total weight so that we can randomly select a statement with weighting.
+	private List<SourceStatement> statementList; // The statements in the order they were added (indexed by SourceStatement.id).
+	private double[] weights; // The weights of the statements (indexed by SourceStatement.id).
+	private WeightedSampler sampler; // Selects the statements that are not in use (null until frozen).
+	private List<SourceStatement> reserved; // The statements that are in use (only a few are in use at a time).
+	private int reservations; // Counts the changes to the reserved statements (so the scope indices know when to update).
 	private HashMap<String, HashSet<String>> scope;
+	private String[][] variableNames; // The names each statement uses (indexed by SourceStatement.id, computed when needed).
+	private HashMap<String, ScopeIndex> scopeIndices; // The seeds in scope, by method ([source file].[method name]).
+	private IdentityHashMap<SourceStatement, ScopeIndex> destinationIndices; // The seeds in scope, by destination statement.
 	private Random random;
 
 	public Statements(HashMap<String, HashSet<String>> scope, long randomSeed) { 
-		this.statements = new TreeMap<Double, SourceStatement>();
-		this.totalWeight = 0;
+		this.statementList = new ArrayList<SourceStatement>();
+		this.weights = new double[16];
+		this.sampler = null;
+		this.reserved = new ArrayList<SourceStatement>();
+		this.reservations = 0;
 		this.scope = scope;
+		this.scopeIndices = new HashMap<String, ScopeIndex>();
+		this.destinationIndices = new IdentityHashMap<SourceStatement, ScopeIndex>();
 		this.random = new Random(randomSeed);
     }
 	
+	/**
+	 * Resets the random number generator used for selecting statements.
+	 * @param randomSeed The new seed.
+	 */
+	public void reseed(long randomSeed){
+		this.random = new Random(randomSeed);
+	}
+	
 	/**
 	 * Add a statement to our statement maps. The statements are inserted according to their weight.
 	 * @param s The statement to insert.
@@ -44,8 +73,76 @@ public class Statements {
 	 * @param faulty Indicates the statement should be stored in the faulty statement list as well.
 	 */
 	public void addStatement(SourceStatement s, double weight){
-        this.totalWeight += weight;
-        this.statements.put(this.totalWeight, s);
+		if(this.sampler != null) throw new IllegalStateException("Statements.addStatement: the statements are frozen.");
+        s.id = this.statementList.size();
+        s.statements = this;
+        this.statementList.add(s);
+        if(s.id == this.weights.length) this.weights = Arrays.copyOf(this.weights, this.weights.length * 2);
+        this.weights[s.id] = weight;
+	}
+	
+	/**
+	 * Builds the sampler that statements are selected with. Called once the
+	 * ASTs are built (or on the first selection or reservation). Statements
+	 * can't be added afterwards.
+	 */
+	public void freeze(){
+		if(this.sampler != null) return;
+		this.sampler = new WeightedSampler(this.weights, this.statementList.size());
+		this.variableNames = new String[this.statementList.size()][];
+	}
+	
+	/**
+	 * Selects a statement that is not in use at random (with probability
+	 * proportional to its weight). Statements with zero weight are never
+	 * selected.
+	 * @return The statement.
+	 * @throws IllegalStateException if every statement is in use.
+	 */
+	private SourceStatement sample(){
+		if(this.sampler == null) this.freeze();
+		int id = this.sampler.sample(this.random);
+		if(id < 0) throw new IllegalStateException("Statements.sample: every statement is in use.");
+		return this.statementList.get(id);
+	}
+	
+	/**
+	 * Marks a statement as in use by a mutation. It won't be selected until
+	 * it is released.
+	 * @param statement A statement in this list.
+	 */
+	public void reserve(SourceStatement statement){
+		if(this.sampler == null) this.freeze();
+		if(statement.inUse) return;
+		
+		statement.inUse = true;
+		this.reserved.add(statement);
+		this.reservations++;
+		this.sampler.remove(statement.id);
+	}
+	
+	/**
+	 * Marks a statement as no longer in use, so it can be selected again.
+	 * @param statement A statement in this list.
+	 */
+	public void release(SourceStatement statement){
+		if(!statement.inUse) return;
+		
+		statement.inUse = false;
+		this.reserved.remove(statement);
+		this.reservations++;
+		this.sampler.restore(statement.id);
+	}
+	
+	/**
+	 * Returns the statement with the given id. Every context builds its
+	 * statements in the same order, so an id refers to the same statement
+	 * in every context.
+	 * @param id The id of the statement (SourceStatement.id).
+	 * @return The statement.
+	 */
+	public SourceStatement getStatement(int id){
+		return this.statementList.get(id);
 	}
 
 	/**
@@ -53,83 +150,97 @@ public class Statements {
 	 * @return The faulty statement to be mutated.
 	 */
 	public SourceStatement getRandomStatement(){
-		SourceStatement statement = null;
-
-		do{
-            /* Compute a random spot. */
-			double random = this.random.nextDouble() * this.totalWeight;
-            
-            /* Find the statement at that random spot. */
-            statement = this.statements.ceilingEntry(random).getValue();
-
-		} while(statement.inUse);
+		SourceStatement statement = this.sample();
 
 		/* This statement is now in use. */
-		statement.inUse = true;
+		this.reserve(statement);
 
 		return statement;
 	}
 	
 	/**
-	 * Randomly selects and returns a seed statement. Checks scope against
-	 * a destination (faulty) statement.
+	 * Randomly selects and returns a seed statement. Only seeds that are in
+	 * the scope of the destination (faulty) statement are selected, unless
+	 * there are none that are not in use.
 	 * @return The faulty statement to be mutated.
 	 */
 	public SourceStatement getRandomStatement(SourceStatement destinationScope){
-		SourceStatement statement = null;
-		boolean inScope = false;
-		int ctr = 0;
-
-		do{
-            /* Compute a random spot. */
-			double random = this.random.nextDouble() * this.totalWeight;
-            
-            /* Find the statement at that random spot. */
-            statement = this.statements.ceilingEntry(random).getValue();
-            
-            /* Check that the statement variables are in scope. */
-            inScope = this.inScope(statement, destinationScope);
-
+		if(this.sampler == null) this.freeze();
+		SourceStatement statement;
+		
+		ScopeIndex index = this.getScopeIndex(destinationScope);
+		int position = index.sample();
+		if(position >= 0){
+			statement = this.statementList.get(index.ids[position]);
+		}
+		else{
             /* Just in case, let's have an escape plan. */
-            ctr++;
-            if(ctr > 500 && !statement.inUse) {
-            	System.err.println("Could not find an unused statement in scope in " + ctr + " iterations.");
-            	break;
-            }
-         
-		} while(statement.inUse || !inScope);
+        	System.err.println("Could not find an unused statement in scope.");
+        	statement = this.sample();
+		}
 
 		/* This statement is now in use. */
-		statement.inUse = true;
+		this.reserve(statement);
 
 		return statement;
 	}
 	
+	/**
+	 * Returns the index of the seeds that are in the scope of a destination
+	 * statement, building it if this is the first time its method is seen.
+	 */
+	private ScopeIndex getScopeIndex(SourceStatement destinationScope){
+		ScopeIndex index = this.destinationIndices.get(destinationScope);
+		if(index != null) return index;
+
+		String method = destinationScope.sourceFile + "." + this.getMethodName(destinationScope.statement);
+		index = this.scopeIndices.get(method);
+		if(index == null){
+			index = new ScopeIndex(this.scope.get(method));
+			this.scopeIndices.put(method, index);
+		}
+		this.destinationIndices.put(destinationScope, index);
+		return index;
+	}
+	
 	/**
 	 * Check that all the variables used in the statement are in the scope.
-	 * @param statement
+	 * @param id The id of the statement.
+	 * @param methodScope The variables in the scope of the destination method (null if unknown).
 	 * @return
 	 */
-	private boolean inScope(SourceStatement statement, SourceStatement destinationScope){
-        HashSet<String> methodScope = this.scope.get(destinationScope.sourceFile + "." + this.getMethodName(destinationScope.statement));
-		VarASTVisitor vav = new VarASTVisitor();
-		statement.statement.accept(vav);
+	private boolean inScope(int id, HashSet<String> methodScope){
+		String[] variableNames = this.getVariableNames(id);
 		
 		/* If there are no variables used, the statement is in scope. */
-		if(vav.variableNames.size() == 0) return true;
+		if(variableNames.length == 0) return true;
 		
 		/* TODO: Why does this happen? */
 		if(methodScope == null) return false;
 		
 		/* If there is at least one SimpleName matching a variable in scope,
 		 * the statement might be in scope so we return true. */
-		for(String variableName : vav.variableNames){
+		for(String variableName : variableNames){
 			if(methodScope.contains(variableName)) return true;
 		}
 		
 		/* The statement isn't in scope. */
 		return false;
 	}
+	
+	/**
+	 * Returns the names of potential variables used in a statement. The names
+	 * are collected the first time they are needed.
+	 */
+	private String[] getVariableNames(int id){
+		if(this.variableNames[id] == null){
+			VarASTVisitor vav = new VarASTVisitor();
+			this.statementList.get(id).statement.accept(vav);
+			Set<String> names = new LinkedHashSet<String>(vav.variableNames);
+			this.variableNames[id] = names.toArray(new String[names.size()]);
+		}
+		return this.variableNames[id];
+	}
 
     private String getMethodName(ASTNode node){
         while(!(node instanceof MethodDeclaration)){
@@ -140,25 +251,99 @@ public class Statements {
         return md.getName().toString();
     }
 	
+	/**
+	 * The seed statements that are in the scope of one method, with a sampler
+	 * for selecting among them. The reserved statements are removed from the
+	 * sampler before each selection.
+	 */
+	private class ScopeIndex {
+		public int[] ids; // The ids of the statements in scope (in increasing order).
+		private WeightedSampler sampler;
+		private List<SourceStatement> removed; // The reserved statements that are removed from the sampler.
+		private int reservations; // The value of Statements.reservations when the sampler was last updated.
+		
+		public ScopeIndex(HashSet<String> methodScope){
+			int[] ids = new int[Statements.this.statementList.size()];
+			int count = 0;
+			for(int id = 0; id < ids.length; id++){
+				if(Statements.this.inScope(id, methodScope)) ids[count++] = id;
+			}
+			this.ids = Arrays.copyOf(ids, count);
+			
+			double[] weights = new double[count];
+			for(int i = 0; i < count; i++) weights[i] = Statements.this.weights[this.ids[i]];
+			this.sampler = new WeightedSampler(weights, count);
+			this.removed = new ArrayList<SourceStatement>();
+			this.reservations = -1;
+		}
+		
+		/**
+		 * Selects a statement in scope that is not in use.
+		 * @return The position of the statement in ids, or -1 if there is none.
+		 */
+		public int sample(){
+			if(this.reservations != Statements.this.reservations){
+				
+				/* Restore the statements that were released. */
+				for(int i = this.removed.size() - 1; i >= 0; i--){
+					SourceStatement statement = this.removed.get(i);
+					if(!statement.inUse){
+						this.sampler.restore(Arrays.binarySearch(this.ids, statement.id));
+						this.removed.remove(i);
+					}
+				}
+				
+				/* Remove the statements that were reserved. */
+				for(int i = 0; i < Statements.this.reserved.size(); i++){
+					SourceStatement statement = Statements.this.reserved.get(i);
+					int position = Arrays.binarySearch(this.ids, statement.id);
+					if(position >= 0 && !this.sampler.isRemoved(position)){
+						this.sampler.remove(position);
+						this.removed.add(statement);
+					}
+				}
+				this.reservations = Statements.this.reservations;
+			}
+			return this.sampler.sample(Statements.this.random);
+		}
+	}
+	
 	/**
 	 * Returns a string containing the statements in this set and their weights.
 	 */
 	@Override
 	public String toString(){
 		String s = "";
-		Set<NavigableMap.Entry<Double, SourceStatement>> entrySet = statements.entrySet();
-		for(NavigableMap.Entry<Double, SourceStatement> entry : entrySet){
-			s += (Math.round(entry.getKey()*10.0)/10.0) + " : " + entry.getValue() + "\n";
+		double cumulativeWeight = 0;
+		for(SourceStatement statement : this.statementList){
+			cumulativeWeight += this.weights[statement.id];
+			s += (Math.round(cumulativeWeight*10.0)/10.0) + " : " + statement + "\n";
 		}
 		return s;
 	}
 	
+	/**
+	 * Returns the number of statements.
+	 * @return
+	 */
+	public int size(){
+		return this.statementList.size();
+	}
+	
+	/**
+	 * Returns the number of statements that are in use by a mutation.
+	 * @return
+	 */
+	public int getInUseCount(){
+		return this.reserved.size();
+	}
+	
 	/**
 	 * Checks if the statement list is empty.
 	 * @return True if there are zero elements in the statement map.
 	 */
 	public boolean isEmpty(){
-		if(this.statements.size() == 0) return true;
+		if(this.statementList.size() == 0) return true;
 		return false;
 	}	
 	
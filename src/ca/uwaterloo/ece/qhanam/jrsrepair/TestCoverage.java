@@ -0,0 +1,80 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Stores the per-test line coverage of the unmodified program: for each line,
+ * the tests that execute it. The coverage is collected once (e.g., by running
+ * each test in its own JaCoCo session) and is used to select the tests that
+ * can be affected by a mutation.
+ *
+ * Each line of the coverage file has the format:
+ * 		[package]:[class]:[line]:[class name]#[method name],[class name]#[method name],...
+ * @author qhanam
+ *
+ */
+public class TestCoverage {
+
+	private HashMap<LCNode, Set<String>> coverage;
+
+	/**
+	 * Initialize the test coverage by reading the coverage file.
+	 * @param file The per-test coverage file.
+	 */
+	public TestCoverage(File file) throws Exception {
+		this.coverage = TestCoverage.readCoverageFile(file);
+	}
+
+	/**
+	 * Returns the tests that execute at least one of the statements. A test
+	 * that does not execute a mutated statement has the same result as it
+	 * has on the unmodified program.
+	 * @param statements The statements that were mutated.
+	 * @return The tests in the format "[class name]#[method name]".
+	 */
+	public Set<String> getTests(Collection<SourceStatement> statements){
+		Set<String> tests = new LinkedHashSet<String>();
+		for(SourceStatement statement : statements){
+			Set<String> covering = this.coverage.get(statement.location);
+			if(covering != null) tests.addAll(covering);
+		}
+		return tests;
+	}
+
+	/**
+	 * Reads a per-test coverage file into a HashMap<LCNode, Set<String>> object.
+	 * @param file The per-test coverage file.
+	 * @return The tests that cover each line.
+	 * @throws Exception
+	 */
+	private static HashMap<LCNode, Set<String>> readCoverageFile(File file) throws Exception{
+		HashMap<LCNode, Set<String>> map = new HashMap<LCNode, Set<String>>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		for(String line = reader.readLine(); line != null; line = reader.readLine()){
+			if(line.trim().isEmpty()) continue;
+			String[] tokens = line.split(":", 4);
+			if(tokens.length == 4){
+                LCNode node = new LCNode(tokens[0], tokens[1], Integer.valueOf(tokens[2]));
+                Set<String> tests = map.get(node);
+                if(tests == null){
+                	tests = new HashSet<String>();
+                	map.put(node, tests);
+                }
+                for(String test : tokens[3].split(",")){
+                	if(!test.trim().isEmpty()) tests.add(test.trim());
+                }
+			}
+			else{
+				reader.close();
+				throw new Exception("TestCoverage.readCoverageFile: file not formatted properly... too few tokens.\n" + line);
+			}
+		}
+		reader.close();
+		return map;
+	}
+}
@@ -0,0 +1,129 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The test server runs in a long-lived JVM that is started by
+ * TestServerExecutor. It reads requests from stdin and writes the results to
+ * stdout, so the output of the tests is sent to stderr.
+ *
+ * The server keeps the class files of the program under repair, so each
+ * request only contains the classes that changed since the last request.
+ * The tests are run by a JUnitTestExecutor, which loads the program and the
+ * test classes in a new class loader for each run. Libraries that don't
+ * depend on the program are loaded once by a shared parent class loader.
+ *
+ * The protocol (all values are written with DataOutputStream):
+ * 	Setup:		[test classes: int n, n * UTF] [test class path: int n, n * UTF] [library path: int n, n * UTF]
+ * 	Request:	[changed classes: int n, n * (UTF name, int length, bytes)] [removed classes: int n, n * UTF]
+ * 				[tests: int n (-1 = all), n * UTF] [fail fast: boolean] [time out: long]
+ * 	Response:	[status: int (Status ordinal)] [tests run: int] [failed tests: int n, n * UTF]
+ *
+ * The server exits when stdin is closed.
+ *
+ * @author qhanam
+ */
+public class TestServer {
+
+	public static void main(String[] args) throws Exception {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+		/* stdout is reserved for the responses. */
+		System.setOut(System.err);
+
+		String[] testClasses = TestServer.readStrings(in);
+		URL[] testClasspath = TestServer.readURLs(in);
+		URL[] libraryClasspath = TestServer.readURLs(in);
+
+		ClassLoader parent = new URLClassLoader(libraryClasspath, TestServer.class.getClassLoader());
+		JUnitTestExecutor executor = new JUnitTestExecutor(testClasses, testClasspath, parent);
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+		while(true){
+			int changed;
+			try{
+				changed = in.readInt();
+			}
+			catch(EOFException e){
+				return;
+			}
+
+			/* Update the program under repair. */
+			for(int i = 0; i < changed; i++){
+				String name = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				classes.put(name, bytes);
+			}
+			for(String name : TestServer.readStrings(in)) classes.remove(name);
+
+			int count = in.readInt();
+			List<String> tests = null;
+			if(count >= 0){
+				tests = new ArrayList<String>();
+				for(int i = 0; i < count; i++) tests.add(in.readUTF());
+			}
+			boolean failFast = in.readBoolean();
+			executor.setTimeout(in.readLong());
+
+			/* The executor reads the class map during the run, so it gets a copy. */
+			executor.setCompiledClasses(new HashMap<String, byte[]>(classes));
+			AbstractTestExecutor.Status status;
+			try{
+				status = executor.runTests(tests, failFast);
+			}
+			catch(Exception e){
+				e.printStackTrace();
+				status = AbstractTestExecutor.Status.ERROR;
+			}
+
+			out.writeInt(status.ordinal());
+			out.writeInt(status == AbstractTestExecutor.Status.ERROR ? -1 : executor.getTestsRun());
+			out.writeInt(executor.getFailedTests().size());
+			for(String test : executor.getFailedTests()) out.writeUTF(test);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes an array of strings.
+	 */
+	static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for(String string : strings) out.writeUTF(string);
+	}
+
+	/**
+	 * Reads an array of strings written by writeStrings.
+	 */
+	static String[] readStrings(DataInputStream in) throws IOException {
+		String[] strings = new String[in.readInt()];
+		for(int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+		return strings;
+	}
+
+	/**
+	 * Reads an array of URLs written by writeStrings.
+	 */
+	private static URL[] readURLs(DataInputStream in) throws IOException {
+		String[] strings = TestServer.readStrings(in);
+		URL[] urls = new URL[strings.length];
+		for(int i = 0; i < strings.length; i++) urls[i] = new URL(strings[i]);
+		return urls;
+	}
+
+}
@@ -0,0 +1,245 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * TestServerExecutor runs the JUnit tests for the program under repair in a
+ * long-lived JVM (see TestServer).
+ *
+ * Like JUnitTestExecutor, the classes are passed straight from the compiler's
+ * output, but the tests run in a separate process, so a test that hangs or
+ * crashes the JVM can't take down the repair. Unlike Ant and Bash, the JVM
+ * is only started once, so the JVM start-up, JIT warm-up and loading of
+ * JUnit and the libraries are not paid for each candidate. Only the classes
+ * that changed since the last run are sent to the server.
+ *
+ * The server is restarted after a number of runs (in case the tests leak
+ * memory or threads), after it crashes and after the tests time out.
+ *
+ * @author qhanam
+ */
+public class TestServerExecutor extends AbstractTestExecutor {
+
+	/* How long to wait for the server after the tests' time out. The server
+	 * times out the tests itself, so this only expires if the server hangs. */
+	private static final int GRACE_PERIOD = 30000;
+
+	private String[] testClasses;
+	private URL[] testClasspath;
+	private URL[] libraryClasspath;
+	private String[] jvmArgs;
+	private int maxRuns;
+	private File logFile;
+
+	private Process process;
+	private DataInputStream in;
+	private DataOutputStream out;
+	private int runs;
+
+	/* The classes the server has, and the classes to test. */
+	private Map<String, byte[]> serverClasses;
+	private Map<String, byte[]> compiledClasses;
+
+	/**
+	 * @param testClasses The names of the JUnit test classes to run.
+	 * @param testClasspath The class path for the test classes and their dependencies
+	 * 						(but not the program under repair). Loaded again for each run.
+	 * @param libraryClasspath The class path for libraries that don't depend on the
+	 * 						   program under repair. Loaded once by the server.
+	 * @param jvmArgs The arguments for the server's JVM (e.g., -Xmx1g).
+	 * @param maxRuns The number of runs after which the server is restarted.
+	 * @param logFile The file that the output of the tests is appended to.
+	 */
+	public TestServerExecutor(String[] testClasses, URL[] testClasspath, URL[] libraryClasspath,
+							  String[] jvmArgs, int maxRuns, File logFile){
+		super(30000);
+		this.testClasses = testClasses;
+		this.testClasspath = testClasspath;
+		this.libraryClasspath = libraryClasspath;
+		this.jvmArgs = jvmArgs;
+		this.maxRuns = maxRuns;
+		this.logFile = logFile;
+		this.compiledClasses = new HashMap<String, byte[]>();
+	}
+
+	@Override
+	public boolean requiresClassFiles(){
+		return false;
+	}
+
+	@Override
+	public void setCompiledClasses(Map<String, byte[]> classes){
+		this.compiledClasses = classes;
+	}
+
+	@Override
+	public boolean supportsTestSelection(){
+		return true;
+	}
+
+	/**
+	 * Run the JUnit test cases on the test server.
+	 * @return NOT_COMPILED = failed to compile, TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	public Status runTests() throws Exception{
+		return this.runTests(null, false);
+	}
+
+	/**
+	 * Run some or all of the JUnit test cases on the test server.
+	 * @param tests The tests to run in the format "[class name]#[method name]", or null to run all the tests.
+	 * @param failFast If true, stop at the first failing test.
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	@Override
+	public Status runTests(final List<String> tests, final boolean failFast) throws Exception{
+		if(this.process == null) this.start();
+
+		/* Talk to the server in another thread so that we can give up on a server that hangs. */
+		FutureTask<Status> task = new FutureTask<Status>(new Callable<Status>() {
+			@Override
+			public Status call() throws Exception {
+				return TestServerExecutor.this.request(tests, failFast);
+			}
+		});
+		Thread thread = new Thread(task, "TestServerExecutor");
+		thread.setDaemon(true);
+		thread.start();
+
+		Status status;
+		try{
+			status = task.get(this.timeout + GRACE_PERIOD, TimeUnit.MILLISECONDS);
+		}
+		catch(TimeoutException e){
+			System.out.print(" - Test server timed out");
+			this.stop();
+			this.testsRun = -1;
+			return Status.TIMEOUT;
+		}
+		catch(ExecutionException e){
+			System.out.print(" - Test server crashed (" + e.getCause() + ")");
+			this.stop();
+			this.testsRun = -1;
+			return Status.ERROR;
+		}
+
+		/* Restart the server if the tests timed out (their threads may still be running) or it has run
+		 * too many times. */
+		this.runs++;
+		if(this.testsRun < 0 || this.runs >= this.maxRuns) this.stop();
+
+		return status;
+	}
+
+	/**
+	 * Sends a request to the server and reads the response.
+	 * @return The status of the test run.
+	 * @throws Exception
+	 */
+	private Status request(List<String> tests, boolean failFast) throws Exception{
+
+		/* Send the classes that changed since the last run. */
+		Map<String, byte[]> changed = new HashMap<String, byte[]>();
+		for(Map.Entry<String, byte[]> entry : this.compiledClasses.entrySet()){
+			byte[] bytes = this.serverClasses.get(entry.getKey());
+			if(bytes != entry.getValue() && !Arrays.equals(bytes, entry.getValue())) changed.put(entry.getKey(), entry.getValue());
+		}
+		List<String> removed = new ArrayList<String>();
+		for(String name : this.serverClasses.keySet()){
+			if(!this.compiledClasses.containsKey(name)) removed.add(name);
+		}
+
+		this.out.writeInt(changed.size());
+		for(Map.Entry<String, byte[]> entry : changed.entrySet()){
+			this.out.writeUTF(entry.getKey());
+			this.out.writeInt(entry.getValue().length);
+			this.out.write(entry.getValue());
+		}
+		TestServer.writeStrings(this.out, removed.toArray(new String[removed.size()]));
+
+		if(tests == null) this.out.writeInt(-1);
+		else TestServer.writeStrings(this.out, tests.toArray(new String[tests.size()]));
+		this.out.writeBoolean(failFast);
+		this.out.writeLong(this.timeout);
+		this.out.flush();
+
+		this.serverClasses = new HashMap<String, byte[]>(this.compiledClasses);
+
+		/* Read the results. */
+		Status status = Status.values()[this.in.readInt()];
+		this.testsRun = this.in.readInt();
+		Set<String> failedTests = new HashSet<String>();
+		int failed = this.in.readInt();
+		for(int i = 0; i < failed; i++) failedTests.add(this.in.readUTF());
+		this.failedTests = failedTests;
+
+		return status;
+	}
+
+	/**
+	 * Starts the server and sends it the test settings. The server's class
+	 * path is the class path of this JVM (which includes JUnit and TestServer).
+	 * @throws Exception
+	 */
+	private void start() throws Exception{
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(Arrays.asList(this.jvmArgs));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(TestServer.class.getName());
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        this.logFile.getParentFile().mkdirs();
+        builder.redirectError(ProcessBuilder.Redirect.appendTo(this.logFile));
+        this.process = builder.start();
+        this.in = new DataInputStream(new BufferedInputStream(this.process.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(this.process.getOutputStream()));
+
+        TestServer.writeStrings(this.out, this.testClasses);
+        TestServer.writeStrings(this.out, TestServerExecutor.toStrings(this.testClasspath));
+        TestServer.writeStrings(this.out, TestServerExecutor.toStrings(this.libraryClasspath));
+        this.out.flush();
+
+        this.serverClasses = new HashMap<String, byte[]>();
+        this.runs = 0;
+	}
+
+	/**
+	 * Stops the server. The next run starts a new server.
+	 */
+	public void stop(){
+		if(this.process == null) return;
+		this.process.destroy();
+		this.process = null;
+	}
+
+	/**
+	 * Converts URLs to strings.
+	 */
+	private static String[] toStrings(URL[] urls){
+		String[] strings = new String[urls.length];
+		for(int i = 0; i < urls.length; i++) strings[i] = urls[i].toString();
+		return strings;
+	}
+
+}
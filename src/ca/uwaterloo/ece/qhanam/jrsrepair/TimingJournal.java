@@ -0,0 +1,304 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.MutationContext.MutationType;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+
+/**
+ * Records how long each phase of each attempt took (mutate, scope check,
+ * compile, class deployment and test) in a binary journal file.
+ *
+ * The records have a fixed size and are appended to a memory-mapped
+ * region of the file, so writing a record is a few puts into memory (the
+ * operating system writes the pages to disk). The file is mapped one
+ * region at a time and truncated to the records that were written when
+ * the journal is closed. If the repair is killed, the unwritten part of the
+ * last region is zeros, which the reader treats as the end of the journal.
+ *
+ * The journal is replaced at the start of each repair. Run main() on the
+ * journal to summarize it.
+ *
+ * File format (big-endian):
+ * 	Header:	[magic: int] [version: int] [record size: int] [reserved: int]
+ * 	Record:	[candidate: int] [generation: int] [mutation type: byte] [compile status: byte]
+ * 			[test status: byte] [flags: byte] [faulty id: int] [seed id: int] [scope rejections: int]
+ * 			[mutate: long] [scope check: long] [compile: long] [deploy: long] [test: long]
+ * The statuses are the ordinals of their enums (-1 = did not happen), and the
+ * times are in nanoseconds. Candidates are numbered from 1, so a record with
+ * candidate 0 marks the end of the journal.
+ *
+ * @author qhanam
+ */
+public class TimingJournal {
+
+	private static final int MAGIC = 0x4a52534a;	// "JRSJ"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 64;
+
+	/* The flags. */
+	private static final int DUPLICATE = 1;
+
+	/* The number of bytes that are mapped at a time. */
+	private static final int REGION_SIZE = RECORD_SIZE * 16384;
+
+	private static final String[] PHASES = { "mutate", "scope check", "compile", "deploy", "test" };
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long size;
+
+	/**
+	 * Creates the journal file (replacing the old journal).
+	 * @param file The journal file.
+	 * @throws IOException
+	 */
+	public TimingJournal(File file) throws IOException{
+		if(file.getParentFile() != null) file.getParentFile().mkdirs();
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+
+		this.regionStart = 0;
+		this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+		this.region.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0);
+		this.size = HEADER_SIZE;
+	}
+
+	/**
+	 * Appends a record to the journal. Records from different workers may be
+	 * written concurrently.
+	 * @param record The timings of one attempt.
+	 * @throws IOException
+	 */
+	public synchronized void write(Record record) throws IOException{
+		if(this.region == null) throw new IOException("TimingJournal.write: the journal is closed.");
+
+		/* Map the next region if this one is full. */
+		if(this.region.remaining() < RECORD_SIZE){
+			this.regionStart = this.size;
+			this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.regionStart, REGION_SIZE);
+		}
+
+		this.region.putInt(record.candidate);
+		this.region.putInt(record.generation);
+		this.region.put(TimingJournal.ordinal(record.type));
+		this.region.put(TimingJournal.ordinal(record.compileStatus));
+		this.region.put(TimingJournal.ordinal(record.testStatus));
+		this.region.put((byte) (record.duplicate ? DUPLICATE : 0));
+		this.region.putInt(record.faultyId);
+		this.region.putInt(record.seedId);
+		this.region.putInt(record.scopeRejections);
+		this.region.putLong(record.mutateNanos);
+		this.region.putLong(record.scopeNanos);
+		this.region.putLong(record.compileNanos);
+		this.region.putLong(record.deployNanos);
+		this.region.putLong(record.testNanos);
+		this.size += RECORD_SIZE;
+	}
+
+	/**
+	 * Writes the mapped records to disk and truncates the file to the
+	 * records that were written.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		if(this.region == null) return;
+		this.region.force();
+		this.region = null;
+		this.channel.truncate(this.size);
+		this.file.close();
+	}
+
+	/**
+	 * Returns the ordinal of an enum value as a byte (-1 for null).
+	 */
+	private static byte ordinal(Enum<?> value){
+		return (byte) (value == null ? -1 : value.ordinal());
+	}
+
+	/**
+	 * Reads the records of a journal.
+	 * @param journal The journal file.
+	 * @return The records, in the order they were written.
+	 * @throws Exception Throws an exception if the file is not a timing journal.
+	 */
+	public static List<Record> read(File journal) throws Exception{
+		RandomAccessFile file = new RandomAccessFile(journal, "r");
+		ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		file.close();
+
+		if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) throw new Exception("TimingJournal.read: " + journal + " is not a timing journal.");
+		if(buffer.getInt() != VERSION || buffer.getInt() != RECORD_SIZE) throw new Exception("TimingJournal.read: unsupported journal version.");
+		buffer.getInt();
+
+		List<Record> records = new ArrayList<Record>();
+		while(buffer.remaining() >= RECORD_SIZE){
+			int candidate = buffer.getInt();
+			if(candidate == 0) break;
+			int generation = buffer.getInt();
+			Record record = new Record(candidate, generation, TimingJournal.valueOf(MutationType.values(), buffer.get()));
+			record.compileStatus = TimingJournal.valueOf(JavaJDKCompiler.Status.values(), buffer.get());
+			record.testStatus = TimingJournal.valueOf(AbstractTestExecutor.Status.values(), buffer.get());
+			record.duplicate = (buffer.get() & DUPLICATE) != 0;
+			record.faultyId = buffer.getInt();
+			record.seedId = buffer.getInt();
+			record.scopeRejections = buffer.getInt();
+			record.mutateNanos = buffer.getLong();
+			record.scopeNanos = buffer.getLong();
+			record.compileNanos = buffer.getLong();
+			record.deployNanos = buffer.getLong();
+			record.testNanos = buffer.getLong();
+			records.add(record);
+		}
+		return records;
+	}
+
+	/**
+	 * Returns the enum value with the given ordinal (null for -1).
+	 */
+	private static <T> T valueOf(T[] values, byte ordinal){
+		return ordinal < 0 ? null : values[ordinal];
+	}
+
+	/**
+	 * Returns the time spent in each phase of an attempt (in the order of
+	 * PHASES), in nanoseconds.
+	 * @param record The timings of one attempt.
+	 * @return The durations.
+	 */
+	public static long[] getPhases(Record record){
+		return new long[] { record.mutateNanos, record.scopeNanos, record.compileNanos, record.deployNanos, record.testNanos };
+	}
+
+	/**
+	 * Returns the names of the phases.
+	 * @return
+	 */
+	public static String[] getPhaseNames(){
+		return PHASES.clone();
+	}
+
+	/**
+	 * Summarizes a journal: the number of attempts, the outcomes and the
+	 * percentiles of the time spent in each phase.
+	 * @param args The path of the journal file.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception{
+		if(args.length != 1){
+			System.err.println("Usage: TimingJournal [journal file]");
+			return;
+		}
+
+		List<Record> records = TimingJournal.read(new File(args[0]));
+		int[] compileStatuses = new int[JavaJDKCompiler.Status.values().length];
+		int[] testStatuses = new int[AbstractTestExecutor.Status.values().length];
+		int duplicates = 0;
+		long scopeRejections = 0;
+
+		for(Record record : records){
+			if(record.compileStatus != null) compileStatuses[record.compileStatus.ordinal()]++;
+			if(record.testStatus != null) testStatuses[record.testStatus.ordinal()]++;
+			if(record.duplicate) duplicates++;
+			scopeRejections += record.scopeRejections;
+		}
+
+		System.out.println(records.size() + " attempts, " + duplicates + " duplicate variants, " + scopeRejections + " scope check rejections.");
+		for(JavaJDKCompiler.Status status : JavaJDKCompiler.Status.values())
+			System.out.println("  " + status + ": " + compileStatuses[status.ordinal()]);
+		for(AbstractTestExecutor.Status status : AbstractTestExecutor.Status.values())
+			System.out.println("  Tests " + status + ": " + testStatuses[status.ordinal()]);
+
+		/* The percentiles of each phase, over the attempts that ran the phase (in milliseconds). */
+		System.out.println(String.format("%-12s %8s %10s %10s %10s %10s %12s", "phase", "count", "p50", "p90", "p99", "max", "total"));
+		for(int phase = 0; phase < PHASES.length; phase++){
+			long[] durations = TimingJournal.getDurations(records, phase);
+			long total = 0;
+			for(long duration : durations) total += duration;
+			System.out.println(String.format("%-12s %8d %10.3f %10.3f %10.3f %10.3f %12.3f", PHASES[phase], durations.length,
+					TimingJournal.percentile(durations, 0.5), TimingJournal.percentile(durations, 0.9),
+					TimingJournal.percentile(durations, 0.99), TimingJournal.percentile(durations, 1), total / 1e6));
+		}
+	}
+
+	/**
+	 * Returns the sorted durations of a phase, over the attempts that ran the phase.
+	 * @param records The records of the journal.
+	 * @param phase The index of the phase (in the order of getPhaseNames()).
+	 * @return The durations in nanoseconds.
+	 */
+	public static long[] getDurations(List<Record> records, int phase){
+		long[] durations = new long[records.size()];
+		int count = 0;
+		for(Record record : records){
+			long duration = TimingJournal.getPhases(record)[phase];
+			if(duration > 0) durations[count++] = duration;
+		}
+		durations = Arrays.copyOf(durations, count);
+		Arrays.sort(durations);
+		return durations;
+	}
+
+	/**
+	 * Returns a percentile of the sorted durations (nearest rank), in milliseconds.
+	 * @param sorted The sorted durations in nanoseconds.
+	 * @param p The percentile (between 0 and 1).
+	 * @return
+	 */
+	public static double percentile(long[] sorted, double p){
+		if(sorted.length == 0) return 0;
+		int rank = (int) Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	/**
+	 * The timings and outcome of one attempt (one mutated program).
+	 */
+	public static class Record {
+		public int candidate;
+		public int generation;
+		public MutationType type;
+		public JavaJDKCompiler.Status compileStatus;		// Null if the program was not compiled.
+		public AbstractTestExecutor.Status testStatus;		// Null if the tests were not run.
+		public boolean duplicate;							// The outcome of an earlier attempt was reused.
+		public int faultyId;
+		public int seedId;
+		public int scopeRejections;							// The number of mutations that failed the scope check.
+		public long mutateNanos;
+		public long scopeNanos;
+		public long compileNanos;
+		public long deployNanos;
+		public long testNanos;
+
+		public Record(int candidate, int generation, MutationType type){
+			this.candidate = candidate;
+			this.generation = generation;
+			this.type = type;
+			this.faultyId = -1;
+			this.seedId = -1;
+		}
+
+		/**
+		 * Records the statements of the mutation that was applied.
+		 * @param mutation The mutation that passed the scope check.
+		 */
+		public void setMutation(Mutation mutation){
+			this.faultyId = mutation.getFaulty() == null ? -1 : mutation.getFaulty().id;
+			this.seedId = mutation.getSeed() == null ? -1 : mutation.getSeed().id;
+		}
+	}
+
+}
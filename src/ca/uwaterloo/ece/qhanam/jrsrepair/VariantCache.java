@@ -0,0 +1,126 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+
+/**
+ * Stores the compile and test outcomes of the variants (mutated programs)
+ * that have already been evaluated. Random mutations often produce a
+ * program that has already been evaluated (e.g., the same deletion is
+ * drawn again), so the outcome of the earlier evaluation is reused instead
+ * of compiling and testing the program again.
+ *
+ * Variants are keyed by a fingerprint of the modified source files. The
+ * cache is bounded: when it is full, the least recently used variant is
+ * evicted. The cache is shared by the workers, so it is synchronized.
+ *
+ * @author qhanam
+ */
+public class VariantCache {
+
+	private LinkedHashMap<String, Outcome> outcomes;
+	private int hits;
+
+	/**
+	 * @param capacity The maximum number of variants to store (0 disables the cache).
+	 */
+	public VariantCache(final int capacity){
+		this.hits = 0;
+		this.outcomes = new LinkedHashMap<String, Outcome>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest){
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the outcome of an earlier evaluation of the variant.
+	 * @param fingerprint The fingerprint of the variant (see fingerprint()).
+	 * @return The outcome, or null if the variant has not been evaluated.
+	 */
+	public synchronized Outcome get(String fingerprint){
+		Outcome outcome = this.outcomes.get(fingerprint);
+		if(outcome != null) this.hits++;
+		return outcome;
+	}
+
+	/**
+	 * Stores the outcome of a variant. Variants that pass the tests are not
+	 * stored, since their class files are needed for the patch, and neither
+	 * are variants whose tests did not run properly (e.g., timed out).
+	 * @param fingerprint The fingerprint of the variant (see fingerprint()).
+	 * @param outcome The outcome of the evaluation.
+	 */
+	public synchronized void put(String fingerprint, Outcome outcome){
+		if(outcome.compileStatus == JavaJDKCompiler.Status.COMPILED
+				&& outcome.testStatus != AbstractTestExecutor.Status.FAILED) return;
+		this.outcomes.put(fingerprint, outcome);
+	}
+
+	/**
+	 * Returns the number of times an outcome was reused.
+	 * @return The number of cache hits.
+	 */
+	public synchronized int getHits(){
+		return this.hits;
+	}
+
+	/**
+	 * Computes the fingerprint of a variant: the SHA-1 hash of the source
+	 * files that differ from the original program. The source files that
+	 * are the same as the original are the same for every variant, so they
+	 * are not hashed.
+	 * @param sourceFileContents The source files of the variant.
+	 * @return The fingerprint as a hex string.
+	 * @throws Exception
+	 */
+	public static String fingerprint(Map<String, DocumentASTRewrite> sourceFileContents) throws Exception{
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+		/* Hash the files in a fixed order. */
+		TreeMap<String, String> modified = new TreeMap<String, String>();
+		for(Map.Entry<String, DocumentASTRewrite> entry : sourceFileContents.entrySet()){
+			DocumentASTRewrite drwt = entry.getValue();
+			if(!drwt.isDocumentModified()) continue;
+			String source = drwt.modifiedDocument.get();
+			if(!source.equals(drwt.document.get())) modified.put(entry.getKey(), source);
+		}
+
+		for(Map.Entry<String, String> entry : modified.entrySet()){
+			digest.update(entry.getKey().getBytes("UTF-8"));
+			digest.update((byte) 0);
+			digest.update(entry.getValue().getBytes("UTF-8"));
+			digest.update((byte) 0);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()) hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	/**
+	 * The outcome of evaluating a variant.
+	 */
+	public static class Outcome {
+		public JavaJDKCompiler.Status compileStatus;
+		public String compileMessage;				// The compiler output (for the compile-log).
+		public AbstractTestExecutor.Status testStatus;	// Null if the variant did not compile.
+		public double fitness;						// The fitness of the variant (genetic search only).
+
+		public Outcome(JavaJDKCompiler.Status compileStatus, String compileMessage,
+					   AbstractTestExecutor.Status testStatus, double fitness){
+			this.compileStatus = compileStatus;
+			this.compileMessage = compileMessage;
+			this.testStatus = testStatus;
+			this.fitness = fitness;
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Selects indices at random with probability proportional to their weights.
+ * Indices can be removed (their weight is set to zero) and restored.
+ *
+ * The weights are stored in a Fenwick tree (binary indexed tree), so
+ * selecting, removing and restoring an index take O(log n) time and
+ * selection doesn't allocate. Removed indices are never selected.
+ *
+ * Removing a large weight can cancel most of the available weight (e.g.,
+ * removing 1e20 from 1e20 + 1 leaves 0), so when the running totals go wrong
+ * the tree is rebuilt from the weights that are left (O(n), but rare).
+ *
+ * @author qhanam
+ */
+class WeightedSampler {
+
+	/* The number of draws that may miss (due to rounding errors) before the tree is rebuilt. */
+	private static final int MAX_DRAWS = 16;
+
+	private double[] weights;		// The original weight of each index.
+	private boolean[] removed;
+	private double[] tree;			// The Fenwick tree of the weights of the indices that are not removed (1-based).
+	private double[] initialTree;	// The Fenwick tree when no indices are removed.
+	private int highestStep;		// The largest power of two <= the number of indices (where the descent starts).
+	private double totalWeight;
+	private double availableWeight;	// The total weight of the indices that are not removed.
+	private int weighted;			// The number of indices with a weight > 0.
+	private int available;			// The number of indices with a weight > 0 that are not removed.
+	private int removedCount;
+
+	/**
+	 * @param weights The weight of each index (the array is not copied).
+	 * @param size The number of indices (the first size weights are used).
+	 */
+	public WeightedSampler(double[] weights, int size){
+		this.weights = weights;
+		this.removed = new boolean[size];
+
+		this.tree = new double[size + 1];
+		this.removedCount = 0;
+		this.rebuild();
+		this.initialTree = this.tree.clone();
+		this.highestStep = size == 0 ? 0 : Integer.highestOneBit(size);
+		this.totalWeight = this.availableWeight;
+		this.weighted = this.available;
+	}
+
+	/**
+	 * Selects an index that is not removed and has a weight > 0.
+	 * @param random The random number generator.
+	 * @return The index, or -1 if there is no such index.
+	 */
+	public int sample(Random random){
+		if(this.available == 0) return -1;
+
+		for(int draw = 0; draw < MAX_DRAWS; draw++){
+	        /* Compute a random spot. */
+			double spot = random.nextDouble() * this.availableWeight;
+
+			/* Descend the tree to the first index whose cumulative weight passes that spot. */
+			int position = 0;
+			for(int step = this.highestStep; step > 0; step >>= 1){
+				int next = position + step;
+				if(next < this.tree.length && this.tree[next] <= spot){
+					position = next;
+					spot -= this.tree[next];
+				}
+			}
+
+			/* The tree is 1-based, so position is the selected index. Rounding errors in the
+			 * available weight can (rarely) land past the last available index; draw again. */
+			if(position < this.removed.length && !this.removed[position] && this.weights[position] > 0) return position;
+		}
+
+		/* The tree has drifted too far from the weights: rebuild it and select by scanning the weights. */
+		this.rebuild();
+		double spot = random.nextDouble() * this.availableWeight;
+		int last = -1;
+		for(int i = 0; i < this.removed.length; i++){
+			if(this.removed[i] || !(this.weights[i] > 0)) continue;
+			if(spot < this.weights[i]) return i;
+			spot -= this.weights[i];
+			last = i;
+		}
+		return last;
+	}
+
+	/**
+	 * Sets the weight of an index to zero.
+	 * @param index
+	 */
+	public void remove(int index){
+		if(this.removed[index]) return;
+		this.removed[index] = true;
+		this.removedCount++;
+		double weight = this.weights[index];
+		if(weight > 0){
+			this.update(index, -weight);
+			this.availableWeight -= weight;
+			this.available--;
+
+			/* The remaining weight was lost to cancellation. */
+			if(this.available > 0 && !(this.availableWeight > 0)) this.rebuild();
+		}
+	}
+
+	/**
+	 * Restores the weight of a removed index.
+	 * @param index
+	 */
+	public void restore(int index){
+		if(!this.removed[index]) return;
+		this.removed[index] = false;
+		this.removedCount--;
+
+		/* Start from the original tree when nothing is removed, so rounding errors don't build up. */
+		if(this.removedCount == 0){
+			System.arraycopy(this.initialTree, 0, this.tree, 0, this.tree.length);
+			this.availableWeight = this.totalWeight;
+			this.available = this.weighted;
+			return;
+		}
+
+		double weight = this.weights[index];
+		if(weight > 0){
+			this.update(index, weight);
+			this.availableWeight += weight;
+			this.available++;
+		}
+	}
+
+	/**
+	 * Returns true if the index is removed.
+	 * @param index
+	 * @return
+	 */
+	public boolean isRemoved(int index){
+		return this.removed[index];
+	}
+
+	/**
+	 * Returns the number of indices.
+	 * @return
+	 */
+	public int size(){
+		return this.removed.length;
+	}
+
+	/**
+	 * Builds the tree from the weights of the indices that are not removed,
+	 * in place: each node adds itself to its parent.
+	 */
+	private void rebuild(){
+		int size = this.removed.length;
+		Arrays.fill(this.tree, 0);
+		this.availableWeight = 0;
+		this.available = 0;
+		for(int i = 1; i <= size; i++){
+			if(!this.removed[i - 1]){
+				double weight = this.weights[i - 1];
+				this.availableWeight += weight;
+				if(weight > 0) this.available++;
+				this.tree[i] += weight;
+			}
+			int parent = i + (i & -i);
+			if(parent <= size) this.tree[parent] += this.tree[i];
+		}
+	}
+
+	/**
+	 * Adds a weight to an index in the tree.
+	 */
+	private void update(int index, double delta){
+		for(int i = index + 1; i < this.tree.length; i += i & -i) this.tree[i] += delta;
+	}
+
+}
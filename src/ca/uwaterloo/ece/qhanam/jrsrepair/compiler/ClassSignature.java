@@ -0,0 +1,195 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the part of a class file that other compilation units can depend on:
+ * the class header and the declarations of its non-private, non-synthetic
+ * fields and methods (including constant values, generic signatures and
+ * thrown exceptions). Method bodies are ignored.
+ *
+ * If the signature of a class is unchanged, the classes compiled against
+ * the old version of the class do not need to be recompiled.
+ *
+ * @author qhanam
+ */
+public class ClassSignature {
+
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_SYNTHETIC = 0x1000;
+
+	/**
+	 * Returns the signature of a class file as a string. Two versions of a
+	 * class are API compatible if their signatures are equal.
+	 * @param classFile The bytes of the class file.
+	 * @return The signature.
+	 * @throws IOException Throws an exception if the class file is malformed.
+	 */
+	public static String of(byte[] classFile) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+
+		in.readInt(); // magic
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		/* Store the constant pool entries we need to resolve names and constant values. 
+		 * Indices are resolved because they change whenever a method body changes. */
+		int count = in.readUnsignedShort();
+		ConstantPool pool = new ConstantPool(count);
+		for(int i = 1; i < count; i++){
+			int tag = in.readUnsignedByte();
+			switch(tag){
+			case 1: // Utf8
+				pool.values[i] = in.readUTF();
+				break;
+			case 3: // Integer
+				pool.values[i] = "I" + in.readInt();
+				break;
+			case 4: // Float
+				pool.values[i] = "F" + in.readFloat();
+				break;
+			case 5: // Long (takes two entries)
+				pool.values[i] = "J" + in.readLong();
+				i++;
+				break;
+			case 6: // Double (takes two entries)
+				pool.values[i] = "D" + in.readDouble();
+				i++;
+				break;
+			case 7: // Class
+			case 8: // String
+				pool.references[i] = in.readUnsignedShort();
+				break;
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				in.readUnsignedShort();
+				break;
+			case 15: // MethodHandle
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+				break;
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.readInt();
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+
+		StringBuilder signature = new StringBuilder();
+
+		/* The class header. */
+		signature.append(in.readUnsignedShort()).append(' ');
+		String className = pool.resolve(in.readUnsignedShort());
+		signature.append(className).append(" extends ");
+		signature.append(pool.resolve(in.readUnsignedShort())).append(" implements");
+		int interfaces = in.readUnsignedShort();
+		for(int i = 0; i < interfaces; i++) signature.append(' ').append(pool.resolve(in.readUnsignedShort()));
+		signature.append('\n');
+
+		/* The fields and methods. Their order in the class file doesn't matter. */
+		List<String> members = new ArrayList<String>();
+		readMembers(in, pool, className, members, "field ");
+		readMembers(in, pool, className, members, "method ");
+		Collections.sort(members);
+		for(String member : members) signature.append(member).append('\n');
+
+		/* The class attributes that affect how other classes compile against this one. */
+		signature.append(readAttributes(in, pool, className));
+
+		return signature.toString();
+	}
+
+	/**
+	 * Reads the field_info or method_info table and adds the visible members
+	 * to the list.
+	 */
+	private static void readMembers(DataInputStream in, ConstantPool pool, String className, List<String> members, String kind) throws IOException {
+		int count = in.readUnsignedShort();
+		for(int i = 0; i < count; i++){
+			int access = in.readUnsignedShort();
+			String name = pool.resolve(in.readUnsignedShort());
+			String descriptor = pool.resolve(in.readUnsignedShort());
+			String attributes = readAttributes(in, pool, className);
+
+			if((access & (ACC_PRIVATE | ACC_SYNTHETIC)) != 0) continue;
+			members.add(kind + access + " " + name + " " + descriptor + attributes);
+		}
+	}
+
+	/**
+	 * Reads an attribute table. Returns the attributes that are part of the
+	 * signature (constant values, generic signatures, exceptions and member
+	 * classes) and skips the others (e.g., Code).
+	 */
+	private static String readAttributes(DataInputStream in, ConstantPool pool, String className) throws IOException {
+		StringBuilder attributes = new StringBuilder();
+		int count = in.readUnsignedShort();
+		for(int i = 0; i < count; i++){
+			String name = pool.resolve(in.readUnsignedShort());
+			int length = in.readInt();
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			DataInputStream info = new DataInputStream(new ByteArrayInputStream(bytes));
+
+			if(name.equals("ConstantValue") || name.equals("Signature")){
+				attributes.append(' ').append(name).append('=').append(pool.resolve(info.readUnsignedShort()));
+			}
+			else if(name.equals("Exceptions")){
+				attributes.append(" throws");
+				int exceptions = info.readUnsignedShort();
+				for(int j = 0; j < exceptions; j++) attributes.append(' ').append(pool.resolve(info.readUnsignedShort()));
+			}
+			else if(name.equals("InnerClasses")){
+				/* Only the member classes of this class. The table also lists nested classes
+				 * that are just used by the method bodies, and local and anonymous classes. */
+				int classes = info.readUnsignedShort();
+				for(int j = 0; j < classes; j++){
+					String inner = pool.resolve(info.readUnsignedShort());
+					String outer = pool.resolve(info.readUnsignedShort());
+					info.readUnsignedShort(); // simple name
+					int access = info.readUnsignedShort();
+					if(outer.equals(className)) attributes.append(" member=").append(access).append(' ').append(inner);
+				}
+			}
+		}
+		return attributes.toString();
+	}
+
+	/**
+	 * The constant pool entries needed to build the signature. Class and
+	 * String entries refer to a Utf8 entry.
+	 */
+	private static class ConstantPool {
+		
+		String[] values;
+		int[] references;
+		
+		ConstantPool(int count){
+			this.values = new String[count];
+			this.references = new int[count];
+		}
+
+		/**
+		 * Resolves a constant pool index to a string, following Class and
+		 * String entries to their Utf8 entry.
+		 */
+		String resolve(int index){
+			if(index == 0) return "";
+			if(this.references[index] != 0) return this.values[this.references[index]];
+			return this.values[index];
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.compiler;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+
+/**
+ * A throwaway class loader for running tests against a candidate program.
+ *
+ * Classes in the compiled class map are always defined by this loader (even
+ * if the parent or the URLs contain an older version), so the tests see the
+ * candidate's classes. All other classes (e.g., the test classes) are loaded
+ * from the URLs, and the parent is used for libraries such as JUnit.
+ *
+ * @author qhanam
+ */
+public class CompiledClassLoader extends URLClassLoader {
+
+	private Map<String, byte[]> classes;
+
+	/**
+	 * @param classes The compiled classes, keyed by binary class name.
+	 * @param urls The class path for the test classes and their dependencies.
+	 * @param parent The parent class loader.
+	 */
+	public CompiledClassLoader(Map<String, byte[]> classes, URL[] urls, ClassLoader parent){
+		super(urls, parent);
+		this.classes = classes;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized (this.getClassLoadingLock(name)) {
+			Class<?> c = this.findLoadedClass(name);
+
+			/* Define the candidate's classes before asking the parent. */
+			if(c == null){
+				byte[] bytes = this.classes.get(name);
+				if(bytes != null) c = this.defineClass(name, bytes, 0, bytes.length);
+			}
+
+			if(c == null) return super.loadClass(name, resolve);
+
+			if(resolve) this.resolveClass(c);
+			return c;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * A long-lived compiler for one class path.
+ *
+ * The JavaCompiler and the StandardJavaFileManager are created once and
+ * reused by every compile, so the class path jars are opened and indexed
+ * once instead of once per candidate. The javac API does not allow symbol
+ * tables to be shared between compilation tasks, so those are still built
+ * for each compile (from the already opened archives).
+ *
+ * @author qhanam
+ */
+public class CompilerService {
+	private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	private final StandardJavaFileManager fileManager;
+	private final List<String> options;
+
+	/**
+	 * @param classpath The class path that source files are compiled against.
+	 * @throws IOException Throws an exception if the class path can't be set.
+	 */
+	public CompilerService(String[] classpath) throws IOException {
+		this.fileManager = this.compiler.getStandardFileManager(null, null, null);
+
+		/* Set the class path once on the file manager instead of passing -classpath to each task. */
+		List<File> files = new ArrayList<File>();
+		for(String entry : classpath){
+			if(!entry.isEmpty()) files.add(new File(entry));
+		}
+		this.fileManager.setLocation(StandardLocation.CLASS_PATH, files);
+
+		this.options = new ArrayList<String>();
+		this.options.add("-nowarn");
+	}
+
+	/**
+	 * Compiles the source files in memory.
+	 * @param map The source file contents, keyed by path relative to the source directory (without .java).
+	 * @param output Receives the compiler messages.
+	 * @return The file manager holding the compiled classes.
+	 */
+	public synchronized MemoryFileManager compile(Map<String, String> map, Writer output){
+        List<Source> list = new ArrayList<Source>();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            list.add(new Source(entry.getKey(), Kind.SOURCE, entry.getValue()));
+        }
+
+        /* A new MemoryFileManager collects the output of each compile, but the
+         * file manager it forwards to (which reads the class path) is shared. */
+        MemoryFileManager manager = new MemoryFileManager(this.fileManager);
+        this.compiler.getTask(output, manager, null, this.options, null, list).call();
+        return manager;
+	}
+
+	/**
+	 * Closes the file manager (and the class path archives it has opened).
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		this.fileManager.close();
+	}
+
+}
@@ -4,10 +4,14 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.StringWriter;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
 
 import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
 import ca.uwaterloo.ece.qhanam.jrsrepair.Utilities;
@@ -16,28 +20,62 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.Utilities;
  * From https://weblogs.java.net/blog/malenkov/archive/2008/12/how_to_compile.html
  */
 public class JavaJDKCompiler {
-	private MemoryClassLoader mcl;
+	private Map<String, byte[]> compiledClasses;
+	private Map<String, byte[]> storedClasses;
 	private Map<String, DocumentASTRewrite> sourceFileContents;
+	private Map<String, String> relativePaths;
 	private String[] sourcePaths;
 	private String classDirectory;
 	private String[] classpath;
 	private Queue<String> errors;
 	private String[] copyIncludes;
 	private String[] copyExcludes;
+	private boolean storeClassFiles;
+	private CompilerService service;
+	
+	/* Incremental compilation. The original program is compiled once (the
+	 * baseline) and afterwards only the modified source files are compiled,
+	 * against the baseline class files. */
+	private boolean incremental;
+	private Map<String, byte[]> baselineClasses;
+	private Map<String, String> baselineSignatures;
+	private Map<String, List<String>> baselineUnitClasses;
+	private File baselineDirectory;
+	private Set<String> modifiedSourceFiles;
+	private CompilerService incrementalService;
 	
 	public JavaJDKCompiler(String classDirectory, String[] classpath, 
 						   Map<String, DocumentASTRewrite> sourceFileContents, 
 						   String[] sourcePaths, String[] copyIncludes,
-						   String[] copyExcludes
+						   String[] copyExcludes, boolean incremental,
+						   String baselineDirectory
 						){
 		this.classDirectory = classDirectory;
 		this.classpath = classpath;
-		this.mcl = null;
+		this.compiledClasses = new HashMap<String, byte[]>();
+		this.storedClasses = new HashMap<String, byte[]>();
 		this.errors = new LinkedList<String>();
 		this.sourceFileContents = sourceFileContents;
+		this.relativePaths = new HashMap<String, String>();
 		this.sourcePaths = sourcePaths;
 		this.copyIncludes = copyIncludes;
 		this.copyExcludes = copyExcludes;
+		this.storeClassFiles = true;
+		this.service = null;
+		this.incremental = incremental;
+		this.baselineClasses = null;
+		this.baselineDirectory = new File(baselineDirectory);
+		this.modifiedSourceFiles = new HashSet<String>();
+		this.incrementalService = null;
+	}
+	
+	/**
+	 * Sets whether compile() writes the class files to the class directory. Test
+	 * executors that run the tests straight from memory don't need them on disk.
+	 * @param storeClassFiles False to keep the class files in memory only.
+	 */
+	public void setStoreClassFiles(boolean storeClassFiles){
+		this.storeClassFiles = storeClassFiles;
 	}
 	
 	/**
@@ -51,6 +89,27 @@ public class JavaJDKCompiler {
 	 * @throws Exception
 	 */
 	public Status compile() throws Exception{
+		
+		/* Compile the original program the first time we compile incrementally. */
+		if(this.incremental && this.baselineClasses == null) this.buildBaseline();
+		
+		if(this.incremental){
+			Status status = this.compileIncremental();
+			
+			/* A null status means the signature of a class changed, so the
+			 * classes that depend on it need to be compiled again. */
+			if(status != null) return status;
+		}
+		
+		return this.compileAll();
+	}
+	
+	/**
+	 * Compiles all the source files.
+	 * @return JRSRepair.TestStatus (NOT_COMPILED or COMPILED)
+	 * @throws Exception
+	 */
+	private Status compileAll() throws Exception{
 		StringWriter output = new StringWriter();
 		
 		/* Build the map of source files that the compiler will read from. The
@@ -58,7 +117,7 @@ public class JavaJDKCompiler {
 		Map<String, String> sourceMap = this.buildSourceMap();
 		
 		/* Compile the Java file. */
-	    this.mcl = new MemoryClassLoader(sourceMap, this.classpath, output);
+	    MemoryClassLoader mcl = new MemoryClassLoader(sourceMap, this.getService(), output);
 
 	    /* Check the compilation went ok. */
 	    if(output.toString().matches("(?s).*\\d+ errors?.*")){
@@ -66,9 +125,152 @@ public class JavaJDKCompiler {
 	    	return Status.NOT_COMPILED;
 	    }
 	    
-	    /* Write the class files to disk. */
+	    this.compiledClasses = mcl.getAllClassBytes();
+	    return this.compiled();
+	}
+	
+	/**
+	 * Compiles only the source files that are different from the original
+	 * program. The classes of the other source files are taken from the
+	 * baseline.
+	 * @return JRSRepair.TestStatus (NOT_COMPILED or COMPILED), or null if the
+	 * 		   signature of a class has changed and all the source files need
+	 * 		   to be compiled.
+	 * @throws Exception
+	 */
+	private Status compileIncremental() throws Exception{
+		StringWriter output = new StringWriter();
+		
+		/* Update the set of modified source files. Only the documents that have been
+		 * mutated (or un-mutated) since the last compile need to be checked. */
+		Map<String, String> sourceMap = new HashMap<String, String>();
+		for(String sourcePath : this.sourceFileContents.keySet()){
+			DocumentASTRewrite drwt = this.sourceFileContents.get(sourcePath);
+			if(drwt.isDocumentTainted()){
+				if(drwt.modifiedDocument.get().equals(drwt.document.get())) this.modifiedSourceFiles.remove(sourcePath);
+				else this.modifiedSourceFiles.add(sourcePath);
+				drwt.untaintDocument();
+			}
+		}
+		for(String sourcePath : this.modifiedSourceFiles){
+			sourceMap.put(this.getRelativePath(sourcePath), this.sourceFileContents.get(sourcePath).modifiedDocument.get());
+		}
+		
+		/* Start with the original program and replace the classes of the modified source files. */
+		Map<String, byte[]> classes = new HashMap<String, byte[]>(this.baselineClasses);
+		for(String relativePath : sourceMap.keySet()){
+			List<String> unitClasses = this.baselineUnitClasses.get(relativePath);
+			if(unitClasses != null) classes.keySet().removeAll(unitClasses);
+		}
+
+		if(!sourceMap.isEmpty()){
+            /* Compile the modified files against the original program. */
+            if(this.incrementalService == null){
+                String[] classpath = new String[this.classpath.length + 1];
+                classpath[0] = this.baselineDirectory.getPath();
+                System.arraycopy(this.classpath, 0, classpath, 1, this.classpath.length);
+                this.incrementalService = new CompilerService(classpath);
+            }
+            MemoryClassLoader mcl = new MemoryClassLoader(sourceMap, this.incrementalService, output);
+
+            /* Check the compilation went ok. */
+            if(output.toString().matches("(?s).*\\d+ errors?.*")){
+                this.errors.add(output.toString());
+                return Status.NOT_COMPILED;
+            }
+            
+            /* Other source files were compiled against the baseline, so the new classes must
+             * have the same signatures. New classes must be local or anonymous classes. */
+            Map<String, byte[]> newClasses = mcl.getAllClassBytes();
+            for(String className : newClasses.keySet()){
+            	String signature = this.baselineSignatures.get(className);
+            	if(signature == null && !JavaJDKCompiler.isLocalClass(className)) return null;
+            	if(signature != null && !signature.equals(ClassSignature.of(newClasses.get(className)))) return null;
+            }
+            classes.putAll(newClasses);
+		}
+		
+		this.compiledClasses = classes;
+		return this.compiled();
+	}
+	
+	/**
+	 * Compiles the original program (the baseline) and writes its class files to 
+	 * the baseline directory, which is on the class path for incremental compiles.
+	 * If the original program does not compile, incremental compilation is turned
+	 * off.
+	 * @throws Exception
+	 */
+	private void buildBaseline() throws Exception{
+		StringWriter output = new StringWriter();
+
+		Map<String, String> sourceMap = new HashMap<String, String>();
+		for(String sourcePath : this.sourceFileContents.keySet()){
+			sourceMap.put(this.getRelativePath(sourcePath), this.sourceFileContents.get(sourcePath).document.get());
+		}
+
+	    MemoryClassLoader mcl = new MemoryClassLoader(sourceMap, this.getService(), output);
+	    if(output.toString().matches("(?s).*\\d+ errors?.*")){
+	    	System.out.println("The original program does not compile. Incremental compilation is turned off.");
+	    	this.incremental = false;
+	    	return;
+	    }
+	    
+	    /* Store the classes, their signatures and which source file they came from. */
+	    this.baselineClasses = mcl.getAllClassBytes();
+	    this.baselineSignatures = new HashMap<String, String>();
+	    this.baselineUnitClasses = new HashMap<String, List<String>>();
+	    Map<String, String> classSources = mcl.getClassSources();
+	    for(String className : this.baselineClasses.keySet()){
+	    	this.baselineSignatures.put(className, ClassSignature.of(this.baselineClasses.get(className)));
+
+	    	/* The source name is the path of the Source object: /[package]/[class].java */
+	    	String source = classSources.get(className);
+	    	if(source == null) continue;
+	    	String relativePath = source.substring(1, source.length() - 5);
+	    	if(!this.baselineUnitClasses.containsKey(relativePath)) this.baselineUnitClasses.put(relativePath, new LinkedList<String>());
+	    	this.baselineUnitClasses.get(relativePath).add(className);
+	    }
+	    
+	    FileUtils.deleteQuietly(this.baselineDirectory);
+	    JavaJDKCompiler.storeClasses(this.baselineDirectory.getPath(), this.baselineClasses);
+	    
+	    /* All documents are compared to the original program from now on. */
+		for(String sourcePath : this.sourceFileContents.keySet()){
+			this.sourceFileContents.get(sourcePath).taintDocument();
+		}
+	}
+	
+	/**
+	 * Returns the compiler service for the class path. It is created by the
+	 * first compile and reused afterwards.
+	 * @return
+	 * @throws Exception
+	 */
+	private CompilerService getService() throws Exception{
+		if(this.service == null) this.service = new CompilerService(this.classpath);
+		return this.service;
+	}
+	
+	/**
+	 * Finishes a successful compile by writing the class files that changed
+	 * to the class directory and copying the data files.
+	 * @return JRSRepair.TestStatus.COMPILED
+	 * @throws Exception
+	 */
+	private Status compiled() throws Exception{
 	    this.errors.add("Compiled");
-	    this.storeCompiled(this.classDirectory);
+	    if(!this.storeClassFiles) return Status.COMPILED;
+
+	    /* Write the class files to disk. Class files that haven't changed since the last
+	     * compile are skipped. */
+	    Map<String, byte[]> changedClasses = new HashMap<String, byte[]>();
+	    for(String className : this.compiledClasses.keySet()){
+	    	byte[] bytes = this.compiledClasses.get(className);
+	    	if(this.storedClasses.get(className) != bytes) changedClasses.put(className, bytes);
+	    }
+	    JavaJDKCompiler.storeClasses(this.classDirectory, changedClasses);
+	    this.storedClasses = this.compiledClasses;
 	    
 	    /* Copy data files to be packaged with class files. If copyIncludes is
 	     * empty, don't copy anything. */
@@ -88,21 +290,46 @@ public class JavaJDKCompiler {
 	 * @param directory Base directory for .class files.
 	 */
 	public void storeCompiled(String directory){
-	    /* Write the class files to disk. */
-	    List<Output> classFiles = mcl.getAllClasses();
-	    
+		JavaJDKCompiler.storeClasses(directory, this.compiledClasses);
+	}
+	
+	/**
+	 * Writes class files to the given directory.
+	 * @param directory Base directory for .class files.
+	 * @param classes The bytes of each class, keyed by binary class name.
+	 */
+	public static void storeClasses(String directory, Map<String, byte[]> classes){
 	    /* Write the class to disk. */
 	    try{
-            for(Output classFile : classFiles){
-                File f = new File(directory, classFile.getName());
+            for(String className : classes.keySet()){
+                File f = new File(directory, className.replace('.', '/') + ".class");
                 f.getParentFile().mkdirs();
-                Utilities.writeToFile(new File(directory, classFile.getName()), classFile.toByteArray());
+                Utilities.writeToFile(f, classes.get(className));
             }
 	    }catch (Exception e){
 	    	System.out.println(e.getMessage());
 	    }
 	}
 	
+	/**
+	 * Checks if a class is a local or anonymous class. These classes
+	 * can't be used outside of the source file they are declared in.
+	 * @param className The binary class name.
+	 * @return True if the class name has a $[number] suffix.
+	 */
+	private static boolean isLocalClass(String className){
+		int index = className.lastIndexOf('$');
+		return index >= 0 && index + 1 < className.length() && Character.isDigit(className.charAt(index + 1));
+	}
+	
+	/**
+	 * Returns the class files from the last compile.
+	 * @return The bytes of each class, keyed by binary class name.
+	 */
+	public Map<String, byte[]> getCompiledClasses(){
+		return this.compiledClasses;
+	}
+	
 	/**
 	 * Returns the error message at the head of the queue.
 	 * 
@@ -138,6 +365,22 @@ public class JavaJDKCompiler {
 	 * @throws Exception
 	 */
 	private String getRelativePath(String sourceFile) throws Exception{
+		String relativePath = this.relativePaths.get(sourceFile);
+		if(relativePath == null){
+			relativePath = this.findRelativePath(sourceFile);
+			this.relativePaths.put(sourceFile, relativePath);
+		}
+		return relativePath;
+	}
+
+	/**
+	 * Finds the relative path of the source (.java) file by checking each of
+	 * its source directories.
+	 * @param sourceFile
+	 * @return Relative path to .java file (i.e. [package]/[class])
+	 * @throws Exception
+	 */
+	private String findRelativePath(String sourceFile) throws Exception{
 		for(String path : this.sourcePaths){
 			File directory = new File(path);
 			File file = new File(sourceFile);
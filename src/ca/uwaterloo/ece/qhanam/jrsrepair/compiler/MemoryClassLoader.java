@@ -1,42 +1,35 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair.compiler;
 
+import java.io.IOException;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject.Kind;
-import javax.tools.ToolProvider;
-
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * From https://weblogs.java.net/blog/malenkov/archive/2008/12/how_to_compile.html
  */
 public class MemoryClassLoader extends ClassLoader {
-    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-    private final MemoryFileManager manager = new MemoryFileManager(this.compiler);
+    private final MemoryFileManager manager;
 
-    public MemoryClassLoader(String classname, String filecontent, String[] classpath, Writer output) {
+    public MemoryClassLoader(String classname, String filecontent, String[] classpath, Writer output) throws IOException {
         this(Collections.singletonMap(classname, filecontent), classpath, output);
     }
 
-    public MemoryClassLoader(Map<String, String> map, String[] classpath, Writer output) {
-        List<Source> list = new ArrayList<Source>();
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            list.add(new Source(entry.getKey(), Kind.SOURCE, entry.getValue()));
-        }
-        
-        List<String> optionList = new ArrayList<String>();
-
-        optionList.add("-classpath");
-        optionList.add(StringUtils.join(classpath, ":"));
-        optionList.add("-nowarn");
-
-        this.compiler.getTask(output, this.manager, null, optionList, null, list).call();
+    public MemoryClassLoader(Map<String, String> map, String[] classpath, Writer output) throws IOException {
+        this(map, new CompilerService(classpath), output);
+    }
+    
+    /**
+     * Introduced for JRSRepair. Compiles with a long-lived compiler service.
+     * @param map
+     * @param service
+     * @param output
+     */
+    public MemoryClassLoader(Map<String, String> map, CompilerService service, Writer output) {
+        this.manager = service.compile(map, output);
     }
     
     /**
@@ -53,6 +46,30 @@ public class MemoryClassLoader extends ClassLoader {
     	return classFiles;
     }
     
+    /**
+     * Introduced for JRSRepair. Returns the bytes of all compiled classes, keyed
+     * by binary class name.
+     * @return
+     */
+    public Map<String, byte[]> getAllClassBytes(){
+    	Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+    	for(String name : this.manager.map.keySet()){
+    		classes.put(name, this.manager.map.get(name).toByteArray());
+    	}
+    	
+    	return classes;
+    }
+    
+    /**
+     * Introduced for JRSRepair. Returns the name of the source file that each
+     * class was compiled from, keyed by binary class name.
+     * @return
+     */
+    public Map<String, String> getClassSources(){
+    	return this.manager.sources;
+    }
+    
     /**
      * Introduced for JRSRepair
      * @param name
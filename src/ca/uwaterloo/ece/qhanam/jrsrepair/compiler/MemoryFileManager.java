@@ -14,15 +14,26 @@ import javax.tools.JavaFileObject.Kind;
  */
 public class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
    public final Map<String, Output> map = new HashMap<String, Output>();
+   public final Map<String, String> sources = new HashMap<String, String>(); // Introduced for JRSRepair. Class name -> source file name.
 
     MemoryFileManager(JavaCompiler compiler) {
         super(compiler.getStandardFileManager(null, null, null));
     }
 
+    /**
+     * Introduced for JRSRepair. Forwards to a file manager that is shared by
+     * many compiles (see CompilerService).
+     * @param fileManager
+     */
+    MemoryFileManager(JavaFileManager fileManager) {
+        super(fileManager);
+    }
+
     @Override
     public Output getJavaFileForOutput (Location location, String name, Kind kind, FileObject source) {
         Output mc = new Output(name, kind);
         this.map.put(name, mc);
+        if(source != null) this.sources.put(name, source.getName());
         return mc;
     }
 }
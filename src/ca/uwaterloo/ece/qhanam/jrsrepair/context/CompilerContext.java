@@ -1,5 +1,7 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair.context;
 
+import java.util.Map;
+
 import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
 
 /**
@@ -39,6 +41,22 @@ public class CompilerContext {
 		this.compiler.storeCompiled(directory);
 	}
 
+	/**
+	 * Returns the class files from the last compile.
+	 * @return The bytes of each class, keyed by binary class name.
+	 */
+	public Map<String, byte[]> getCompiledClasses(){
+		return this.compiler.getCompiledClasses();
+	}
+	
+	/**
+	 * Sets whether compile() writes the class files to the class directory.
+	 * @param storeClassFiles False to keep the class files in memory only.
+	 */
+	public void setStoreClassFiles(boolean storeClassFiles){
+		this.compiler.setStoreClassFiles(storeClassFiles);
+	}
+
 	/**
 	 * Returns the error message at the head of the queue.
 	 * 
@@ -1,6 +1,7 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair.context;
 
 import java.io.File;
+import java.net.URL;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,9 +19,14 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor;
 import ca.uwaterloo.ece.qhanam.jrsrepair.AntTestExecutor;
 import ca.uwaterloo.ece.qhanam.jrsrepair.BashTestExecutor;
 import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
+import ca.uwaterloo.ece.qhanam.jrsrepair.JUnitTestExecutor;
 import ca.uwaterloo.ece.qhanam.jrsrepair.LineCoverage;
+import ca.uwaterloo.ece.qhanam.jrsrepair.MutationFailures;
 import ca.uwaterloo.ece.qhanam.jrsrepair.Statements;
+import ca.uwaterloo.ece.qhanam.jrsrepair.TestCoverage;
+import ca.uwaterloo.ece.qhanam.jrsrepair.TestServerExecutor;
 import ca.uwaterloo.ece.qhanam.jrsrepair.Utilities;
+import ca.uwaterloo.ece.qhanam.jrsrepair.VariantCache;
 import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
 
 /**
@@ -34,6 +40,63 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
  */
 public class ContextFactory {
 	
+	/**
+	 * The token that is replaced with the worker number in property values
+	 * when more than one worker is used.
+	 */
+	public static final String WORKER_TOKEN = "${worker}";
+	
+	/**
+	 * Builds one context per worker for the repair task. Each worker gets its
+	 * own copy of the mutable state (ASTs, documents, compiler output and test
+	 * directory), so candidates can be evaluated concurrently.
+	 * 
+	 * Property values may contain the ${worker} token, which is replaced with
+	 * the worker number (starting at 0). When there is more than one worker,
+	 * the class and test directories must contain the token so that the workers
+	 * do not overwrite each other's class files.
+	 * 
+	 * @param properties The Properties given as input by the user.
+	 * @return The contexts for the repair task. The first context is used for
+	 * 		   the shared output (logs and patches).
+	 * @throws Exception Throws an exception when a property is missing
+	 * 					 or not formatted properly.
+	 */
+	public static Context[] buildContexts(Properties properties) throws Exception {
+
+		/* Get the number of workers. Default = 1 */
+		int workers = 1;
+		if(properties.containsKey("workers")) workers = Integer.parseInt(properties.getProperty("workers"));
+		if(workers < 1) throw new Exception("Parameter 'workers' must be at least 1");
+		
+		/* Workers can't share the directories that class files are written to or tests are run from. */
+		String testScript = properties.getProperty("test_script");
+		if(workers > 1 && !"JUNIT".equals(testScript) && !"TEST_SERVER".equals(testScript)){
+            for(String key : new String[] {"class_directory", "ant_base_dir", "bash_script_base_dir"}){
+                if(properties.containsKey(key) && !properties.getProperty(key).trim().isEmpty() && !properties.getProperty(key).contains(WORKER_TOKEN))
+                    throw new Exception("Parameter '" + key + "' must contain " + WORKER_TOKEN + " when workers > 1");
+            }
+            
+            /* Each worker deploys its classes to every destination directory, so each one needs the token. */
+            if(properties.containsKey("class_destination_directories")){
+            	for(String directory : unpackArray(properties.getProperty("class_destination_directories"))){
+            		if(!directory.trim().isEmpty() && !directory.contains(WORKER_TOKEN))
+            			throw new Exception("Parameter 'class_destination_directories' must contain " + WORKER_TOKEN + " in each directory when workers > 1 (" + directory + ")");
+            	}
+            }
+		}
+		
+		/* The workers share the outcomes of the variants they evaluate and the mutations that fail. */
+		VariantCache variantCache = ContextFactory.buildVariantCache(properties);
+		MutationFailures mutationFailures = new MutationFailures();
+		
+		Context[] contexts = new Context[workers];
+		for(int i = 0; i < workers; i++){
+			contexts[i] = ContextFactory.buildContext(ContextFactory.getWorkerProperties(properties, i), variantCache, mutationFailures, i);
+		}
+		return contexts;
+	}
+	
 	/**
 	 * Builds the context classes for the repair task. The context classes
 	 * are stored in the main context class Context.
@@ -44,6 +107,21 @@ public class ContextFactory {
 	 * 					 or not formatted properly.
 	 */
 	public static Context buildContext(Properties properties) throws Exception {
+		return ContextFactory.buildContext(properties, ContextFactory.buildVariantCache(properties), new MutationFailures(), 0);
+	}
+	
+	/**
+	 * Builds the context classes for the repair task.
+	 * 
+	 * @param properties The Properties given as input by the user.
+	 * @param variantCache The outcomes of the evaluated variants (may be shared by several contexts).
+	 * @param mutationFailures The mutations that are known to fail (may be shared by several contexts).
+	 * @param worker The worker number.
+	 * @return The context for the repair task.
+	 * @throws Exception Throws an exception when a property is missing
+	 * 					 or not formatted properly.
+	 */
+	private static Context buildContext(Properties properties, VariantCache variantCache, MutationFailures mutationFailures, int worker) throws Exception {
 
         /* ***
          * Set Up Common Structures from Properties
@@ -79,7 +157,7 @@ public class ContextFactory {
          * Set Up Repair Context
          */
 		
-		RepairContext repair = ContextFactory.buildRepairContext(properties);
+		RepairContext repair = ContextFactory.buildRepairContext(properties, variantCache, mutationFailures);
 
         /* ***
          * Set Up Parser Context
@@ -91,19 +169,25 @@ public class ContextFactory {
          * Set Up Mutation Context
          */
 
-        MutationContext mutation = ContextFactory.buildMutationContext(faultyStatements, seedStatements, sourceFileContents, random);
+        MutationContext mutation = ContextFactory.buildMutationContext(faultyStatements, seedStatements, sourceFileContents, random, mutationFailures);
 		
 		/* ***
 		 * Set Up Compiler Context
 		 */
 		
-		CompilerContext compiler = ContextFactory.buildCompilerContext(properties, classpaths, sourcepaths, sourceFileContents);
+		CompilerContext compiler = ContextFactory.buildCompilerContext(properties, classpaths, sourcepaths, sourceFileContents, worker);
 
 		/* ***
 		 * Set Up Test Context
 		 */
 		
 		TestContext test = ContextFactory.buildTestContext(properties);
+		
+		/* Don't write class files to disk if the tests run straight from memory. */
+		if(!test.requiresClassFiles()) compiler.setStoreClassFiles(false);
+		
+		/* The test stage tests a candidate while the class directory is used by the next candidate. */
+		if(repair.pipeline && test.requiresClassFiles()) throw new Exception("Parameter 'pipeline' requires test_script JUNIT or TEST_SERVER");
 
         /* ***
          * Return the context.
@@ -119,7 +203,7 @@ public class ContextFactory {
 	 * @throws Exception Throws an exception if properties are missing or not
 	 * 					 formatted properly.
 	 */
-	private static RepairContext buildRepairContext(Properties properties)
+	private static RepairContext buildRepairContext(Properties properties, VariantCache variantCache, MutationFailures mutationFailures)
 													throws Exception {
 		
         /* Get the settings for mutant generation. */
@@ -149,8 +233,88 @@ public class ContextFactory {
     	boolean nullMutationOnly = false;
     	if(properties.containsKey("null_mutation_only")) nullMutationOnly = Boolean.parseBoolean(properties.getProperty("null_mutation_only"));
         
+    	/* workers is optional (defaults to 1). The number of candidates that are evaluated concurrently. */
+    	int workers = 1;
+    	if(properties.containsKey("workers")) workers = Integer.parseInt(properties.getProperty("workers"));
+
+    	/* Each candidate derives its random number generators from this seed. */
+        long randomSeed = 1;
+        if(properties.containsKey("random_seed")) randomSeed = Integer.parseInt(properties.getProperty("random_seed"));
+        
+    	/* searchStrategy is optional (defaults to RANDOM). */
+    	RepairContext.SearchStrategy searchStrategy = RepairContext.SearchStrategy.RANDOM;
+    	if(properties.containsKey("search_strategy")) searchStrategy = RepairContext.SearchStrategy.valueOf(properties.getProperty("search_strategy").trim());
+    	
+    	GeneticContext genetic = ContextFactory.buildGeneticContext(properties);
+    	
+    	/* pipeline is optional (defaults to false). If true, the tests run in their own stage. */
+    	boolean pipeline = false;
+    	if(properties.containsKey("pipeline")) pipeline = Boolean.parseBoolean(properties.getProperty("pipeline").trim());
+    	
+    	/* timeoutMultiplier is optional (defaults to 0 = the executor's fixed time out). If it is given, the 
+    	 * test time out is this multiple of the test run time of the faulty program. */
+    	double timeoutMultiplier = 0;
+    	if(properties.containsKey("test_timeout_multiplier")) timeoutMultiplier = Double.parseDouble(properties.getProperty("test_timeout_multiplier").trim());
+    	if(timeoutMultiplier < 0) throw new Exception("Parameter 'test_timeout_multiplier' must be at least 0");
+    	
+    	/* minimumTimeout is optional (defaults to 1000 ms). The lower bound for the calibrated time out. */
+    	long minimumTimeout = 1000;
+    	if(properties.containsKey("test_timeout_min")) minimumTimeout = Long.parseLong(properties.getProperty("test_timeout_min").trim());
+    	
+    	/* timingJournal is optional. If it is given, the timings of each attempt are recorded in it. */
+    	File timingJournal = null;
+    	if(properties.containsKey("timing_journal") && !properties.getProperty("timing_journal").trim().isEmpty())
+    		timingJournal = new File(properties.getProperty("timing_journal").trim());
+        
         /* Build a RepairContext object. */
-        return new RepairContext(mutationCandidates, mutationGenerations, mutationAttempts, buildDirectory, revertFailedCompile, classDirectories, nullMutationOnly);
+        return new RepairContext(mutationCandidates, mutationGenerations, mutationAttempts, buildDirectory, revertFailedCompile, classDirectories, nullMutationOnly, workers, randomSeed, searchStrategy, genetic, variantCache, mutationFailures, pipeline, timeoutMultiplier, minimumTimeout, timingJournal);
+	}
+	
+	/**
+	 * Sets up the VariantCache.
+	 * @param properties The user specified properties.
+	 * @return
+	 * @throws Exception Throws an exception if properties are not formatted properly.
+	 */
+	private static VariantCache buildVariantCache(Properties properties) throws Exception {
+		
+		/* variantCacheSize is optional (defaults to 10000). The number of variant outcomes to remember. */
+		int variantCacheSize = 10000;
+		if(properties.containsKey("variant_cache_size")) variantCacheSize = Integer.parseInt(properties.getProperty("variant_cache_size").trim());
+		if(variantCacheSize < 0) throw new Exception("Parameter 'variant_cache_size' must be at least 0");
+		
+		return new VariantCache(variantCacheSize);
+	}
+	
+	/**
+	 * Sets up the GeneticContext. All the settings are optional. The defaults
+	 * for the fitness weights are GenProg's.
+	 * @param properties The user specified properties.
+	 * @return
+	 * @throws Exception Throws an exception if properties are not formatted properly.
+	 */
+	private static GeneticContext buildGeneticContext(Properties properties) throws Exception {
+		
+		int populationSize = 40;
+		int generations = 10;
+		int tournamentSize = 2;
+		double crossoverRate = 0.5;
+		double mutationRate = 1.0;
+		double positiveWeight = 1.0;
+		double negativeWeight = 10.0;
+		
+		if(properties.containsKey("genetic_population_size")) populationSize = Integer.parseInt(properties.getProperty("genetic_population_size"));
+		if(properties.containsKey("genetic_generations")) generations = Integer.parseInt(properties.getProperty("genetic_generations"));
+		if(properties.containsKey("genetic_tournament_size")) tournamentSize = Integer.parseInt(properties.getProperty("genetic_tournament_size"));
+		if(properties.containsKey("genetic_crossover_rate")) crossoverRate = Double.parseDouble(properties.getProperty("genetic_crossover_rate"));
+		if(properties.containsKey("genetic_mutation_rate")) mutationRate = Double.parseDouble(properties.getProperty("genetic_mutation_rate"));
+		if(properties.containsKey("genetic_positive_weight")) positiveWeight = Double.parseDouble(properties.getProperty("genetic_positive_weight"));
+		if(properties.containsKey("genetic_negative_weight")) negativeWeight = Double.parseDouble(properties.getProperty("genetic_negative_weight"));
+		
+		if(populationSize < 1) throw new Exception("Parameter 'genetic_population_size' must be at least 1");
+		if(tournamentSize < 1) throw new Exception("Parameter 'genetic_tournament_size' must be at least 1");
+		
+		return new GeneticContext(populationSize, generations, tournamentSize, crossoverRate, mutationRate, positiveWeight, negativeWeight);
 	}
 	
 	/**
@@ -182,9 +346,14 @@ public class ContextFactory {
         File faultyCoverageFile = new File(properties.getProperty("faulty_coverage"));
         File seedCoverageFile = new File(properties.getProperty("faulty_coverage"));
 
+		/* The class files are needed to read JaCoCo .exec files. */
+		File classes = null;
+		if(properties.containsKey("coverage_classes") && !properties.getProperty("coverage_classes").trim().isEmpty())
+			classes = new File(properties.getProperty("coverage_classes").trim());
+
 		/* Load the line coverage files. */
-		LineCoverage faultyLineCoverage = new LineCoverage(faultyCoverageFile);
-		LineCoverage seedLineCoverage = new LineCoverage(seedCoverageFile);
+		LineCoverage faultyLineCoverage = new LineCoverage(faultyCoverageFile, classes);
+		LineCoverage seedLineCoverage = new LineCoverage(seedCoverageFile, classes);
 		
 		/* Build a ParserContext object. */
 		return new ParserContext(scope, 
@@ -202,10 +371,11 @@ public class ContextFactory {
 	 * @param classpaths
 	 * @param sourcepaths
 	 * @param sourceFileContents
+	 * @param worker The worker number.
 	 * @return
 	 * @throws Exception
 	 */
-	private static CompilerContext buildCompilerContext(Properties properties, String[] classpaths, String[] sourcepaths, HashMap<String, DocumentASTRewrite> sourceFileContents) throws Exception {
+	private static CompilerContext buildCompilerContext(Properties properties, String[] classpaths, String[] sourcepaths, HashMap<String, DocumentASTRewrite> sourceFileContents, int worker) throws Exception {
 
         /* Get the location for the class files. */
 		if(!properties.containsKey("class_directory")) throw new Exception("Parameter 'class_directory' not found in properties");
@@ -217,8 +387,16 @@ public class ContextFactory {
 		if(properties.containsKey("copy_source_includes")) copyIncludes = unpackArray(properties.getProperty("copy_source_includes"));
 		if(properties.containsKey("copy_source_excludes")) copyExcludes = unpackArray(properties.getProperty("copy_source_excludes"));
 		
+		/* incrementalCompile is optional (defaults to false). If true, only the modified source files are compiled. */
+		boolean incrementalCompile = false;
+		if(properties.containsKey("incremental_compile")) incrementalCompile = Boolean.parseBoolean(properties.getProperty("incremental_compile"));
+		
+		/* Each worker writes its own baseline, since the workers may share the class directory (JUNIT and TEST_SERVER). */
+		String baselineDirectory = classDirectory + "-baseline";
+		if(worker > 0) baselineDirectory += "-" + worker;
+		
     	/* Make the compiler we will use. */
-        JavaJDKCompiler compiler = new JavaJDKCompiler(classDirectory, classpaths, sourceFileContents, sourcepaths, copyIncludes, copyExcludes);
+        JavaJDKCompiler compiler = new JavaJDKCompiler(classDirectory, classpaths, sourceFileContents, sourcepaths, copyIncludes, copyExcludes, incrementalCompile, baselineDirectory);
         
         return new CompilerContext(compiler);
 	}
@@ -230,6 +408,7 @@ public class ContextFactory {
 	 * @param faultyStatements The list of faulty statements.
 	 * @param seedStatements The list of seed statements.
 	 * @param random The random number generator.
+	 * @param mutationFailures The mutations that are known to fail.
 	 * @return
 	 * @throws Exception Throws an exception if properties are missing or not
 	 * 					 formatted properly.
@@ -237,10 +416,11 @@ public class ContextFactory {
 	private static MutationContext buildMutationContext(Statements faultyStatements, 
 														Statements seedStatements, 
                                                         HashMap<String, DocumentASTRewrite> sourceFileContents,
-														Random random) throws Exception {
+														Random random,
+														MutationFailures mutationFailures) throws Exception {
 
 		/* Build a MutationContext object. */
-		return new MutationContext(sourceFileContents, faultyStatements, seedStatements, random);
+		return new MutationContext(sourceFileContents, faultyStatements, seedStatements, random, mutationFailures);
 	}
 	
 	/**
@@ -253,6 +433,7 @@ public class ContextFactory {
 	 */
 	private static TestContext buildTestContext(Properties properties) throws Exception {
 		AbstractTestExecutor testExecutor;
+		AbstractTestExecutor negativeTestExecutor = null;
 		
 		if(!properties.containsKey("test_script")) throw new Exception("Parameter 'test_script' not found in properties");
 		String testScript = properties.getProperty("test_script");
@@ -266,6 +447,12 @@ public class ContextFactory {
                 testExecutor = new AntTestExecutor(new File(properties.getProperty("ant_base_dir")), 
                                                    properties.getProperty("ant_path"), 
                                                    properties.getProperty("ant_test_target"));
+                
+                /* Optional target that runs only the negative tests. */
+                if(properties.containsKey("ant_negative_test_target") && !properties.getProperty("ant_negative_test_target").trim().isEmpty())
+                	negativeTestExecutor = new AntTestExecutor(new File(properties.getProperty("ant_base_dir")), 
+                                                   			   properties.getProperty("ant_path"), 
+                                                   			   properties.getProperty("ant_negative_test_target").trim());
             	break;
             case BASH:
                 if(!properties.containsKey("bash_script_base_dir")) throw new Exception("Parameter 'bash_script_base_dir' not found in properties");
@@ -273,22 +460,95 @@ public class ContextFactory {
                 
                 testExecutor = new BashTestExecutor(new File(properties.getProperty("bash_script_base_dir")),
                 									properties.getProperty("bash_script_path"));
+                
+                /* Optional script that runs only the negative tests. */
+                if(properties.containsKey("bash_negative_script_path") && !properties.getProperty("bash_negative_script_path").trim().isEmpty())
+                	negativeTestExecutor = new BashTestExecutor(new File(properties.getProperty("bash_script_base_dir")),
+                												properties.getProperty("bash_negative_script_path").trim());
+            	break;
+            case JUNIT:
+                if(!properties.containsKey("junit_test_classes")) throw new Exception("Parameter 'junit_test_classes' not found in properties");
+                
+                /* The class path for the (compiled) test classes and their dependencies. */
+                String[] junitClasspath = new String[] {};
+                if(properties.containsKey("junit_classpath")) junitClasspath = unpackArray(properties.getProperty("junit_classpath"));
+                URL[] junitClasspathURLs = new URL[junitClasspath.length];
+                for(int i = 0; i < junitClasspath.length; i++) junitClasspathURLs[i] = new File(junitClasspath[i]).toURI().toURL();
+                
+                /* The number of timed out test threads that can keep running before the repair stops (optional). Default = 4 */
+                int maxStuckThreads = 4;
+                if(properties.containsKey("junit_max_stuck_threads")) maxStuckThreads = Integer.parseInt(properties.getProperty("junit_max_stuck_threads").trim());
+                if(maxStuckThreads < 0) throw new Exception("Parameter 'junit_max_stuck_threads' must be at least 0");
+                
+                testExecutor = new JUnitTestExecutor(unpackArray(properties.getProperty("junit_test_classes")), junitClasspathURLs, maxStuckThreads);
+            	break;
+            case TEST_SERVER:
+                if(!properties.containsKey("junit_test_classes")) throw new Exception("Parameter 'junit_test_classes' not found in properties");
+                if(!properties.containsKey("build_directory")) throw new Exception("Parameter 'build_directory' not found in properties");
+                
+                /* The class path for the (compiled) test classes and their dependencies. */
+                String[] serverClasspath = new String[] {};
+                if(properties.containsKey("junit_classpath")) serverClasspath = unpackArray(properties.getProperty("junit_classpath"));
+                
+                /* The class path for the libraries that the server loads once (optional). */
+                String[] libraryClasspath = new String[] {};
+                if(properties.containsKey("test_server_library_path")) libraryClasspath = unpackArray(properties.getProperty("test_server_library_path"));
+                
+                /* The JVM arguments for the server (optional). */
+                String[] jvmArgs = new String[] {};
+                if(properties.containsKey("test_server_jvm_args") && !properties.getProperty("test_server_jvm_args").trim().isEmpty()) 
+                	jvmArgs = properties.getProperty("test_server_jvm_args").trim().split("\\s+");
+                
+                /* The number of runs before the server is restarted (optional). Default = 100 */
+                int maxRuns = 100;
+                if(properties.containsKey("test_server_max_runs")) maxRuns = Integer.parseInt(properties.getProperty("test_server_max_runs").trim());
+                if(maxRuns < 1) throw new Exception("Parameter 'test_server_max_runs' must be at least 1");
+                
+                testExecutor = new TestServerExecutor(unpackArray(properties.getProperty("junit_test_classes")), 
+                									  ContextFactory.toURLs(serverClasspath), ContextFactory.toURLs(libraryClasspath), 
+                									  jvmArgs, maxRuns, new File(properties.getProperty("build_directory"), "test-server-log"));
             	break;
 			default:
 				throw new Exception("Unknown test script type: " + testScript);
 		}
 		
+		/* negativeTests is optional. The negative tests are run first so that most candidates 
+		 * fail fast. If it is not given, the genetic search finds the negative tests by testing 
+		 * the faulty program. */
+		String[] negativeTests = new String[] {};
+		if(properties.containsKey("negative_tests")) negativeTests = unpackArray(properties.getProperty("negative_tests"));
+		
+		/* testCoverage is optional. If it is given, the tests that execute the mutated statements 
+		 * are run before the full suite. */
+		TestCoverage testCoverage = null;
+		if(properties.containsKey("test_coverage") && !properties.getProperty("test_coverage").trim().isEmpty())
+			testCoverage = new TestCoverage(new File(properties.getProperty("test_coverage").trim()));
+		
 		/* Build a TestContext object. */
-		return new TestContext(testExecutor);
+		return new TestContext(testExecutor, negativeTestExecutor, negativeTests, testCoverage);
 	}
 
 	/**
 	 * Options for the type of TestExecutor to build.
 	 * 	ANT: Apache Ant will execute the junit test cases.
 	 * 	BASH: A custom Bash shell script will execute the junit test cases.
+	 * 	JUNIT: JUnitCore will execute the junit test cases in the current JVM.
+	 * 	TEST_SERVER: JUnitCore will execute the junit test cases in a long-lived JVM.
 	 * @author qhanam
 	 */
-	private enum TestScript { ANT, BASH }
+	private enum TestScript { ANT, BASH, JUNIT, TEST_SERVER }
+	
+	/**
+	 * Converts paths to URLs.
+	 * @param paths The file paths.
+	 * @return The URLs of the files.
+	 * @throws Exception
+	 */
+	private static URL[] toURLs(String[] paths) throws Exception{
+		URL[] urls = new URL[paths.length];
+		for(int i = 0; i < paths.length; i++) urls[i] = new File(paths[i]).toURI().toURL();
+		return urls;
+	}
 
 	/**
 	 * Builds a HashMap with Java file paths as keys and Java file text contents as values.
@@ -342,6 +602,21 @@ public class ContextFactory {
 		return sourceFilesArray;
 	}
 
+	/**
+	 * Makes a copy of the properties for one worker, replacing the ${worker}
+	 * token in all property values with the worker number.
+	 * @param properties The properties given as input by the user.
+	 * @param worker The worker number.
+	 * @return The properties for the worker.
+	 */
+	private static Properties getWorkerProperties(Properties properties, int worker){
+		Properties workerProperties = new Properties();
+		for(String key : properties.stringPropertyNames()){
+			workerProperties.setProperty(key, properties.getProperty(key).replace(WORKER_TOKEN, String.valueOf(worker)));
+		}
+		return workerProperties;
+	}
+
 	/**
 	 * Converts a serialized array in the format "{string1,string2,...,stringN}" 
 	 * to a String array.
@@ -0,0 +1,30 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.context;
+
+/**
+ * Holds the settings for the genetic search (see GeneticRepair).
+ *
+ * @author qhanam
+ */
+public class GeneticContext {
+
+	public int populationSize;			// The number of variants in each generation
+	public int generations;				// The number of generations to evolve
+	public int tournamentSize;			// The number of variants that compete to be selected as a parent
+	public double crossoverRate;		// The probability that two parents are crossed over
+	public double mutationRate;			// The probability that a mutation is appended to a child
+	public double positiveWeight;		// The fitness of each passing positive test (a test that passes on the faulty program)
+	public double negativeWeight;		// The fitness of each passing negative test (a test that fails on the faulty program)
+
+	public GeneticContext(int populationSize, int generations, int tournamentSize,
+						  double crossoverRate, double mutationRate,
+						  double positiveWeight, double negativeWeight){
+		this.populationSize = populationSize;
+		this.generations = generations;
+		this.tournamentSize = tournamentSize;
+		this.crossoverRate = crossoverRate;
+		this.mutationRate = mutationRate;
+		this.positiveWeight = positiveWeight;
+		this.negativeWeight = negativeWeight;
+	}
+
+}
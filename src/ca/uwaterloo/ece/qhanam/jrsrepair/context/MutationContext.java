@@ -1,11 +1,14 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair.context;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Random;
 
 import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
+import ca.uwaterloo.ece.qhanam.jrsrepair.MutationFailures;
 import ca.uwaterloo.ece.qhanam.jrsrepair.SourceStatement;
 import ca.uwaterloo.ece.qhanam.jrsrepair.Statements;
+import ca.uwaterloo.ece.qhanam.jrsrepair.VariantCache;
 import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
 import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.NullMutation;
 import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.AdditionMutation;
@@ -30,20 +33,33 @@ public class MutationContext {
 
 	private Random random;
 	
+	/* The mutations that failed the scope check or did not compile, packed by pack(). The
+	 * failures of the other candidates are shared, the current candidate's are its own. */
+	private MutationFailures failures;
+	private HashSet<Long> candidateFailures;
+	private int candidate;
+	
+	/* The number of times a known failure is drawn again before it is used anyway. */
+	private static final int MAX_REDRAWS = 100;
+	
 	/**
 	 * Create a new MutationContext object.
 	 * @param sourceFileContents The map of source file names to their DocumentASTRewriter.
 	 * @param faultyStatements The list of faulty statements to mutate.
 	 * @param seedStatements The list of seed statements to mutate with.
 	 * @param random The random number generator (for random statement selection).
+	 * @param failures The mutations that are known to fail (may be shared by several contexts).
 	 */
 	public MutationContext(HashMap<String, DocumentASTRewrite> sourceFileContents, 
 						   Statements faultyStatements, Statements seedStatements, 
-						   Random random){
+						   Random random, MutationFailures failures){
 		this.sourceFileContents = sourceFileContents;
 		this.faultyStatements = faultyStatements;
 		this.seedStatements = seedStatements;
 		this.random = random;
+		this.failures = failures;
+		this.candidateFailures = new HashSet<Long>();
+		this.candidate = 0;
 	}
 
 	/**
@@ -52,7 +68,7 @@ public class MutationContext {
 	 * @return A Mutation memento object for applying one mutation to a faulty statement.
 	 */
 	public Mutation getRandomMutation(MutationType type) throws Exception {
-		SourceStatement faultyStatement;
+		SourceStatement[] statements;
 		Mutation mutation;
 		
 		switch(type){
@@ -62,17 +78,18 @@ public class MutationContext {
 			break;
 		case ADDITION:
 			System.out.print("Applying addition mutation...");
-			faultyStatement = faultyStatements.getRandomStatement();
-			mutation = new AdditionMutation(sourceFileContents, faultyStatement, seedStatements.getRandomStatement(faultyStatement));
+			statements = this.getRandomStatements(type);
+			mutation = new AdditionMutation(sourceFileContents, statements[0], statements[1]);
 			break;
 		case REPLACEMENT:
 			System.out.print("Applying replacement mutation...");
-			faultyStatement = faultyStatements.getRandomStatement();
-			mutation = new ReplacementMutation(sourceFileContents, faultyStatement, seedStatements.getRandomStatement(faultyStatement));
+			statements = this.getRandomStatements(type);
+			mutation = new ReplacementMutation(sourceFileContents, statements[0], statements[1]);
 			break;
 		case DELETION:
 			System.out.print("Applying deletion mutation...");
-			mutation = new DeletionMutation(sourceFileContents, faultyStatements.getRandomStatement(), null);
+			statements = this.getRandomStatements(type);
+			mutation = new DeletionMutation(sourceFileContents, statements[0], null);
 			break;
 		default:
 			throw new Exception("MutationContext: MutationType not recognised.");
@@ -80,6 +97,177 @@ public class MutationContext {
 		
 		return mutation;
 	}
+	
+	/**
+	 * Randomly selects a faulty statement and (for ADDITION and REPLACEMENT) a
+	 * seed statement. Pairs that are known to fail (see recordFailure) are
+	 * rejected and drawn again, but after MAX_REDRAWS rejections the last
+	 * pair is returned even if it is known to fail.
+	 * @param type The type of mutation.
+	 * @return The faulty statement and the seed statement (null for DELETION).
+	 */
+	private SourceStatement[] getRandomStatements(MutationType type){
+		SourceStatement faultyStatement;
+		SourceStatement seedStatement;
+		int redraws = 0;
+		
+		while(true){
+			faultyStatement = faultyStatements.getRandomStatement();
+			seedStatement = type == MutationType.DELETION ? null : seedStatements.getRandomStatement(faultyStatement);
+
+			if(redraws >= MAX_REDRAWS || !this.isKnownFailure(MutationContext.pack(type, faultyStatement, seedStatement)))
+				return new SourceStatement[] { faultyStatement, seedStatement };
+			
+			/* The pair failed before. Release the statements and draw again. */
+			faultyStatement.release();
+			if(seedStatement != null) seedStatement.release();
+			redraws++;
+		}
+	}
+	
+	/**
+	 * Returns true if the current candidate knows that the packed mutation fails: 
+	 * the candidate recorded the failure itself, or the failure was recorded by a 
+	 * candidate that it sees (see MutationFailures).
+	 */
+	private boolean isKnownFailure(long mutation){
+		return this.candidateFailures.contains(mutation) || this.failures.contains(this.candidate, mutation);
+	}
+	
+	/**
+	 * Records that a mutation failed the scope check or did not compile. The
+	 * (faulty statement, seed statement, mutation type) triple is then usually
+	 * rejected by getRandomMutation (see getRandomStatements). Only record 
+	 * failures of mutations that were applied to the unmodified program, since 
+	 * a mutation that fails with other mutations applied may succeed without them.
+	 * @param type The type of the mutation.
+	 * @param mutation The mutation that failed.
+	 */
+	public void recordFailure(MutationType type, Mutation mutation){
+		if(type == MutationType.NULL) return;
+		long packed = MutationContext.pack(type, mutation.getFaulty(), mutation.getSeed());
+		this.candidateFailures.add(packed);
+		this.failures.add(this.candidate, packed);
+	}
+	
+	/**
+	 * Packs a (faulty statement, seed statement, mutation type) triple into a long.
+	 */
+	private static long pack(MutationType type, SourceStatement faultyStatement, SourceStatement seedStatement){
+		int seedId = seedStatement == null ? -1 : seedStatement.id;
+		return ((long) faultyStatement.id << 32) | ((long) (seedId + 1) << 2) | type.ordinal();
+	}
+
+	/**
+	 * Returns the mutation operation for the given statements. Used to apply
+	 * a mutation that was selected earlier (possibly in another context).
+	 * 
+	 * @param type The type of mutation.
+	 * @param faultyId The id of the faulty statement.
+	 * @param seedId The id of the seed statement (ignored by NULL and DELETION).
+	 * @return A Mutation memento object for applying one mutation to a faulty statement.
+	 */
+	public Mutation getMutation(MutationType type, int faultyId, int seedId) throws Exception {
+		SourceStatement faultyStatement = faultyStatements.getStatement(faultyId);
+		SourceStatement seedStatement = null;
+		if(type == MutationType.ADDITION || type == MutationType.REPLACEMENT) seedStatement = seedStatements.getStatement(seedId);
+		
+		/* These statements are now in use (until the mutation is undone). */
+		faultyStatements.reserve(faultyStatement);
+		if(seedStatement != null) seedStatements.reserve(seedStatement);
+		
+		switch(type){
+		case NULL:
+			return new NullMutation(sourceFileContents, faultyStatement, null);
+		case ADDITION:
+			return new AdditionMutation(sourceFileContents, faultyStatement, seedStatement);
+		case REPLACEMENT:
+			return new ReplacementMutation(sourceFileContents, faultyStatement, seedStatement);
+		case DELETION:
+			return new DeletionMutation(sourceFileContents, faultyStatement, null);
+		default:
+			throw new Exception("MutationContext: MutationType not recognised.");
+		}
+	}
+
+	/**
+	 * Returns the number of faulty statements. At most this many mutations can
+	 * be applied at once, since a statement is only mutated once.
+	 * @return
+	 */
+	public int getFaultyStatementCount(){
+		return this.faultyStatements.size();
+	}
+
+	/**
+	 * Returns the number of faulty statements that are mutated.
+	 * @return
+	 */
+	public int getFaultyStatementsInUse(){
+		return this.faultyStatements.getInUseCount();
+	}
+
+	/**
+	 * Returns the number of seed statements that are used by mutations.
+	 * @return
+	 */
+	public int getSeedStatementsInUse(){
+		return this.seedStatements.getInUseCount();
+	}
+
+	/**
+	 * Returns the faulty statements (the statements that are mutated).
+	 * @return
+	 */
+	public Statements getFaultyStatements(){
+		return this.faultyStatements;
+	}
+
+	/**
+	 * Returns the seed statements (the statements that are inserted).
+	 * @return
+	 */
+	public Statements getSeedStatements(){
+		return this.seedStatements;
+	}
+
+	/**
+	 * Returns the fingerprint of the program with the mutations that are
+	 * currently applied. Programs with the same source code have the same
+	 * fingerprint (see VariantCache).
+	 * @return The fingerprint.
+	 * @throws Exception
+	 */
+	public String getVariantFingerprint() throws Exception {
+		return VariantCache.fingerprint(this.sourceFileContents);
+	}
+
+	/**
+	 * Prepares the context for a candidate. The random number generators used
+	 * for selecting mutations and statements are reset, and the candidate sees
+	 * the failures of the candidates that are far enough before it (see 
+	 * MutationFailures). This way a candidate's mutations do not depend on
+	 * which worker runs it or which candidates run at the same time.
+	 * @param candidate The candidate number (candidates are numbered from 1).
+	 * @param seed The seed for the random number generators.
+	 * @throws InterruptedException
+	 */
+	public void startCandidate(int candidate, long seed) throws InterruptedException{
+		this.failures.await(candidate);
+		this.candidate = candidate;
+		this.candidateFailures.clear();
+		this.random = new Random(seed);
+		this.faultyStatements.reseed(this.random.nextLong());
+		this.seedStatements.reseed(this.random.nextLong());
+	}
+
+	/**
+	 * Records that the current candidate has finished, so the candidates
+	 * after it can see its failures.
+	 */
+	public void finishCandidate(){
+		this.failures.finish(this.candidate);
+	}
 
 	/**
 	 * Returns a random mutation type.
@@ -4,12 +4,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 
 import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.FileASTRequestor;
-import org.eclipse.jdt.core.dom.QualifiedName;
-import org.eclipse.jdt.core.dom.SimpleName;
 
 import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
 import ca.uwaterloo.ece.qhanam.jrsrepair.LineCoverage;
@@ -24,6 +20,7 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.Statements;
 public class ParserContext {
 	
 	private ASTParser parser;
+	private ScopeChecker scopeChecker;
     private HashMap<String, HashSet<String>> scope;
     private HashMap<String, DocumentASTRewrite> sourceFileContents;
     private String[] classpaths;
@@ -41,6 +38,7 @@ public class ParserContext {
     					 Statements faultyStatements, Statements seedStatements){
 
 		this.parser = ASTParser.newParser(AST.JLS8);
+		this.scopeChecker = new ScopeChecker(classpaths, sourcepaths);
 
     	this.scope = scope;
     	this.sourceFileContents = sourceFileContents;
@@ -80,82 +78,21 @@ public class ParserContext {
 		 * FileASTRequestor requestor, 
 		 * IProgressMonitor monitor) */
 		parser.createASTs(sourceFilesArray, null, new String[] {}, fileASTRequestor, null);
+		
+		/* All the statements have been added, so build the arrays used to select them. */
+		this.faultyStatements.freeze();
+		this.seedStatements.freeze();
 	}
 
 	/**
 	 * Checks that the AST produced by the mutation has all variables in-scope.
 	 * 
-	 * To do this, we create a new AST by parsing the mutated source and compute
-	 * bindings. We then look to see if there are any bindings missing. If bindings
-	 * are missing, there is something not in-scope and the program will not compile.
-	 * 
 	 * @param rewriter The AST rewriter that contains the mutated document.
+	 * @param focalPosition The position of the mutated method body in the mutated
+	 * 		  document, or -1 to check the whole document.
 	 */
-	public boolean checkScope(DocumentASTRewrite rewriter) {
-		String source = rewriter.modifiedDocument.get();
-
-		this.parser.setSource(source.toCharArray());
-		this.parser.setEnvironment(this.classpaths, this.sourcepaths, null, true); 
-		this.parser.setResolveBindings(true);
-		this.parser.setUnitName(rewriter.backingFile.getName());
-
-		ASTNode node = this.parser.createAST(null);
-
-		ScopeASTVisitor scopeASTVisitor = new ScopeASTVisitor();
-		node.accept(scopeASTVisitor);
-
-		if(!scopeASTVisitor.inScope){
-            System.out.println(" - Some variables are out of scope.");
-            return false;
-		}
-
-		return true;
-	}
-
-	/**
-	 * Checks that each variable, field, method and type has a binding. If
-	 * one of these does not have a binding, we assume it is out of scope.
-	 * This is used for checking to make sure mutated ASTs will be compilable.
-	 * @author qhanam
-	 */
-	private class ScopeASTVisitor extends ASTVisitor{
-
-		public boolean inScope;
-		
-		public ScopeASTVisitor(){ 
-			this.inScope = true;
-		}
-
-		/**
-		 * Check that each QualifiedName has a binding. This
-		 * will ensure that the fully qualified name gets
-		 * checked instead of it's parts.
-		 */
-		public boolean visit(QualifiedName qn){
-	
-			if(!this.inScope) return false; // No point in checking if we're already out of scope
-
-			if(qn.resolveBinding() == null) {
-				this.inScope = false;
-			}
-			
-			return false;
-		}
-
-		/**
-		 * Check that each SimpleName ASTNode has a binding. These
-		 * will be variables, fields, methods and types.
-		 */
-		public boolean visit(SimpleName s) {
-
-			if(!this.inScope) return false; // No point in checking if we're already out of scope
-
-			if(s.resolveBinding() == null) {
-				this.inScope = false;
-			}
-			
-			return false;
-		}
+	public boolean checkScope(DocumentASTRewrite rewriter, int focalPosition) {
+		return this.scopeChecker.checkScope(rewriter, focalPosition);
 	}
 
 }
@@ -2,6 +2,9 @@ package ca.uwaterloo.ece.qhanam.jrsrepair.context;
 
 import java.io.File;
 
+import ca.uwaterloo.ece.qhanam.jrsrepair.MutationFailures;
+import ca.uwaterloo.ece.qhanam.jrsrepair.VariantCache;
+
 /**
  * Holds the context for the main repair operation.
  * 
@@ -16,10 +19,24 @@ public class RepairContext {
 	public boolean revertFailedCompile;	// Should we undo mutations that don't compile right away?
 	public String[] classDirectories;	// OPTIONAL - If there are multiple output directories, specify them here (class files will be copied back).
 	public boolean nullMutationOnlly; 	// Only perform the null mutation (does not mutate the program... useful for debugging)
+	public int workers;					// The number of candidates that are mutated, compiled and tested concurrently.
+	public long randomSeed;				// The seed that each candidate's random number generators are derived from.
+	public SearchStrategy searchStrategy;	// How candidates are searched for.
+	public GeneticContext genetic;		// The settings for the genetic search.
+	public VariantCache variantCache;	// The outcomes of the variants that have been evaluated (shared by the workers).
+	public MutationFailures mutationFailures;	// The mutations that are known to fail (shared by the workers).
+	public boolean pipeline;			// Should candidates be tested by a separate stage while the next candidates are mutated and compiled?
+	public double timeoutMultiplier;	// The test time out as a multiple of the test run time of the faulty program (0 = use the executor's fixed time out).
+	public long minimumTimeout;			// The lower bound for the calibrated test time out, in milliseconds.
+	public File timingJournal;			// OPTIONAL - The file that the timings of each attempt are recorded in (see TimingJournal).
 	
 	public RepairContext(int candidates, int generations, int attempts, 
 						 File buildDirectory, boolean revertFailedCompile, 
-						 String[] classDirectories, boolean nullMutationOnly){
+						 String[] classDirectories, boolean nullMutationOnly,
+						 int workers, long randomSeed,
+						 SearchStrategy searchStrategy, GeneticContext genetic,
+						 VariantCache variantCache, MutationFailures mutationFailures, boolean pipeline,
+						 double timeoutMultiplier, long minimumTimeout, File timingJournal){
 		this.candidates = candidates;
 		this.generations = generations;
 		this.attempts = attempts;
@@ -27,6 +44,25 @@ public class RepairContext {
 		this.revertFailedCompile = revertFailedCompile;
 		this.classDirectories = classDirectories;
 		this.nullMutationOnlly = nullMutationOnly;
+		this.workers = workers;
+		this.randomSeed = randomSeed;
+		this.searchStrategy = searchStrategy;
+		this.genetic = genetic;
+		this.variantCache = variantCache;
+		this.mutationFailures = mutationFailures;
+		this.pipeline = pipeline;
+		this.timeoutMultiplier = timeoutMultiplier;
+		this.minimumTimeout = minimumTimeout;
+		this.timingJournal = timingJournal;
 	}
 	
+	/**
+	 * The search strategies.
+	 * 	RANDOM: RSRepair's random search. Each candidate applies [generations] random mutations.
+	 * 	GENETIC: GenProg's genetic search. Variants are selected by their fitness (the weighted 
+	 * 			 number of passing tests) and evolved with crossover and mutation.
+	 * @author qhanam
+	 */
+	public enum SearchStrategy { RANDOM, GENETIC }
+	
 }
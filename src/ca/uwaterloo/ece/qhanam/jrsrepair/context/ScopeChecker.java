@@ -0,0 +1,367 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.context;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.WorkingCopyOwner;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.IErrorHandlingPolicy;
+import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.parser.Parser;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.eclipse.jdt.internal.compiler.IProblemFactory;
+import org.eclipse.jdt.internal.compiler.util.Util;
+import org.eclipse.jdt.internal.core.BasicCompilationUnit;
+import org.eclipse.jdt.internal.core.DefaultWorkingCopyOwner;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
+
+/**
+ * ScopeChecker checks that mutated source files only use variables, fields,
+ * methods and types that are in scope.
+ *
+ * The name environment (the class path and source path lookup, with its open
+ * jar files and cached directory listings) is built once and used by every
+ * parse. ASTParser builds a new environment for each createAST, so the checker
+ * runs JDT's resolver itself (the way createAST does) and converts the result
+ * to a DOM AST. The compiler options are JDT's defaults, as for the ASTs that
+ * the mutations are built from.
+ *
+ * When the position of the mutated method is known, only that method body is
+ * parsed and resolved. Mutations only change statements, so the other bodies
+ * resolve the same way they do in the unmutated file (or did when they were
+ * mutated). The result is the same as checking the whole document as long as
+ * every name in the unmutated file is in scope, so files that don't meet this
+ * (see checksFocally) are always checked as a whole.
+ *
+ * @author qhanam
+ */
+public class ScopeChecker {
+
+	/* ASTParser's resolver (org.eclipse.jdt.core.dom.CompilationUnitResolver) is package
+	 * private, so its constructor, abort flag and conversion to a DOM AST are used
+	 * through reflection. The rest is inherited from Compiler. */
+	private static final Constructor<?> resolver;
+	private static final Field aborted;
+	private static final Method convert;
+	private static final Constructor<?> bindingTables;
+	static {
+		try{
+			Class<?> resolverClass = Class.forName("org.eclipse.jdt.core.dom.CompilationUnitResolver");
+			resolver = resolverClass.getConstructor(INameEnvironment.class, IErrorHandlingPolicy.class, CompilerOptions.class,
+													ICompilerRequestor.class, IProblemFactory.class, IProgressMonitor.class, boolean.class);
+			resolver.setAccessible(true);
+			aborted = resolverClass.getDeclaredField("hasCompilationAborted");
+			aborted.setAccessible(true);
+
+			Class<?> tables = Class.forName("org.eclipse.jdt.core.dom.DefaultBindingResolver$BindingTables");
+			bindingTables = tables.getDeclaredConstructor();
+			bindingTables.setAccessible(true);
+			convert = resolverClass.getMethod("convert", CompilationUnitDeclaration.class, char[].class, int.class, Map.class,
+											  boolean.class, WorkingCopyOwner.class, tables, int.class, IProgressMonitor.class, boolean.class);
+			convert.setAccessible(true);
+		}
+		catch(ReflectiveOperationException e){
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private FileSystem environment;
+	private Map<String, String> options;
+
+	/* Whether the scope of mutations to a file can be checked in the mutated body only (by file path). */
+	private HashMap<String, Boolean> focalFiles;
+
+	/**
+	 * @param classpaths The class path for resolving bindings.
+	 * @param sourcepaths The source path for resolving bindings.
+	 */
+	@SuppressWarnings("unchecked")
+	public ScopeChecker(String[] classpaths, String[] sourcepaths){
+		this.options = JavaCore.getOptions();
+		this.options.remove(JavaCore.COMPILER_TASK_TAGS);
+		this.environment = ScopeChecker.buildEnvironment(classpaths, sourcepaths);
+		this.focalFiles = new HashMap<String, Boolean>();
+	}
+
+	/**
+	 * Checks that the AST produced by the mutation has all variables in-scope.
+	 *
+	 * To do this, we create a new AST by parsing the mutated source and compute
+	 * bindings. We then look to see if there are any bindings missing. If bindings
+	 * are missing, there is something not in-scope and the program will not compile.
+	 *
+	 * @param rewriter The AST rewriter that contains the mutated document.
+	 * @param focalPosition The position of the mutated method body in the mutated
+	 * 		  document, or -1 to check the whole document.
+	 */
+	public synchronized boolean checkScope(DocumentASTRewrite rewriter, int focalPosition) {
+		if(focalPosition >= 0 && !this.checksFocally(rewriter)) focalPosition = -1;
+		char[] source = rewriter.modifiedDocument.get().toCharArray();
+		String unitName = rewriter.backingFile.getName();
+
+		CompilationUnit cu = this.parse(unitName, source, focalPosition);
+
+		/* Only visit the mutated method, since the other method bodies were not parsed.
+		 * If there is no method at the position, check the whole document. */
+		ASTNode node = cu;
+		if(cu != null && focalPosition >= 0){
+			node = getBodyDeclaration(cu, focalPosition);
+			if(node == cu){
+				cu = this.parse(unitName, source, -1);
+				node = cu;
+			}
+		}
+
+		if(node == null || !ScopeChecker.isInScope(node)){
+            System.out.println(" - Some variables are out of scope.");
+            return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns true if mutations to the file are checked by resolving only the
+	 * mutated body. This is the case when every name in the unmutated file is
+	 * in scope. The unmutated file is checked the first time.
+	 * @param rewriter The AST rewriter for the file.
+	 * @return
+	 */
+	public synchronized boolean checksFocally(DocumentASTRewrite rewriter){
+		String path = rewriter.backingFile.getPath();
+		Boolean focal = this.focalFiles.get(path);
+		if(focal == null){
+			CompilationUnit cu = this.parse(rewriter.backingFile.getName(), rewriter.document.get().toCharArray(), -1);
+			focal = cu != null && ScopeChecker.isInScope(cu);
+			this.focalFiles.put(path, focal);
+		}
+		return focal;
+	}
+
+	/**
+	 * Parses the document and resolves its bindings (the same way as
+	 * ASTParser.createAST, but with the checker's name environment).
+	 * @param focalPosition Only the body that contains this position is parsed (all bodies if -1).
+	 * @return The AST, or null if the compiler gave up (e.g., java.lang.Object can't be found).
+	 * 		   ASTParser returns an AST without bindings in this case.
+	 */
+	private CompilationUnit parse(String unitName, char[] source, int focalPosition){
+		CompilerOptions compilerOptions = new CompilerOptions(this.options);
+		compilerOptions.performMethodsFullRecovery = false;
+		compilerOptions.performStatementsRecovery = false;
+		compilerOptions.parseLiteralExpressionsAsConstants = false;
+		compilerOptions.storeAnnotations = true;
+		compilerOptions.ignoreSourceFolderWarningOption = true;
+
+		BasicCompilationUnit sourceUnit = new BasicCompilationUnit(source, null, unitName, (IJavaElement) null);
+		CompilationUnitDeclaration unit = null;
+		try{
+			Compiler compiler = (Compiler) resolver.newInstance(this.environment, HANDLING_POLICY, compilerOptions, REQUESTOR,
+																new DefaultProblemFactory(), null, false);
+			unit = compiler.parser.dietParse(sourceUnit, new CompilationResult(sourceUnit, 0, 1, compilerOptions.maxProblemsPerUnit));
+
+			/* Parse the focal body and tell the resolver that the bodies are parsed, so it skips the others. */
+			if(focalPosition >= 0){
+				ScopeChecker.parseBody(compiler.parser, unit, source, focalPosition);
+				unit.bits |= org.eclipse.jdt.internal.compiler.ast.ASTNode.HasAllMethodBodies;
+			}
+
+			unit = compiler.resolve(unit, sourceUnit, true, true, true);
+			if(aborted.getBoolean(compiler)) return null;
+			return (CompilationUnit) convert.invoke(null, unit, source, AST.JLS8, this.options, true, DefaultWorkingCopyOwner.PRIMARY,
+													bindingTables.newInstance(), 0, null, false);
+		}
+		catch(AbortCompilation e){
+			return null;
+		}
+		catch(ReflectiveOperationException e){
+			throw new IllegalStateException("ScopeChecker: could not resolve the AST.", e);
+		}
+		finally{
+			if(unit != null) unit.cleanUp();
+		}
+	}
+
+	/**
+	 * Parses the statements of the method, constructor or initializer that
+	 * contains the position (the same declaration ASTParser's focal position
+	 * selects).
+	 */
+	private static void parseBody(Parser parser, CompilationUnitDeclaration unit, char[] source, int position){
+		if(unit.types == null) return;
+
+		int[] lineEnds = parser.scanner.lineEnds;
+		int linePtr = parser.scanner.linePtr;
+		parser.scanner.setSource(source, unit.compilationResult);
+
+		for(TypeDeclaration type : unit.types){
+			if(ScopeChecker.parseBody(parser, unit, type, position)) break;
+		}
+
+		parser.scanner.lineEnds = lineEnds;
+		parser.scanner.linePtr = linePtr;
+	}
+
+	/**
+	 * Parses the body in the type (or its member types) that contains the position.
+	 * @return True if the type contains the position.
+	 */
+	private static boolean parseBody(Parser parser, CompilationUnitDeclaration unit, TypeDeclaration type, int position){
+		if(position < type.declarationSourceStart || position > type.declarationSourceEnd) return false;
+
+		if(type.memberTypes != null){
+			for(TypeDeclaration member : type.memberTypes){
+				if(ScopeChecker.parseBody(parser, unit, member, position)) return true;
+			}
+		}
+		if(type.methods != null){
+			for(AbstractMethodDeclaration method : type.methods){
+				if(position >= method.declarationSourceStart && position <= method.declarationSourceEnd){
+					method.parseStatements(parser, unit);
+					return true;
+				}
+			}
+		}
+		if(type.fields != null){
+			for(FieldDeclaration field : type.fields){
+				if(position >= field.declarationSourceStart && position <= field.declarationSourceEnd){
+					if(field instanceof org.eclipse.jdt.internal.compiler.ast.Initializer)
+						((org.eclipse.jdt.internal.compiler.ast.Initializer) field).parseStatements(parser, type, unit);
+					return true;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the name environment for the class path and source path (and the
+	 * running VM's boot class path), the same way ASTParser.setEnvironment does.
+	 */
+	@SuppressWarnings("unchecked")
+	private static FileSystem buildEnvironment(String[] classpaths, String[] sourcepaths){
+		Main main = new Main(new PrintWriter(System.out), new PrintWriter(System.err), false, null, null);
+		@SuppressWarnings("rawtypes")
+		ArrayList entries = new ArrayList();
+		Util.collectRunningVMBootclasspath(entries);
+		for(String sourcepath : sourcepaths) main.processPathEntries(Main.DEFAULT_SIZE_CLASSPATH, entries, sourcepath, null, true, false);
+		for(String classpath : classpaths) main.processPathEntries(Main.DEFAULT_SIZE_CLASSPATH, entries, classpath, null, false, false);
+		if(main.pendingErrors != null && !main.pendingErrors.isEmpty()) throw new IllegalStateException("ScopeChecker: invalid class path or source path " + main.pendingErrors);
+
+		FileSystem.Classpath[] paths = (FileSystem.Classpath[]) entries.toArray(new FileSystem.Classpath[entries.size()]);
+		return new FileSystem(paths, null) { };
+	}
+
+	/**
+	 * Finds the outermost method or initializer that contains the position.
+	 * @return The method or initializer or the compilation unit if there is none.
+	 */
+	private static ASTNode getBodyDeclaration(CompilationUnit cu, int position){
+		ASTNode declaration = cu;
+		for(ASTNode node = NodeFinder.perform(cu, position, 0); node != null; node = node.getParent()){
+			if(node instanceof MethodDeclaration || node instanceof Initializer) declaration = node;
+		}
+		return declaration;
+	}
+
+	/**
+	 * Returns true if every name in the node has a binding.
+	 */
+	private static boolean isInScope(ASTNode node){
+		ScopeASTVisitor scopeASTVisitor = new ScopeASTVisitor();
+		node.accept(scopeASTVisitor);
+		return scopeASTVisitor.inScope;
+	}
+
+	/* The error handling and result handling of ASTParser's resolver. */
+	private static final IErrorHandlingPolicy HANDLING_POLICY = new IErrorHandlingPolicy() {
+		@Override
+		public boolean stopOnFirstError() { return false; }
+
+		@Override
+		public boolean proceedOnErrors() { return false; }
+
+		@Override
+		public boolean ignoreAllErrors() { return false; }
+	};
+
+	private static final ICompilerRequestor REQUESTOR = new ICompilerRequestor() {
+		@Override
+		public void acceptResult(CompilationResult result) { }
+	};
+
+	/**
+	 * Checks that each variable, field, method and type has a binding. If
+	 * one of these does not have a binding, we assume it is out of scope.
+	 * This is used for checking to make sure mutated ASTs will be compilable.
+	 * @author qhanam
+	 */
+	private static class ScopeASTVisitor extends ASTVisitor{
+
+		public boolean inScope;
+
+		public ScopeASTVisitor(){
+			this.inScope = true;
+		}
+
+		/**
+		 * Check that each QualifiedName has a binding. This
+		 * will ensure that the fully qualified name gets
+		 * checked instead of it's parts.
+		 */
+		public boolean visit(QualifiedName qn){
+
+			if(!this.inScope) return false; // No point in checking if we're already out of scope
+
+			if(qn.resolveBinding() == null) {
+				this.inScope = false;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Check that each SimpleName ASTNode has a binding. These
+		 * will be variables, fields, methods and types.
+		 */
+		public boolean visit(SimpleName s) {
+
+			if(!this.inScope) return false; // No point in checking if we're already out of scope
+
+			if(s.resolveBinding() == null) {
+				this.inScope = false;
+			}
+
+			return false;
+		}
+	}
+
+}
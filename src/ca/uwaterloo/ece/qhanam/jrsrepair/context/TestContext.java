@@ -1,6 +1,14 @@
 package ca.uwaterloo.ece.qhanam.jrsrepair.context;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor;
+import ca.uwaterloo.ece.qhanam.jrsrepair.SourceStatement;
+import ca.uwaterloo.ece.qhanam.jrsrepair.TestCoverage;
 
 /**
  * TestContext stores the context for running an AbstractTestExecutor.
@@ -10,18 +18,152 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor;
 public class TestContext {
 	
 	private AbstractTestExecutor testExecutor;
+	private AbstractTestExecutor negativeTestExecutor;
+	private List<String> negativeTests;
+	private TestCoverage coverage;
 	
-	public TestContext(AbstractTestExecutor testExecutor){
+	/**
+	 * @param testExecutor Runs all the tests.
+	 * @param negativeTestExecutor Runs only the negative tests (optional, may be null). Used 
+	 * 		  when testExecutor can't select tests.
+	 * @param negativeTests The tests that fail on the faulty program, in the format
+	 * 		  "[class name]#[method name]". Empty if they are not known.
+	 * @param coverage The per-test coverage of the unmodified program (optional, may be null).
+	 */
+	public TestContext(AbstractTestExecutor testExecutor, AbstractTestExecutor negativeTestExecutor, String[] negativeTests, TestCoverage coverage){
 		this.testExecutor = testExecutor;
+		this.negativeTestExecutor = negativeTestExecutor;
+		this.coverage = coverage;
+		this.setNegativeTests(negativeTests);
 	}
 
 	/**
 	 * Runs the the test cases and returns the status.
+	 * 
+	 * The negative (bug-exposing) tests are run first, since most candidates 
+	 * fail them. The rest of the tests are only run if the negative tests pass,
+	 * and the run stops at the first failing test when the executor supports it.
 	 * @return NOT_COMPILED = failed to compile, TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
 	 * @throws Exception
 	 */
 	public AbstractTestExecutor.Status runTests() throws Exception {
-		return this.testExecutor.runTests();
+		AbstractTestExecutor.Status status = this.runNegativeTests();
+		if(status != AbstractTestExecutor.Status.PASSED) return status;
+		return this.testExecutor.runTests(null, true);
+	}
+
+	/**
+	 * Runs the test cases for a program with the given mutated statements and
+	 * returns the status.
+	 * 
+	 * If the per-test coverage is known, the negative tests and the tests that 
+	 * execute a mutated statement are run first. The tests that don't execute
+	 * a mutated statement can't be affected by the mutations, so most candidates
+	 * are rejected without running them. The full suite is only run to validate
+	 * the candidates that pass the selected tests.
+	 * @param mutated The statements that were mutated (in the unmodified program).
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	public AbstractTestExecutor.Status runTests(Collection<SourceStatement> mutated) throws Exception {
+		if(this.coverage == null || !this.testExecutor.supportsTestSelection()) return this.runTests();
+
+		AbstractTestExecutor.Status status = this.runNegativeTests();
+		if(status != AbstractTestExecutor.Status.PASSED) return status;
+
+		/* The negative tests have already passed. */
+		List<String> selected = new ArrayList<String>(this.coverage.getTests(mutated));
+		selected.removeAll(this.negativeTests);
+		if(!selected.isEmpty()) status = this.testExecutor.runTests(selected, true);
+		if(status != AbstractTestExecutor.Status.PASSED) return status;
+
+		/* Final validation. */
+		return this.testExecutor.runTests(null, true);
+	}
+	
+	/**
+	 * Runs the negative tests (if they are known and can be run on their own).
+	 * @return TESTS_FAILED = failed one or more negative tests, TESTS_PASSED = passed all negative tests 
+	 * 		   or the negative tests were not run
+	 * @throws Exception
+	 */
+	private AbstractTestExecutor.Status runNegativeTests() throws Exception {
+		if(!this.negativeTests.isEmpty() && this.testExecutor.supportsTestSelection())
+			return this.testExecutor.runTests(this.negativeTests, true);
+		else if(this.negativeTestExecutor != null) 
+			return this.negativeTestExecutor.runTests(null, true);
+		return AbstractTestExecutor.Status.PASSED;
+	}
+
+	/**
+	 * Runs all the test cases (without stopping at the first failure) and 
+	 * returns the status. Use this when the results of all the tests are 
+	 * needed (see getFailedTests()).
+	 * @return TESTS_FAILED = failed one or more test cases, TESTS_PASSED = passed all test cases
+	 * @throws Exception
+	 */
+	public AbstractTestExecutor.Status runAllTests() throws Exception {
+		return this.testExecutor.runTests(null, false);
+	}
+	
+	/**
+	 * Sets how long the tests may run before they are killed.
+	 * @param timeout The time out in milliseconds.
+	 */
+	public void setTimeout(long timeout){
+		this.testExecutor.setTimeout(timeout);
+		if(this.negativeTestExecutor != null) this.negativeTestExecutor.setTimeout(timeout);
+	}
+	
+	/**
+	 * Returns the number of tests that were run by the last call to runTests().
+	 * @return The number of tests or -1 if it is not known.
+	 */
+	public int getTestsRun(){
+		return this.testExecutor.getTestsRun();
+	}
+	
+	/**
+	 * Returns the tests that failed in the last call to runTests().
+	 * @return The failed tests in the format "[class name]#[method name]".
+	 */
+	public Set<String> getFailedTests(){
+		return this.testExecutor.getFailedTests();
+	}
+	
+	/**
+	 * Returns the tests that fail on the faulty program.
+	 * @return The negative tests in the format "[class name]#[method name]".
+	 */
+	public List<String> getNegativeTests(){
+		return this.negativeTests;
+	}
+	
+	/**
+	 * Sets the tests that fail on the faulty program. runTests() runs these first.
+	 * @param negativeTests The negative tests in the format "[class name]#[method name]".
+	 */
+	public void setNegativeTests(String[] negativeTests){
+		this.negativeTests = new ArrayList<String>();
+		for(String test : negativeTests){
+			if(!test.trim().isEmpty()) this.negativeTests.add(test.trim());
+		}
+	}
+	
+	/**
+	 * Returns true if the test executor runs the tests from class files on disk.
+	 * @return
+	 */
+	public boolean requiresClassFiles(){
+		return this.testExecutor.requiresClassFiles();
+	}
+	
+	/**
+	 * Gives the test executor the class files of the program to test.
+	 * @param classes The bytes of each class, keyed by binary class name.
+	 */
+	public void setCompiledClasses(Map<String, byte[]> classes){
+		this.testExecutor.setCompiledClasses(classes);
 	}
 
 }
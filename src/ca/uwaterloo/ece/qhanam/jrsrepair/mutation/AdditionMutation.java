@@ -7,7 +7,6 @@ import java.util.HashMap;
 
 import org.eclipse.jdt.core.dom.rewrite.*;
 import org.eclipse.jdt.core.dom.*;
-import org.eclipse.text.edits.*;
 
 public class AdditionMutation extends Mutation {
 	
@@ -39,9 +38,7 @@ public class AdditionMutation extends Mutation {
         rewrite.replace(faulty.statement, this.addedBlock, null);
         
         /* Modify the source code file. */
-        this.docrwt.resetModifiedDocument(); // Start with the original document to avoid the AST-doesn't-match-doc error.
-        TextEdit edits = rewrite.rewriteAST(this.docrwt.modifiedDocument, null);
-        edits.apply(this.docrwt.modifiedDocument, TextEdit.NONE);
+        this.rewriteDocument();
 	}
 	
 	/**
@@ -53,9 +50,7 @@ public class AdditionMutation extends Mutation {
         this.rewrite.replace(this.addedBlock, this.faulty.statement, null);
 
 		/* We need to write the undo changes back to the source file because of recursion. */
-        this.docrwt.resetModifiedDocument(); // Start with the original document to avoid the AST-doesn't-match-doc error.
-        TextEdit edits = rewrite.rewriteAST(this.docrwt.modifiedDocument, null);
-        edits.apply(this.docrwt.modifiedDocument, TextEdit.NONE);
+        this.rewriteDocument();
 	}
 	
 	@Override
@@ -6,7 +6,6 @@ import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
 import java.util.HashMap;
 
 import org.eclipse.jdt.core.dom.*;
-import org.eclipse.text.edits.*;
 
 public class DeletionMutation extends Mutation {
 	
@@ -30,9 +29,7 @@ public class DeletionMutation extends Mutation {
         rewrite.replace(faulty.statement, this.emptyBlock, null);
         
         /* Modify the source code file. */
-        this.docrwt.resetModifiedDocument(); // Start with the original document to avoid the AST-doesn't-match-doc error.
-        TextEdit edits = rewrite.rewriteAST(this.docrwt.modifiedDocument, null);
-        edits.apply(this.docrwt.modifiedDocument, TextEdit.NONE);
+        this.rewriteDocument();
 	}
 	
 	/**
@@ -44,9 +41,7 @@ public class DeletionMutation extends Mutation {
         this.rewrite.replace(this.emptyBlock, this.faulty.statement, null);
 
 		/* We need to write the undo changes back to the source file because of recursion. */
-        this.docrwt.resetModifiedDocument(); // Start with the original document to avoid the AST-doesn't-match-doc error.
-        TextEdit edits = rewrite.rewriteAST(this.docrwt.modifiedDocument, null);
-        edits.apply(this.docrwt.modifiedDocument, TextEdit.NONE);
+        this.rewriteDocument();
 	}
 
 	@Override
@@ -3,8 +3,17 @@ package ca.uwaterloo.ece.qhanam.jrsrepair.mutation;
 import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
 import ca.uwaterloo.ece.qhanam.jrsrepair.SourceStatement;
 
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.RangeMarker;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
 
 import java.util.HashMap;
 
@@ -17,6 +26,7 @@ public abstract class Mutation {
 	protected IDocument document;
 	protected ASTRewrite rewrite;
 	private boolean mutated;
+	private int focalPosition;
 	
 	/**
 	 * Creates a new Mutation object.
@@ -32,6 +42,7 @@ public abstract class Mutation {
 		this.faulty = faulty;
 		this.seed = seed;
 		this.mutated = false;
+		this.focalPosition = -1;
 	}
 	
 	/**
@@ -43,6 +54,7 @@ public abstract class Mutation {
 		
 		/* The subclass will perform its mutation. */
 		this.concreteMutate();
+		this.docrwt.taintDocument();
 		
 		this.mutated = true;
 	}
@@ -67,13 +79,14 @@ public abstract class Mutation {
 
 		/* Undo the operation applied to the AST. */
 		this.concreteUndo();
+		this.docrwt.taintDocument();
 		
 		/* Set the status to not mutated. */
 		this.mutated = false;
 		
 		/* Relinquish use of the statements. */
-		this.faulty.inUse = false;
-		if(this.seed != null) this.seed.inUse = false;
+		this.faulty.release();
+		if(this.seed != null) this.seed.release();
 	}
 
 	/**
@@ -84,6 +97,79 @@ public abstract class Mutation {
 	 */
 	protected abstract void concreteUndo() throws Exception;
 	
+	/**
+	 * Writes the changes to the AST to the modified document. The modified
+	 * document is rebuilt from the original document because the AST always
+	 * corresponds to the original document.
+	 * 
+	 * Also computes the focal position (see getFocalPosition()).
+	 * @throws Exception
+	 */
+	protected void rewriteDocument() throws Exception {
+        this.docrwt.resetModifiedDocument(); // Start with the original document to avoid the AST-doesn't-match-doc error.
+        TextEdit edits = rewrite.rewriteAST(this.docrwt.modifiedDocument, null);
+        this.focalPosition = this.getFocalPosition(edits);
+        edits.apply(this.docrwt.modifiedDocument, TextEdit.NONE);
+	}
+	
+	/**
+	 * Returns the position of the mutated method (or initializer) body in the
+	 * modified document. The scope check only needs to resolve this body.
+	 * @return The position or -1 if it is not known.
+	 */
+	public int getFocalPosition(){
+		return this.focalPosition;
+	}
+
+	/**
+	 * Finds the position of the body that contains the faulty statement in
+	 * the modified document. The edits have not been applied yet, so their
+	 * offsets are in the original document.
+	 * @param edits The edits that create the modified document.
+	 * @return The position or -1 if it is not known.
+	 */
+	private int getFocalPosition(TextEdit edits){
+		/* Find the outermost method or initializer, since local and anonymous 
+		 * classes are resolved with the method that declares them. */
+		ASTNode body = null;
+		for(ASTNode node = this.faulty.statement; node != null; node = node.getParent()){
+			if(node instanceof MethodDeclaration) body = ((MethodDeclaration) node).getBody();
+			else if(node instanceof Initializer) body = ((Initializer) node).getBody();
+		}
+		if(body == null) return -1;
+		
+		/* Statement edits never cross the start of the body, so shift it by the edits before it.
+		 * The focal position is just after the opening brace, since JDT's body range starts there. */
+		int shift = this.getShift(edits, body.getStartPosition());
+		if(shift == Integer.MIN_VALUE) return -1;
+		return body.getStartPosition() + shift + 1;
+	}
+
+	/**
+	 * Computes how much the edits that come before the offset change its position.
+	 * @return The change in position or Integer.MIN_VALUE if it can't be computed.
+	 */
+	private int getShift(TextEdit edit, int offset){
+		if(edit.getOffset() >= offset && !(edit instanceof InsertEdit && edit.getOffset() == offset)) return 0;
+
+		if(edit instanceof MultiTextEdit || edit instanceof RangeMarker){
+			int shift = 0;
+			for(TextEdit child : edit.getChildren()){
+				int childShift = this.getShift(child, offset);
+				if(childShift == Integer.MIN_VALUE) return Integer.MIN_VALUE;
+				shift += childShift;
+			}
+			return shift;
+		}
+
+		/* Leaf edits must end before the offset. */
+		if(edit.getExclusiveEnd() > offset || edit.hasChildren()) return Integer.MIN_VALUE;
+		if(edit instanceof ReplaceEdit) return ((ReplaceEdit) edit).getText().length() - edit.getLength();
+		if(edit instanceof InsertEdit) return ((InsertEdit) edit).getText().length();
+		if(edit instanceof DeleteEdit) return -edit.getLength();
+		return Integer.MIN_VALUE;
+	}
+	
 	/**
 	 * Returns the document modified by the mutation.
 	 * @return
@@ -93,6 +179,22 @@ public abstract class Mutation {
         return this.docrwt;
 	}
 	
+	/**
+	 * Returns the faulty statement that is mutated.
+	 * @return
+	 */
+	public SourceStatement getFaulty(){
+		return this.faulty;
+	}
+	
+	/**
+	 * Returns the seed statement used by the mutation.
+	 * @return The seed statement or null if the mutation does not use one.
+	 */
+	public SourceStatement getSeed(){
+		return this.seed;
+	}
+	
 	/**
 	 * Returns true if a mutation operation has been applied.
 	 */
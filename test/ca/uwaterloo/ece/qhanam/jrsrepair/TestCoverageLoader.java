@@ -0,0 +1,294 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/* CoverageLoader is package private, so this test is in its package. */
+public class TestCoverageLoader extends TestCase {
+
+	/* Chunk sizes that split most lines, and one that reads the file in one chunk. */
+	private static final int[] CHUNK_SIZES = { 1, 2, 3, 7, 16, 64, 1 << 20 };
+
+	@Test
+	public void testChunkBoundaries () throws Exception {
+
+		/* Lines of different lengths and classes, so each chunk size splits them differently. */
+		StringBuilder text = new StringBuilder();
+		for(int line = 1; line <= 200; line++) text.append("p.q" + (line % 3) + ":C" + (line % 7) + ":" + line + ":" + (line % 11) + "." + line + "\n");
+
+		for(int chunkSize : CHUNK_SIZES){
+			Read read = read(text.toString(), chunkSize);
+			Assert.assertEquals("chunk size " + chunkSize, 200, read.coverage.size());
+			Assert.assertEquals("", read.errors);
+			for(int line = 1; line <= 200; line++){
+				int classId = read.coverage.getClassId("p.q" + (line % 3), "C" + (line % 7));
+				Assert.assertEquals("chunk size " + chunkSize, Double.parseDouble((line % 11) + "." + line), read.coverage.getWeight(classId, line), 0);
+			}
+		}
+
+	}
+
+	@Test
+	public void testLineEndings () throws Exception {
+
+		/* CRLF line breaks, a missing final line break and empty lines (which are not errors). */
+		String text = "\r\np:A:1:0.5\r\n\r\n\np:A:2:0.25\r\n\np:B:3:1";
+		for(int chunkSize : CHUNK_SIZES){
+			Read read = read(text, chunkSize);
+			Assert.assertEquals("chunk size " + chunkSize, "", read.errors);
+			Assert.assertEquals(3, read.coverage.size());
+			Assert.assertEquals(0.5, read.coverage.getWeight(read.coverage.getClassId("p", "A"), 1), 0);
+			Assert.assertEquals(0.25, read.coverage.getWeight(read.coverage.getClassId("p", "A"), 2), 0);
+			Assert.assertEquals(1, read.coverage.getWeight(read.coverage.getClassId("p", "B"), 3), 0);
+		}
+
+	}
+
+	@Test
+	public void testMalformedLines () throws Exception {
+
+		/* Missing and extra fields, bad line numbers and bad weights, between valid lines. */
+		String[] malformed = { "p:A:1", "p:A:1:0.5:x", "p:A:x:0.5", "p:A::0.5", "p:A:1234567890:0.5", "p:A:-1:0.5", "p:A:1:", "p:A:1:.", "p:A:1:x" };
+		StringBuilder text = new StringBuilder("p:A:100:1\n");
+		for(String line : malformed) text.append(line).append("\r\n");
+		text.append("p:A:101:2\n");
+
+		for(int chunkSize : CHUNK_SIZES){
+			Read read = read(text.toString(), chunkSize);
+			Assert.assertEquals("chunk size " + chunkSize, 2, read.coverage.size());
+			Assert.assertTrue(read.errors, read.errors.startsWith("Skipped " + malformed.length + " malformed lines"));
+
+			/* The errors are reported with their line numbers in the file. */
+			for(int i = 0; i < malformed.length; i++) Assert.assertTrue(read.errors, read.errors.contains("  line " + (i + 2) + ": " + malformed[i] + System.lineSeparator()));
+		}
+
+	}
+
+	@Test
+	public void testLongLines () throws Exception {
+
+		/* A line that is longer than the longest line that is read, whose start parses as a valid line. */
+		StringBuilder longLine = new StringBuilder("p:A:2:0.5");
+		while(longLine.length() < 100 * 1024) longLine.append('0');
+		String text = "p:A:1:1\n" + longLine + "\np:A:3:1\n";
+
+		for(int chunkSize : new int[] { 16, 64, 1 << 20 }){
+			Read read = read(text, chunkSize);
+			Assert.assertEquals("chunk size " + chunkSize, 2, read.coverage.size());
+			Assert.assertTrue(Double.isNaN(read.coverage.getWeight(read.coverage.getClassId("p", "A"), 2)));
+			Assert.assertEquals(1, read.coverage.getWeight(read.coverage.getClassId("p", "A"), 3), 0);
+			Assert.assertTrue(read.errors, read.errors.startsWith("Skipped 1 malformed lines"));
+			Assert.assertTrue(read.errors, read.errors.contains("  line 2: p:A:2:0.5000"));
+		}
+
+		/* The last line, without a line break. */
+		Read read = read("p:A:1:1\n" + longLine, 16);
+		Assert.assertEquals(1, read.coverage.size());
+		Assert.assertTrue(read.errors, read.errors.startsWith("Skipped 1 malformed lines"));
+
+	}
+
+	@Test
+	public void testWeightsMatchParseDouble () throws Exception {
+
+		/* Weights for the fast path (few digits) and the slow path (many digits, exponents). */
+		String[] weights = { "0", "1", "0.1", "0.3", "1.", "00.5", "123.456", "0.000001", "0.1234567890123456789012",
+				"999999999999999", "9999999999999999", "0.12345678901234567", "1e-3", "2.5E2", "Infinity", "0x1p3" };
+		Random random = new Random(0);
+		String[] randomWeights = new String[200];
+		for(int i = 0; i < randomWeights.length; i++){
+			String integer = Long.toString(random.nextInt(1000));
+			StringBuilder decimals = new StringBuilder();
+			for(int digits = random.nextInt(25); digits > 0; digits--) decimals.append(random.nextInt(10));
+			randomWeights[i] = integer + "." + decimals;
+		}
+
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < weights.length; i++) text.append("p:A:" + i + ":" + weights[i] + "\n");
+		for(int i = 0; i < randomWeights.length; i++) text.append("p:B:" + i + ":" + randomWeights[i] + "\n");
+
+		Read read = read(text.toString(), 1 << 20);
+		Assert.assertEquals("", read.errors);
+		int a = read.coverage.getClassId("p", "A");
+		int b = read.coverage.getClassId("p", "B");
+		for(int i = 0; i < weights.length; i++) Assert.assertEquals(weights[i], Double.doubleToLongBits(Double.parseDouble(weights[i])), Double.doubleToLongBits(read.coverage.getWeight(a, i)));
+		for(int i = 0; i < randomWeights.length; i++) Assert.assertEquals(randomWeights[i], Double.doubleToLongBits(Double.parseDouble(randomWeights[i])), Double.doubleToLongBits(read.coverage.getWeight(b, i)));
+
+	}
+
+	@Test
+	public void testDuplicateLinesKeepTheLastWeight () throws Exception {
+
+		/* The same line many times, so its copies are in different chunks. */
+		StringBuilder text = new StringBuilder();
+		for(int i = 1; i <= 50; i++) text.append("p:A:7:" + i + "\np:B:" + i + ":1\n");
+
+		for(int chunkSize : CHUNK_SIZES){
+			Read read = read(text.toString(), chunkSize);
+			Assert.assertEquals("chunk size " + chunkSize, 51, read.coverage.size());
+			Assert.assertEquals("chunk size " + chunkSize, 50, read.coverage.getWeight(read.coverage.getClassId("p", "A"), 7), 0);
+		}
+
+	}
+
+	@Test
+	public void testJaCoCoXML () throws Exception {
+
+		String report = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+				+ "<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.1//EN\" \"report.dtd\">"
+				+ "<report name=\"r\"><package name=\"p/q\">"
+				+ "<class name=\"p/q/A\" sourcefilename=\"A.java\"><method name=\"m\" desc=\"()V\" line=\"3\"><counter type=\"LINE\" missed=\"0\" covered=\"1\"/></method></class>"
+				+ "<sourcefile name=\"A.java\"><line nr=\"3\" mi=\"0\" ci=\"2\" mb=\"0\" cb=\"0\"/><line nr=\"4\" mi=\"2\" ci=\"0\" mb=\"0\" cb=\"0\"/><line nr=\"5\" mi=\"1\" ci=\"1\" mb=\"1\" cb=\"1\"/></sourcefile>"
+				+ "</package><package name=\"r\"><sourcefile name=\"B.java\"><line nr=\"9\" mi=\"0\" ci=\"1\" mb=\"0\" cb=\"0\"/></sourcefile></package></report>";
+
+		File file = File.createTempFile("coverage", ".xml");
+		try{
+			Files.write(file.toPath(), report.getBytes("UTF-8"));
+			LineCoverage coverage = new LineCoverage(file);
+
+			/* Lines with covered instructions (fully or partly) have weight 1. */
+			Assert.assertEquals(3, coverage.size());
+			Assert.assertEquals(1, coverage.contains(new LCNode("p.q", "A", 3)), 0);
+			Assert.assertNull(coverage.contains(new LCNode("p.q", "A", 4)));
+			Assert.assertEquals(1, coverage.contains(new LCNode("p.q", "A", 5)), 0);
+			Assert.assertEquals(1, coverage.contains(new LCNode("r", "B", 9)), 0);
+		}
+		finally{
+			file.delete();
+		}
+
+	}
+
+	@Test
+	public void testJaCoCoExec () throws Exception {
+
+		File directory = Files.createTempDirectory("coverage").toFile();
+		try{
+			/* Compile a class (the line numbers are in the comments). */
+			File packageDirectory = new File(directory, "p");
+			packageDirectory.mkdir();
+			File sourceFile = new File(packageDirectory, "A.java");
+			Files.write(sourceFile.toPath(), ("package p;\n"							// 1
+					+ "public class A {\n"												// 2
+					+ "	public static int m(int x) {\n"									// 3
+					+ "		if(x > 0) {\n"												// 4
+					+ "			return 1;\n"											// 5
+					+ "		}\n"														// 6
+					+ "		return 2;\n"												// 7
+					+ "	}\n"															// 8
+					+ "}\n").getBytes("UTF-8"));
+			JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+			Assert.assertEquals(0, compiler.run(null, null, null, "-d", directory.getPath(), sourceFile.getPath()));
+			sourceFile.delete();
+
+			/* Run m(1) on an instrumented copy of the class and write the execution data. */
+			LoggerRuntime runtime = new LoggerRuntime();
+			final byte[] instrumented = new Instrumenter(runtime).instrument(Files.readAllBytes(new File(packageDirectory, "A.class").toPath()), "p.A");
+			RuntimeData data = new RuntimeData();
+			runtime.startup(data);
+			try{
+				ClassLoader loader = new ClassLoader(TestCoverageLoader.class.getClassLoader()) {
+					@Override
+					protected Class<?> findClass(String name) throws ClassNotFoundException {
+						if(!name.equals("p.A")) throw new ClassNotFoundException(name);
+						return this.defineClass(name, instrumented, 0, instrumented.length);
+					}
+				};
+				Method m = loader.loadClass("p.A").getMethod("m", int.class);
+				Assert.assertEquals(1, m.invoke(null, 1));
+			}
+			finally{
+				runtime.shutdown();
+			}
+
+			ExecutionDataStore executionData = new ExecutionDataStore();
+			data.collect(executionData, new SessionInfoStore(), false);
+			File file = new File(directory, "coverage.exec");
+			FileOutputStream out = new FileOutputStream(file);
+			try{
+				ExecutionDataWriter writer = new ExecutionDataWriter(out);
+				executionData.accept(writer);
+			}
+			finally{
+				out.close();
+			}
+
+			/* The lines that ran: the class (its constructor is not run), the branch and the first return. */
+			LineCoverage coverage = new LineCoverage(file, directory);
+			Assert.assertEquals(2, coverage.size());
+			Assert.assertEquals(1, coverage.contains(new LCNode("p", "A", 4)), 0);
+			Assert.assertEquals(1, coverage.contains(new LCNode("p", "A", 5)), 0);
+			Assert.assertNull(coverage.contains(new LCNode("p", "A", 2)));
+			Assert.assertNull(coverage.contains(new LCNode("p", "A", 7)));
+
+			/* The class files are needed to read execution data. */
+			try{
+				new LineCoverage(file);
+				Assert.fail("Read execution data without the class files.");
+			}
+			catch(Exception expected){
+				Assert.assertTrue(expected.getMessage().contains("coverage_classes"));
+			}
+		}
+		finally{
+			TestCoverageLoader.delete(directory);
+		}
+
+	}
+
+	/**
+	 * Reads a text coverage file with the given chunk size.
+	 */
+	private static Read read(String text, int chunkSize) throws Exception {
+		File empty = File.createTempFile("coverage", ".txt");
+		File file = File.createTempFile("coverage", ".txt");
+		PrintStream err = System.err;
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		try{
+			Files.write(file.toPath(), text.getBytes("UTF-8"));
+			Read read = new Read();
+			read.coverage = new LineCoverage(empty);
+			System.setErr(new PrintStream(errors, true, "UTF-8"));
+			CoverageLoader.readText(file, read.coverage, chunkSize);
+			read.errors = errors.toString("UTF-8");
+			return read;
+		}
+		finally{
+			System.setErr(err);
+			empty.delete();
+			file.delete();
+		}
+	}
+
+	private static void delete(File file){
+		File[] files = file.listFiles();
+		if(files != null) for(File child : files) TestCoverageLoader.delete(child);
+		file.delete();
+	}
+
+	/* The coverage that was read and what was printed to System.err. */
+	private static class Read {
+		LineCoverage coverage;
+		String errors;
+	}
+
+}
@@ -0,0 +1,119 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/* CoverageTable is package private, so this test is in its package. */
+public class TestCoverageTable extends TestCase {
+
+	@Test
+	public void testGrowth () throws Exception {
+
+		/* Many lines of a few classes, so the table grows several times. */
+		CoverageTable table = new CoverageTable();
+		for(int classId = 0; classId < 4; classId++){
+			for(int line = 0; line < 1000; line++) table.put(CoverageTable.key(classId, line), classId * 1000 + line);
+		}
+		Assert.assertEquals(4000, table.size());
+		for(int classId = 0; classId < 4; classId++){
+			for(int line = 0; line < 1000; line++) Assert.assertEquals(classId * 1000 + line, table.get(CoverageTable.key(classId, line)), 0);
+		}
+
+		/* A table that is sized for its lines holds the same lines. */
+		CoverageTable sized = new CoverageTable(4000);
+		for(int line = 0; line < 4000; line++) sized.put(CoverageTable.key(0, line), line);
+		Assert.assertEquals(4000, sized.size());
+		Assert.assertEquals(3999, sized.get(CoverageTable.key(0, 3999)), 0);
+
+	}
+
+	@Test
+	public void testOverwrite () throws Exception {
+
+		CoverageTable table = new CoverageTable();
+		table.put(CoverageTable.key(0, 10), 0.5);
+		table.put(CoverageTable.key(0, 10), 0.25);
+		Assert.assertEquals(1, table.size());
+		Assert.assertEquals(0.25, table.get(CoverageTable.key(0, 10)), 0);
+
+		/* Overwriting after the table grew. */
+		for(int line = 0; line < 100; line++) table.put(CoverageTable.key(0, line), line);
+		table.put(CoverageTable.key(0, 10), -1);
+		Assert.assertEquals(100, table.size());
+		Assert.assertEquals(-1, table.get(CoverageTable.key(0, 10)), 0);
+
+		try{
+			table.put(-1L, 1);
+			Assert.fail("Stored a negative key.");
+		}
+		catch(IllegalArgumentException expected){ }
+
+	}
+
+	@Test
+	public void testMisses () throws Exception {
+
+		CoverageTable table = new CoverageTable();
+		Assert.assertTrue(Double.isNaN(table.get(CoverageTable.key(0, 1))));
+
+		/* A full probe sequence that doesn't have the key, before and after growing. */
+		for(int line = 0; line < 8; line++) table.put(CoverageTable.key(0, line), line);
+		Assert.assertTrue(Double.isNaN(table.get(CoverageTable.key(0, 8))));
+		for(int line = 8; line < 100; line++) table.put(CoverageTable.key(0, line), line);
+		Assert.assertTrue(Double.isNaN(table.get(CoverageTable.key(0, 100))));
+		Assert.assertTrue(Double.isNaN(table.get(CoverageTable.key(1, 5))));
+
+	}
+
+	@Test
+	public void testClassIds () throws Exception {
+
+		/* The same line of different classes are different keys. */
+		CoverageTable table = new CoverageTable();
+		table.put(CoverageTable.key(0, 7), 1);
+		table.put(CoverageTable.key(1, 7), 2);
+		table.put(CoverageTable.key(Integer.MAX_VALUE, 7), 3);
+		table.put(CoverageTable.key(1, Integer.MAX_VALUE), 4);
+		Assert.assertEquals(4, table.size());
+		Assert.assertEquals(1, table.get(CoverageTable.key(0, 7)), 0);
+		Assert.assertEquals(2, table.get(CoverageTable.key(1, 7)), 0);
+		Assert.assertEquals(3, table.get(CoverageTable.key(Integer.MAX_VALUE, 7)), 0);
+		Assert.assertEquals(4, table.get(CoverageTable.key(1, Integer.MAX_VALUE)), 0);
+		Assert.assertTrue(Double.isNaN(table.get(CoverageTable.key(2, 7))));
+
+	}
+
+	@Test
+	public void testLineCoverageLookups () throws Exception {
+
+		File file = File.createTempFile("coverage", ".txt");
+		try{
+			Files.write(file.toPath(), "p.q:A:3:0.5\np.q:B:3:0.25\nr:A:4:1\n".getBytes("UTF-8"));
+			LineCoverage coverage = new LineCoverage(file);
+			Assert.assertEquals(3, coverage.size());
+
+			/* Lines of the second and third classes (class ids > 0). */
+			Assert.assertEquals(0.5, coverage.contains(new LCNode("p.q", "A", 3)), 0);
+			Assert.assertEquals(0.25, coverage.contains(new LCNode("p.q", "B", 3)), 0);
+			Assert.assertEquals(1, coverage.contains(new LCNode("r", "A", 4)), 0);
+			Assert.assertEquals(0.25, coverage.getWeight(coverage.getClassId("p.q", "B"), 3), 0);
+
+			/* Misses: another line, class or package. */
+			Assert.assertNull(coverage.contains(new LCNode("p.q", "A", 4)));
+			Assert.assertNull(coverage.contains(new LCNode("p.q", "C", 3)));
+			Assert.assertNull(coverage.contains(new LCNode("r", "B", 4)));
+			Assert.assertEquals(-1, coverage.getClassId("s", "A"));
+			Assert.assertTrue(Double.isNaN(coverage.getWeight(-1, 3)));
+		}
+		finally{
+			file.delete();
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+/* WeightedSampler is package private, so this test is in its package. */
+public class TestWeightedSampler extends TestCase {
+
+	@Test
+	public void testProportionalSelection () throws Exception {
+
+		WeightedSampler sampler = new WeightedSampler(new double[] { 1, 0, 3, 4 }, 4);
+		int[] picked = new int[4];
+		Random random = new Random(0);
+		for(int i = 0; i < 8000; i++) picked[sampler.sample(random)]++;
+		Assert.assertEquals(0, picked[1]);
+		Assert.assertTrue(picked[0] > 800 && picked[0] < 1200);
+		Assert.assertTrue(picked[2] > 2700 && picked[2] < 3300);
+
+		/* Removed indices are not selected, and restored ones are. */
+		sampler.remove(2);
+		sampler.remove(3);
+		for(int i = 0; i < 100; i++) Assert.assertEquals(0, sampler.sample(random));
+		sampler.remove(0);
+		Assert.assertEquals(-1, sampler.sample(random));
+		sampler.restore(3);
+		Assert.assertEquals(3, sampler.sample(random));
+
+	}
+
+	@Test
+	public void testRemovingALargeWeight () throws Exception {
+
+		/* Removing 1e20 cancels the other weights in the available weight (1e20 + 1 == 1e20). */
+		WeightedSampler sampler = new WeightedSampler(new double[] { 1e20, 1 }, 2);
+		sampler.remove(0);
+		Random random = new Random(0);
+		for(int i = 0; i < 100; i++) Assert.assertEquals(1, sampler.sample(random));
+
+		/* The weights that are left keep their proportions. */
+		sampler = new WeightedSampler(new double[] { 1, 1e20, 3 }, 3);
+		sampler.remove(1);
+		int[] picked = new int[3];
+		for(int i = 0; i < 4000; i++) picked[sampler.sample(random)]++;
+		Assert.assertEquals(0, picked[1]);
+		Assert.assertTrue(picked[0] > 800 && picked[0] < 1200);
+
+		/* Restoring and removing again. */
+		sampler.restore(1);
+		Assert.assertEquals(1, sampler.sample(random));
+		sampler.remove(1);
+		sampler.remove(2);
+		for(int i = 0; i < 100; i++) Assert.assertEquals(0, sampler.sample(random));
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor.Status;
+import ca.uwaterloo.ece.qhanam.jrsrepair.BashTestExecutor;
+import junit.framework.TestCase;
+
+public class TestBashTestExecutor extends TestCase {
+
+	@Test
+	public void testOnlyFailuresDecideTheVerdict () throws Exception {
+
+		/* A test that prints lines that look like a failure, but the tests pass. */
+		String output = "echo 'Errors: 2'\necho '1) test(p.ATest)'\necho 'OK (3 tests)'\n";
+		Assert.assertEquals(Status.PASSED, run(output, false));
+
+		/* With fail-fast, those lines stop the run early. */
+		Assert.assertEquals(Status.FAILED, run(output, true));
+
+		/* JUnit's "FAILURES!!!" decides the verdict. */
+		Assert.assertEquals(Status.FAILED, run("echo 'Tests run: 3,  Failures: 1'\necho 'FAILURES!!!'\n", false));
+
+	}
+
+	/**
+	 * Runs a bash script with the given body.
+	 */
+	private static Status run(String body, boolean failFast) throws Exception {
+		File directory = Files.createTempDirectory("bash").toFile();
+		File script = new File(directory, "test.sh");
+		try{
+			Files.write(script.toPath(), ("#!/bin/sh\n" + body).getBytes("UTF-8"));
+			script.setExecutable(true);
+			return new BashTestExecutor(directory, script.getPath()).runTests(null, failFast);
+		}
+		finally{
+			script.delete();
+			directory.delete();
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.ClassSignature;
+import junit.framework.TestCase;
+
+public class TestClassSignature extends TestCase {
+
+	private static final String ORIGINAL = "public class A { public static final int K = 1; protected int f; "
+			+ "public int m(int x){ return x + 1; } private void p(){ } }";
+
+	@Test
+	public void testBodyChangesKeepTheSignature () throws Exception {
+
+		String original = signature(ORIGINAL);
+
+		/* A different method body, and private members (which other classes can't use). */
+		Assert.assertEquals(original, signature(ORIGINAL.replace("return x + 1;", "int y = x * 2; return y - x;")));
+		Assert.assertEquals(original, signature(ORIGINAL.replace("private void p(){ }", "private void p(){ } private int q;")));
+		Assert.assertEquals(original, signature(ORIGINAL.replace("private void p(){ }", "")));
+
+	}
+
+	@Test
+	public void testDeclarationChangesChangeTheSignature () throws Exception {
+
+		String original = signature(ORIGINAL);
+
+		/* Added and removed members. */
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("private void p(){ }", "public void p(){ }"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("protected int f; ", ""))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("private void p(){ }", "public void n(){ }"))));
+
+		/* Modifiers, types and constant values. */
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("protected int f;", "public int f;"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("public int m", "public final int m"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("public class A", "public final class A"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("int m(int x)", "int m(long x)").replace("return x + 1;", "return (int) x;"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("K = 1", "K = 2"))));
+		Assert.assertFalse(original.equals(signature(ORIGINAL.replace("public int m(int x){", "public int m(int x) throws Exception {"))));
+
+	}
+
+	/**
+	 * Compiles the source of class A and returns the signature of A.class.
+	 */
+	private static String signature(String source) throws Exception {
+		File directory = Files.createTempDirectory("signature").toFile();
+		File sourceFile = new File(directory, "A.java");
+		Files.write(sourceFile.toPath(), source.getBytes("UTF-8"));
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assert.assertEquals(0, compiler.run(null, null, null, "-d", directory.getPath(), sourceFile.getPath()));
+
+		byte[] classFile = Files.readAllBytes(new File(directory, "A.class").toPath());
+		for(File file : directory.listFiles()) file.delete();
+		directory.delete();
+		return ClassSignature.of(classFile);
+	}
+
+}
@@ -0,0 +1,96 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.GeneticRepair;
+import junit.framework.TestCase;
+
+public class TestGeneticRepair extends TestCase {
+
+	@Test
+	public void testTournamentSelection () throws Exception {
+
+		double[] fitness = new double[] { 1.0, 5.0, 3.0, 5.0, 0.0 };
+
+		/* A tournament of one is a uniform pick. */
+		int[] picked = new int[fitness.length];
+		Random random = new Random(1);
+		for(int i = 0; i < 5000; i++) picked[GeneticRepair.select(fitness, 1, random)]++;
+		for(int count : picked) Assert.assertTrue(count > 800 && count < 1200);
+
+		/* The winner is the fittest of the picked variants (the first picked of equals). */
+		for(int seed = 0; seed < 100; seed++){
+			Random draws = new Random(seed);
+			int first = draws.nextInt(fitness.length);
+			int second = draws.nextInt(fitness.length);
+			int expected = fitness[second] > fitness[first] ? second : first;
+			Assert.assertEquals(expected, GeneticRepair.select(fitness, 2, new Random(seed)));
+		}
+
+		/* Larger tournaments favour fitter variants; the least fit can't win a tournament with a fitter variant. */
+		picked = new int[fitness.length];
+		random = new Random(2);
+		for(int i = 0; i < 5000; i++) picked[GeneticRepair.select(fitness, 3, random)]++;
+		Assert.assertTrue(picked[1] + picked[3] > picked[0] + picked[2] + picked[4]);
+		Assert.assertTrue(picked[4] < 100);
+
+	}
+
+	@Test
+	public void testCrossover () throws Exception {
+
+		List<String> first = Arrays.asList("a1", "a2", "a3");
+		List<String> second = Arrays.asList("b1", "b2");
+
+		for(int seed = 0; seed < 100; seed++){
+			Random draws = new Random(seed);
+			int firstCut = draws.nextInt(first.size() + 1);
+			int secondCut = draws.nextInt(second.size() + 1);
+
+			List<List<String>> children = GeneticRepair.crossover(first, second, new Random(seed));
+
+			/* Each child is one parent's head followed by the other parent's tail. */
+			Assert.assertEquals(first.subList(0, firstCut), children.get(0).subList(0, firstCut));
+			Assert.assertEquals(second.subList(secondCut, second.size()), children.get(0).subList(firstCut, children.get(0).size()));
+			Assert.assertEquals(second.subList(0, secondCut), children.get(1).subList(0, secondCut));
+			Assert.assertEquals(first.subList(firstCut, first.size()), children.get(1).subList(secondCut, children.get(1).size()));
+
+			/* No mutation is lost or duplicated. */
+			Assert.assertEquals(first.size() + second.size(), children.get(0).size() + children.get(1).size());
+		}
+
+		/* The parents are not changed, and empty parents give empty children. */
+		Assert.assertEquals(Arrays.asList("a1", "a2", "a3"), first);
+		List<List<String>> children = GeneticRepair.crossover(Arrays.<String>asList(), Arrays.<String>asList(), new Random(0));
+		Assert.assertTrue(children.get(0).isEmpty() && children.get(1).isEmpty());
+
+	}
+
+	@Test
+	public void testFitnessWeighting () throws Exception {
+
+		HashSet<String> negative = new HashSet<String>(Arrays.asList("n1", "n2"));
+
+		/* 10 tests: 8 positive, 2 negative. */
+		Assert.assertEquals(8 * 1.0 + 2 * 10.0, GeneticRepair.getFitness(10, new HashSet<String>(), negative, 1.0, 10.0), 0);
+		Assert.assertEquals(8 * 1.0 + 1 * 10.0, GeneticRepair.getFitness(10, new HashSet<String>(Arrays.asList("n1")), negative, 1.0, 10.0), 0);
+		Assert.assertEquals(7 * 1.0 + 0 * 10.0, GeneticRepair.getFitness(10, new HashSet<String>(Arrays.asList("n1", "n2", "p1")), negative, 1.0, 10.0), 0);
+
+		/* Passing a negative test is worth more than passing a positive test. */
+		double negativeFixed = GeneticRepair.getFitness(10, new HashSet<String>(Arrays.asList("n2", "p1")), negative, 1.0, 10.0);
+		double positiveFixed = GeneticRepair.getFitness(10, new HashSet<String>(Arrays.asList("n1", "n2")), negative, 1.0, 10.0);
+		Assert.assertTrue(negativeFixed > positiveFixed);
+
+		/* Unknown results and runs where more tests failed than were counted. */
+		Assert.assertEquals(0, GeneticRepair.getFitness(-1, new HashSet<String>(), negative, 1.0, 10.0), 0);
+		Assert.assertEquals(0, GeneticRepair.getFitness(1, new HashSet<String>(Arrays.asList("n1", "n2", "p1")), negative, 1.0, 10.0), 0);
+
+	}
+
+}
@@ -0,0 +1,45 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.LogWriter;
+import junit.framework.TestCase;
+
+public class TestLogWriter extends TestCase {
+
+	@Test
+	public void testFailedFileDoesNotDropTheOthers () throws Exception {
+
+		File directory = Files.createTempDirectory("logs").toFile();
+		try{
+			/* "patches" is a directory, so its records can't be written. */
+			new File(directory, "patches").mkdir();
+			LogWriter writer = new LogWriter(directory);
+			writer.append("mutation-log", "first\n");
+			writer.append("patches", "lost\n");
+			writer.append("compile-log", "second\n");
+			writer.append("mutation-log", "third\n");
+
+			try{
+				writer.close();
+				Assert.fail("Closed without reporting the error.");
+			}
+			catch(IOException expected){ }
+
+			/* The files before and after the one that failed are written, in order. */
+			Assert.assertEquals("first\nthird\n", new String(Files.readAllBytes(new File(directory, "mutation-log").toPath()), "UTF-8"));
+			Assert.assertEquals("second\n", new String(Files.readAllBytes(new File(directory, "compile-log").toPath()), "UTF-8"));
+		}
+		finally{
+			for(File file : directory.listFiles()) file.delete();
+			directory.delete();
+		}
+
+	}
+
+}
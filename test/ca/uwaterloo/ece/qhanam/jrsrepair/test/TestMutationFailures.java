@@ -0,0 +1,62 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.MutationFailures;
+import junit.framework.TestCase;
+
+public class TestMutationFailures extends TestCase {
+
+	private static final int WINDOW = MutationFailures.WINDOW;
+
+	@Test
+	public void testCandidatesOnlySeeFailuresFarEnoughBefore () throws Exception {
+
+		MutationFailures failures = new MutationFailures();
+		failures.add(3, 42L);
+
+		Assert.assertFalse(failures.contains(3, 42L));
+		Assert.assertFalse(failures.contains(3 + WINDOW - 1, 42L));
+		Assert.assertTrue(failures.contains(3 + WINDOW, 42L));
+		Assert.assertFalse(failures.contains(3 + WINDOW, 43L));
+
+		/* The first candidate that recorded the failure counts, whatever order they are recorded in. */
+		failures.add(10, 7L);
+		failures.add(2, 7L);
+		failures.add(5, 7L);
+		Assert.assertTrue(failures.contains(2 + WINDOW, 7L));
+
+	}
+
+	@Test
+	public void testCandidatesWaitForTheCandidatesTheySee () throws Exception {
+
+		final MutationFailures failures = new MutationFailures();
+
+		/* The first candidates don't see any others. */
+		failures.await(WINDOW);
+
+		/* Candidate WINDOW + 2 waits until candidates 1 and 2 have finished, in any order. */
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try{
+					failures.await(WINDOW + 2);
+				}
+				catch(InterruptedException e){ }
+			}
+		});
+		waiter.start();
+
+		failures.finish(2);
+		waiter.join(200);
+		Assert.assertTrue(waiter.isAlive());
+
+		failures.finish(1);
+		waiter.join(5000);
+		Assert.assertFalse(waiter.isAlive());
+
+	}
+
+}
@@ -0,0 +1,92 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor;
+import ca.uwaterloo.ece.qhanam.jrsrepair.ProcessSupervisor;
+import junit.framework.TestCase;
+
+public class TestProcessSupervisor extends TestCase {
+
+	@Test
+	public void testListenerExceptionEndsOnlyItsProcess () throws Exception {
+
+		/* A listener that throws ends its process... */
+		ProcessSupervisor.SupervisedProcess failed = ProcessSupervisor.getInstance().supervise(print("first", "second"), 60000,
+				new ProcessSupervisor.LineListener() {
+			@Override
+			public boolean readLine(String line) {
+				throw new IllegalStateException(line);
+			}
+		});
+		Assert.assertEquals(ProcessSupervisor.LISTENER_FAILED, failed.waitFor());
+
+		/* ...and the supervisor keeps supervising the other processes. */
+		ProcessSupervisor.SupervisedProcess next = ProcessSupervisor.getInstance().supervise(print("third"), 60000);
+		Assert.assertEquals(0, next.waitFor());
+		Assert.assertEquals("third\n", next.getOutput());
+
+	}
+
+	@Test
+	public void testTestCountsThatDoNotFitInAnInt () throws Exception {
+
+		/* The program under test prints a count that is not from JUnit. */
+		Executor executor = new Executor();
+		Assert.assertEquals(AbstractTestExecutor.Status.PASSED, executor.run(print("Tests run: 99999999999", "Running p.ATest", "Tests run: 3")));
+		Assert.assertEquals(3, executor.getTestsRun());
+
+	}
+
+	/**
+	 * Prints its arguments, one per line (the process started by print()).
+	 */
+	public static void main(String[] args){
+		for(String arg : args) System.out.println(arg);
+	}
+
+	/**
+	 * Starts a JVM that prints the lines.
+	 */
+	private static Process print(String... lines) throws Exception {
+		String[] command = new String[lines.length + 4];
+		command[0] = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		command[1] = "-cp";
+		command[2] = System.getProperty("java.class.path");
+		command[3] = TestProcessSupervisor.class.getName();
+		System.arraycopy(lines, 0, command, 4, lines.length);
+		return new ProcessBuilder(command).redirectErrorStream(true).start();
+	}
+
+	/**
+	 * Reads the JUnit results from the output of a process.
+	 */
+	private static class Executor extends AbstractTestExecutor {
+
+		public Executor(){
+			super(60000);
+		}
+
+		public Status run(Process process) throws Exception {
+			this.startTestResults();
+			int exitCode = ProcessSupervisor.getInstance().supervise(process, this.timeout, new ProcessSupervisor.LineListener() {
+				@Override
+				public boolean readLine(String line) {
+					Executor.this.readTestResult(line);
+					return false;
+				}
+			}).waitFor();
+			this.finishTestResults();
+			return exitCode == 0 ? Status.PASSED : Status.ERROR;
+		}
+
+		@Override
+		public Status runTests() throws Exception {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jface.text.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
+import ca.uwaterloo.ece.qhanam.jrsrepair.SourceStatement;
+import ca.uwaterloo.ece.qhanam.jrsrepair.context.ScopeChecker;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.AdditionMutation;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.DeletionMutation;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.Mutation;
+import ca.uwaterloo.ece.qhanam.jrsrepair.mutation.ReplacementMutation;
+import junit.framework.TestCase;
+
+public class TestScopeChecker extends TestCase {
+
+	private static final String SOURCE = "public class A {\n"
+			+ "	private int f;\n"
+			+ "	public int m(int x) {\n"
+			+ "		int y = x + 1;\n"
+			+ "		f = y;\n"
+			+ "		return y;\n"
+			+ "	}\n"
+			+ "	public int n(int z) {\n"
+			+ "		int w = z * 2;\n"
+			+ "		f = w;\n"
+			+ "		return f;\n"
+			+ "	}\n"
+			+ "}\n";
+
+	/* The source file, its statements (by method) and the sources of the classes A uses. */
+	private HashMap<String, DocumentASTRewrite> sourceMap;
+	private List<?> m;
+	private List<?> n;
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.directory = Files.createTempDirectory("scope").toFile();
+
+		/* JDT can't read the class library of newer JVMs, so give it the few classes it needs. */
+		File lang = new File(this.directory, "java/lang");
+		lang.mkdirs();
+		for(String type : new String[] { "Object", "String" }){
+			Files.write(new File(lang, type + ".java").toPath(), ("package java.lang; public class " + type + " { }").getBytes("UTF-8"));
+		}
+
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setSource(SOURCE.toCharArray());
+		CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+
+		this.sourceMap = new HashMap<String, DocumentASTRewrite>();
+		this.sourceMap.put("A.java", new DocumentASTRewrite(new Document(SOURCE), new File("A.java"), ASTRewrite.create(cu.getAST())));
+
+		MethodDeclaration[] methods = ((TypeDeclaration) cu.types().get(0)).getMethods();
+		this.m = methods[0].getBody().statements();
+		this.n = methods[1].getBody().statements();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for(File file : new File(this.directory, "java/lang").listFiles()) file.delete();
+		new File(this.directory, "java/lang").delete();
+		new File(this.directory, "java").delete();
+		this.directory.delete();
+	}
+
+	@Test
+	public void testFocalPositionIsInTheMutatedBody () throws Exception {
+
+		for(boolean editBefore : new boolean[] { false, true }){
+
+			/* An edit in m() moves the body of n(). */
+			Mutation before = null;
+			if(editBefore){
+				before = new AdditionMutation(this.sourceMap, statement(this.m, 2), statement(this.m, 1));
+				before.mutate();
+			}
+
+			Mutation[] mutations = new Mutation[] {
+					new AdditionMutation(this.sourceMap, statement(this.n, 2), statement(this.n, 1)),
+					new ReplacementMutation(this.sourceMap, statement(this.n, 1), statement(this.n, 0)),
+					new DeletionMutation(this.sourceMap, statement(this.n, 1), null) };
+
+			for(Mutation mutation : mutations){
+				mutation.mutate();
+				MethodDeclaration body = getMethod(mutation.getRewriter().modifiedDocument.get(), 1);
+				Assert.assertEquals(mutation.toString(), body.getBody().getStartPosition() + 1, mutation.getFocalPosition());
+				mutation.undo();
+			}
+
+			if(before != null) before.undo();
+
+		}
+
+	}
+
+	@Test
+	public void testFocalScopeCheckMatchesWholeDocument () throws Exception {
+
+		ScopeChecker checker = new ScopeChecker(new String[] {}, new String[] { this.directory.getPath() });
+		Assert.assertTrue(checker.checksFocally(this.sourceMap.get("A.java")));
+
+		/* An edit in m() comes before the body of n(). */
+		Mutation before = new AdditionMutation(this.sourceMap, statement(this.m, 2), statement(this.m, 1));
+		before.mutate();
+		Assert.assertTrue(check(checker, before));
+
+		/* Statements from n() are in scope in n(), statements that use x or y are not. */
+		Mutation[] inScope = new Mutation[] {
+				new AdditionMutation(this.sourceMap, statement(this.n, 2), statement(this.n, 1)),
+				new ReplacementMutation(this.sourceMap, statement(this.n, 1), statement(this.n, 0)),
+				new DeletionMutation(this.sourceMap, statement(this.n, 1), null) };
+		Mutation[] outOfScope = new Mutation[] {
+				new AdditionMutation(this.sourceMap, statement(this.n, 2), statement(this.m, 0)),
+				new ReplacementMutation(this.sourceMap, statement(this.n, 1), statement(this.m, 2)) };
+
+		for(Mutation mutation : inScope){
+			mutation.mutate();
+			Assert.assertTrue(mutation.toString(), check(checker, mutation));
+			mutation.undo();
+		}
+		for(Mutation mutation : outOfScope){
+			mutation.mutate();
+			Assert.assertFalse(mutation.toString(), check(checker, mutation));
+			mutation.undo();
+		}
+
+		before.undo();
+
+	}
+
+	/**
+	 * Checks the scope of the mutation in its body and in the whole document, and
+	 * fails if the results are different.
+	 */
+	private static boolean check(ScopeChecker checker, Mutation mutation) throws Exception {
+		Assert.assertTrue(mutation.getFocalPosition() >= 0);
+		boolean focal = checker.checkScope(mutation.getRewriter(), mutation.getFocalPosition());
+		Assert.assertEquals(mutation.toString(), checker.checkScope(mutation.getRewriter(), -1), focal);
+		return focal;
+	}
+
+	private static SourceStatement statement(List<?> statements, int i){
+		return new SourceStatement("A.java", (Statement) statements.get(i), null);
+	}
+
+	private static MethodDeclaration getMethod(String source, int i){
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setSource(source.toCharArray());
+		CompilationUnit cu = (CompilationUnit) parser.createAST(null);
+		return ((TypeDeclaration) cu.types().get(0)).getMethods()[i];
+	}
+
+}
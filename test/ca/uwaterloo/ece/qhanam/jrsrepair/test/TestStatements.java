@@ -0,0 +1,130 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.SourceStatement;
+import ca.uwaterloo.ece.qhanam.jrsrepair.Statements;
+import junit.framework.TestCase;
+
+public class TestStatements extends TestCase {
+
+	@Test
+	public void testReservedStatementsAreNotSelected () throws Exception {
+
+		Statements statements = new Statements(new HashMap<String, HashSet<String>>(), 1);
+		SourceStatement[] added = new SourceStatement[4];
+		for(int i = 0; i < added.length; i++){
+			added[i] = new SourceStatement("File.java", null, null);
+			statements.addStatement(added[i], i == 1 ? 0 : 1.0);
+		}
+		statements.freeze();
+
+		/* Statement 1 has no weight, so only statement 2 or 3 can be selected once 0 is reserved. */
+		statements.reserve(added[0]);
+		for(int i = 0; i < 1000; i++){
+			SourceStatement selected = statements.getRandomStatement();
+			Assert.assertTrue(selected == added[2] || selected == added[3]);
+			selected.release();
+		}
+		Assert.assertEquals(1, statements.getInUseCount());
+
+		/* Every statement with a weight is in use. */
+		statements.reserve(added[2]);
+		statements.reserve(added[3]);
+		try{
+			statements.getRandomStatement();
+			Assert.fail("Selected a statement when every statement was in use.");
+		}
+		catch(IllegalStateException expected){ }
+
+		/* Released statements can be selected again. */
+		added[3].release();
+		Assert.assertSame(added[3], statements.getRandomStatement());
+		Assert.assertEquals(3, statements.getInUseCount());
+
+	}
+
+	@Test
+	public void testSeedsAreSelectedFromTheMethodScope () throws Exception {
+
+		/* Three methods. m has a in scope, n has b and o has z. */
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setSource("class A { void m(int a){ a = 1; return; } void n(int b){ b = 2; c = 3; } void o(int z){ z = 0; } }".toCharArray());
+		CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+		MethodDeclaration[] methods = ((TypeDeclaration) unit.types().get(0)).getMethods();
+		List<?> m = methods[0].getBody().statements();
+		List<?> n = methods[1].getBody().statements();
+		Statement o = (Statement) methods[2].getBody().statements().get(0);
+
+		HashMap<String, HashSet<String>> scope = new HashMap<String, HashSet<String>>();
+		scope.put("A.java.m", new HashSet<String>(Arrays.asList("a")));
+		scope.put("A.java.n", new HashSet<String>(Arrays.asList("b")));
+		scope.put("A.java.o", new HashSet<String>(Arrays.asList("z")));
+
+		/* The seeds: a = 1, return (no variables, so it is in every scope), b = 2 and c = 3. */
+		Statements seeds = new Statements(scope, 1);
+		SourceStatement a = seed(seeds, (Statement) m.get(0));
+		SourceStatement none = seed(seeds, (Statement) m.get(1));
+		SourceStatement b = seed(seeds, (Statement) n.get(0));
+		SourceStatement c = seed(seeds, (Statement) n.get(1));
+		seeds.freeze();
+
+		SourceStatement inM = new SourceStatement("A.java", (Statement) m.get(0), null);
+		SourceStatement inN = new SourceStatement("A.java", (Statement) n.get(1), null);
+		SourceStatement inO = new SourceStatement("A.java", o, null);
+
+		/* Only the seeds whose variables are in the method's scope are selected. */
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(a, none)), draw(seeds, inM));
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(b, none)), draw(seeds, inN));
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(none)), draw(seeds, inO));
+
+		/* Reserved seeds are skipped. */
+		seeds.reserve(none);
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(a)), draw(seeds, inM));
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(b)), draw(seeds, inN));
+
+		/* When every seed in scope is in use, any seed that is not in use is selected. */
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(a, b, c)), draw(seeds, inO));
+		seeds.reserve(a);
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(b, c)), draw(seeds, inM));
+
+		/* Released seeds are selected again. */
+		none.release();
+		a.release();
+		Assert.assertEquals(new HashSet<SourceStatement>(Arrays.asList(a, none)), draw(seeds, inM));
+		Assert.assertEquals(0, seeds.getInUseCount());
+
+	}
+
+	private static SourceStatement seed(Statements seeds, Statement statement){
+		SourceStatement seed = new SourceStatement("A.java", statement, null);
+		seeds.addStatement(seed, 1.0);
+		return seed;
+	}
+
+	/**
+	 * Selects seeds for a destination many times (releasing each one) and returns the seeds that were selected.
+	 */
+	private static HashSet<SourceStatement> draw(Statements seeds, SourceStatement destination){
+		HashSet<SourceStatement> selected = new HashSet<SourceStatement>();
+		for(int i = 0; i < 200; i++){
+			SourceStatement seed = seeds.getRandomStatement(destination);
+			selected.add(seed);
+			seed.release();
+		}
+		return selected;
+	}
+
+}
@@ -0,0 +1,109 @@
+package ca.uwaterloo.ece.qhanam.jrsrepair.test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jface.text.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uwaterloo.ece.qhanam.jrsrepair.AbstractTestExecutor;
+import ca.uwaterloo.ece.qhanam.jrsrepair.DocumentASTRewrite;
+import ca.uwaterloo.ece.qhanam.jrsrepair.VariantCache;
+import ca.uwaterloo.ece.qhanam.jrsrepair.compiler.JavaJDKCompiler;
+import junit.framework.TestCase;
+
+public class TestVariantCache extends TestCase {
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted () throws Exception {
+
+		VariantCache cache = new VariantCache(2);
+		cache.put("a", failed(1));
+		cache.put("b", failed(2));
+
+		/* Using a makes b the least recently used. */
+		Assert.assertEquals(1, cache.get("a").fitness, 0);
+		cache.put("c", failed(3));
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals(1, cache.get("a").fitness, 0);
+		Assert.assertEquals(3, cache.get("c").fitness, 0);
+		Assert.assertEquals(3, cache.getHits());
+
+		/* A cache with no capacity stores nothing. */
+		VariantCache disabled = new VariantCache(0);
+		disabled.put("a", failed(1));
+		Assert.assertNull(disabled.get("a"));
+		Assert.assertEquals(0, disabled.getHits());
+
+		/* Variants that passed or whose tests did not run properly are not stored. */
+		cache.put("d", new VariantCache.Outcome(JavaJDKCompiler.Status.COMPILED, "", AbstractTestExecutor.Status.PASSED, 0));
+		cache.put("e", new VariantCache.Outcome(JavaJDKCompiler.Status.COMPILED, "", AbstractTestExecutor.Status.TIMEOUT, 0));
+		cache.put("f", new VariantCache.Outcome(JavaJDKCompiler.Status.NOT_COMPILED, "error", null, 0));
+		Assert.assertNull(cache.get("d"));
+		Assert.assertNull(cache.get("e"));
+		Assert.assertEquals("error", cache.get("f").compileMessage);
+
+	}
+
+	@Test
+	public void testFingerprintDependsOnlyOnTheEdits () throws Exception {
+
+		/* The same edits to two files, in either order, with an unmodified file. */
+		Map<String, DocumentASTRewrite> forward = new LinkedHashMap<String, DocumentASTRewrite>();
+		forward.put("A.java", modified("class A { }", "class A { int a; }"));
+		forward.put("B.java", modified("class B { }", "class B { int b; }"));
+		forward.put("C.java", new DocumentASTRewrite(new Document("class C { }"), new File("C.java"), null));
+		Map<String, DocumentASTRewrite> backward = new LinkedHashMap<String, DocumentASTRewrite>();
+		backward.put("C.java", new DocumentASTRewrite(new Document("class C { }"), new File("C.java"), null));
+		backward.put("B.java", modified("class B { }", "class B { int b; }"));
+		backward.put("A.java", modified("class A { }", "class A { int a; }"));
+
+		String fingerprint = VariantCache.fingerprint(forward);
+		Assert.assertEquals(fingerprint, VariantCache.fingerprint(backward));
+		Assert.assertEquals(fingerprint, VariantCache.fingerprint(new HashMap<String, DocumentASTRewrite>(backward)));
+
+		/* A file that was modified and changed back is the same as the original. */
+		backward.put("C.java", modified("class C { }", "class C { }"));
+		Assert.assertEquals(fingerprint, VariantCache.fingerprint(backward));
+
+		/* A different edit, the same edit in a different file and a missing edit change the fingerprint. */
+		forward.put("B.java", modified("class B { }", "class B { int c; }"));
+		Assert.assertFalse(fingerprint.equals(VariantCache.fingerprint(forward)));
+
+		Map<String, DocumentASTRewrite> renamed = new HashMap<String, DocumentASTRewrite>();
+		renamed.put("A.java", modified("class A { }", "class A { int a; }"));
+		renamed.put("D.java", modified("class B { }", "class B { int b; }"));
+		Assert.assertFalse(fingerprint.equals(VariantCache.fingerprint(renamed)));
+
+		renamed.remove("D.java");
+		Assert.assertFalse(fingerprint.equals(VariantCache.fingerprint(renamed)));
+
+		/* Moving text between files changes the fingerprint. */
+		Map<String, DocumentASTRewrite> first = new HashMap<String, DocumentASTRewrite>();
+		first.put("A.java", modified("A", "AB"));
+		first.put("B.java", modified("C", "C"));
+		Map<String, DocumentASTRewrite> second = new HashMap<String, DocumentASTRewrite>();
+		second.put("A.java", modified("A", "A"));
+		second.put("B.java", modified("C", "BC"));
+		Assert.assertFalse(VariantCache.fingerprint(first).equals(VariantCache.fingerprint(second)));
+
+	}
+
+	private static VariantCache.Outcome failed(double fitness){
+		return new VariantCache.Outcome(JavaJDKCompiler.Status.COMPILED, "", AbstractTestExecutor.Status.FAILED, fitness);
+	}
+
+	/**
+	 * Creates a source file that was modified by a mutation.
+	 */
+	private static DocumentASTRewrite modified(String original, String modified){
+		DocumentASTRewrite drwt = new DocumentASTRewrite(new Document(original), new File("X.java"), null);
+		drwt.modifiedDocument = new Document(modified);
+		drwt.taintDocument();
+		return drwt;
+	}
+
+}